@@ -0,0 +1,164 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.CollectionPropertyName;
+import net.sf.beanlib.hibernate3.FooWithList;
+import net.sf.beanlib.provider.BeanPopulator;
+import net.sf.beanlib.provider.invoker.FieldAccessorMethods;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.PropertyFilter;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class HibernatePropertyFilterTest {
+    @Test
+    public void testCollectionPropertyNameSet() throws Exception {
+        Method getList = FooWithList.class.getMethod("getList");
+        Set<CollectionPropertyName<?>> set = new HashSet<CollectionPropertyName<?>>();
+        set.add(new CollectionPropertyName<FooWithList>(FooWithList.class, "list"));
+        HibernatePropertyFilter filter = new HibernatePropertyFilter(null, set, null);
+        
+        assertTrue(filter.propagate("list", getList));
+        assertTrue(filter.propagate("list", getList));
+        // Same reader return type, but not a configured property name
+        assertFalse(filter.propagate("other", getList));
+        
+        Set<CollectionPropertyName<?>> empty = Collections.emptySet();
+        filter.withCollectionPropertyNameSet(empty);
+        assertFalse(filter.propagate("list", getList));
+        
+        filter.withCollectionPropertyNameSet(null);
+        assertTrue(filter.propagate("list", getList));
+    }
+    
+    @Test
+    public void testConfiguredSetsCopied() throws Exception {
+        Method getList = FooWithList.class.getMethod("getList");
+        Set<CollectionPropertyName<?>> set = new HashSet<CollectionPropertyName<?>>();
+        HibernatePropertyFilter filter = new HibernatePropertyFilter(null, set, null);
+        assertFalse(filter.propagate("list", getList));
+        
+        // Changes to the passed set are not seen by the filter
+        set.add(new CollectionPropertyName<FooWithList>(FooWithList.class, "list"));
+        assertFalse(filter.propagate("list", getList));
+        assertTrue(filter.getCollectionPropertyNameSet().isEmpty());
+        
+        try {
+            filter.getCollectionPropertyNameSet().add(new CollectionPropertyName<FooWithList>(FooWithList.class, "list"));
+            fail();
+        } catch(UnsupportedOperationException expected) {
+        }
+        filter.withCollectionPropertyNameSet(set);
+        assertTrue(filter.propagate("list", getList));
+    }
+    
+    @Test
+    public void testCheckCGLibMode() throws Exception {
+        Set<CollectionPropertyName<?>> set = new HashSet<CollectionPropertyName<?>>();
+        set.add(new CollectionPropertyName<FooWithList>(FooWithList.class, "list"));
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setPropertyFilter(new HibernatePropertyFilter(null, set, null));
+        try {
+            // The list property of a CGLib enhanced class matches only if CGLib enhanced classes are checked
+            UnEnhancer.setCheckCGLibForThisThread(true);
+            assertNotNull(copyEnhancedFooWithList(baseConfig).getList());
+            UnEnhancer.setCheckCGLibForThisThread(false);
+            assertNull(copyEnhancedFooWithList(baseConfig).getList());
+            UnEnhancer.setCheckCGLibForThisThread(true);
+            assertNotNull(copyEnhancedFooWithList(baseConfig).getList());
+        } finally {
+            UnEnhancer.clearThreadLocal();
+        }
+    }
+    
+    private static FooWithList newEnhancedFooWithList() {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(FooWithList.class);
+        // Overrides the reader methods, which are therefore declared by the enhanced class
+        enhancer.setCallback(new MethodInterceptor() {
+            public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+                return proxy.invokeSuper(obj, args);
+            }
+        });
+        return (FooWithList)enhancer.create();
+    }
+    
+    private static FooWithList copyEnhancedFooWithList(BeanPopulatorBaseConfig baseConfig) {
+        FooWithList from = newEnhancedFooWithList();
+        from.addToList("element");
+        return new BeanPopulator(from, newEnhancedFooWithList()).initBeanPopulatorBaseConfig(baseConfig).populate();
+    }
+    
+    @Test
+    public void testCollectionFieldAccessor() throws Exception {
+        // Synthetic reader method of the list field
+        Method readList = FieldAccessorMethods.getReaderMethod(FooWithList.class, "List");
+        assertSame(FooWithList.class, readList.getDeclaringClass());
+        Set<CollectionPropertyName<?>> set = new HashSet<CollectionPropertyName<?>>();
+        set.add(new CollectionPropertyName<FooWithList>(FooWithList.class, "list"));
+        HibernatePropertyFilter filter = new HibernatePropertyFilter(null, set, null);
+        
+        assertTrue(filter.propagate("list", readList));
+        assertFalse(filter.propagate("other", readList));
+    }
+    
+    @Test
+    public void testEntityBeanClassSet() throws Exception {
+        Method getFooWithList = FooWithList.class.getMethod("getFooWithList");
+        Set<Class<?>> empty = Collections.emptySet();
+        HibernatePropertyFilter filter = new HibernatePropertyFilter(empty, null, null);
+        
+        assertFalse(filter.propagate("fooWithList", getFooWithList));
+        
+        Set<Class<?>> set = new HashSet<Class<?>>();
+        set.add(FooWithList.class);
+        filter.withEntityBeanClassSet(set);
+        assertTrue(filter.propagate("fooWithList", getFooWithList));
+        
+        filter.withVetoer(new PropertyFilter() {
+            public boolean propagate(String propertyName, Method readerMethod) {
+                return !List.class.isAssignableFrom(readerMethod.getReturnType());
+            }
+        });
+        assertTrue(filter.propagate("fooWithList", getFooWithList));
+        assertFalse(filter.propagate("list", FooWithList.class.getMethod("getList")));
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HibernatePropertyFilterTest.class);
+    }
+}
@@ -16,8 +16,11 @@
 package net.sf.beanlib.hibernate;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.NoOp;
 
 import org.junit.Test;
 
@@ -67,6 +70,35 @@ public class UnEnhancerTest {
         }
     }
     
+    public static class Plain {}
+    
+    @Test
+    public void testUnenhanceClass() {
+        Object enhanced = Enhancer.create(Plain.class, NoOp.INSTANCE);
+        Class<?> enhancedClass = enhanced.getClass();
+        
+        for (int i=0; i < 2; i++) {
+            assertSame(Plain.class, UnEnhancer.unenhanceClass(enhancedClass, true));
+            assertSame(enhancedClass, UnEnhancer.unenhanceClass(enhancedClass, false));
+            assertSame(Plain.class, UnEnhancer.unenhanceClass(Plain.class, true));
+            assertSame(Plain.class, UnEnhancer.getActualClass(enhanced, true));
+            assertSame(enhancedClass, UnEnhancer.getActualClass(enhanced, false));
+        }
+        UnEnhancer.setCheckCGLibForThisThread(false);
+        try {
+            assertSame(enhancedClass, UnEnhancer.unenhanceClass(enhancedClass));
+        } finally {
+            UnEnhancer.clearThreadLocal();
+        }
+        UnEnhancer.setCheckCGLibForThisThread(true);
+        try {
+            assertSame(Plain.class, UnEnhancer.unenhanceClass(enhancedClass));
+        } finally {
+            UnEnhancer.clearThreadLocal();
+        }
+        assertSame(null, UnEnhancer.unenhanceClass(null, true));
+    }
+    
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(new Object(){}.getClass().getEnclosingClass());
     }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.CollectionPropertyName;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AnnotationConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.orm.hibernate3.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import elh.maayan.test.Contract;
+import elh.maayan.test.Factory;
+import elh.maayan.test.Supplier;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class DtoCentricHibernate3TemplateTest {
+    private static final int FACTORIES = 5;
+    private SessionFactory sessionFactory;
+    private DtoCentricHibernate3Template template;
+    
+    @Before
+    public void setUp() {
+        sessionFactory = new AnnotationConfiguration()
+            .addAnnotatedClass(Factory.class)
+            .addAnnotatedClass(Contract.class)
+            .addAnnotatedClass(Supplier.class)
+            .setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect")
+            .setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver")
+            .setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:dtocentrictemplate")
+            .setProperty("hibernate.connection.username", "sa")
+            .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+            .setProperty("hibernate.generate_statistics", "true")
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            
+            for (int i=0; i < FACTORIES; i++) {
+                Factory factory = new Factory();
+                factory.setAddress("street " + i);
+                
+                for (int j=0; j < 2; j++) {
+                    Supplier supplier = new Supplier("supplier " + i + "-" + j);
+                    supplier.setSsn(10 * i + j);
+                    supplier.getContracts().add(new Contract(i + j, supplier));
+                    factory.addSupplier(supplier);
+                }
+                session.save(factory);
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        sessionFactory.getStatistics().clear();
+        template = new DtoCentricHibernate3Template(sessionFactory).init("elh.maayan.test", Factory.class);
+    }
+    
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void testLoadAllJoinsToOneAssociations() {
+        FetchPlan fetchPlan = new FetchPlan(new Class<?>[] {Supplier.class}, CollectionPropertyName.EMPTY_ARRAY);
+        List<?> contracts = template.loadAll(Contract.class, fetchPlan);
+        assertEquals(2 * FACTORIES, contracts.size());
+        
+        for (Object obj : contracts) {
+            Supplier supplier = ((Contract)obj).getSupplier();
+            assertNotNull(supplier.getName());
+            assertEquals(0, supplier.getContracts().size());
+        }
+        // The suppliers are join fetched along with the contracts
+        assertEquals(1, sessionFactory.getStatistics().getPrepareStatementCount());
+        assertEquals(0, sessionFactory.getStatistics().getEntityFetchCount());
+    }
+    
+    @Test
+    public void testMaxFetchDepth() {
+        FetchPlan fetchPlan = new FetchPlan(new Class<?>[] {Supplier.class}, CollectionPropertyName.EMPTY_ARRAY);
+        assertEquals(DtoCentricHibernate3Template.DEFAULT_MAX_FETCH_DEPTH, template.getMaxFetchDepth());
+        List<?> contracts = template.setMaxFetchDepth(0).loadAll(Contract.class, fetchPlan);
+        assertEquals(2 * FACTORIES, contracts.size());
+        
+        for (Object obj : contracts)
+            assertNotNull(((Contract)obj).getSupplier().getName());
+        // The suppliers are not join fetched, but loaded in bulk after the contracts
+        assertEquals(2, sessionFactory.getStatistics().getPrepareStatementCount());
+    }
+    
+    @Test
+    public void testLoadAllInitializesCollectionsInBulk() {
+        FetchPlan fetchPlan = new FetchPlan(new Class<?>[] {Supplier.class}, 
+                new CollectionPropertyName<Factory>(Factory.class, "suppliers"));
+        List<?> factories = template.setFetchBatchSize(2).loadAll(Factory.class, fetchPlan);
+        long collectionFetchCount = sessionFactory.getStatistics().getCollectionFetchCount();
+        
+        for (Object obj : factories) {
+            Factory factory = (Factory)obj;
+            assertEquals(2, factory.getSuppliers().size());
+            
+            for (Supplier supplier : factory.getSuppliers())
+                assertEquals(0, supplier.getContracts().size());
+        }
+        // No collection is fetched one by one
+        assertEquals(0, collectionFetchCount);
+        // The factories, and 3 batches of their suppliers
+        assertEquals(1 + 3, sessionFactory.getStatistics().getPrepareStatementCount());
+    }
+    
+    @Test
+    public void testFindWithoutFetchPlan() {
+        List<?> factories = template.find("from Factory");
+        assertEquals(FACTORIES, factories.size());
+        
+        for (Object obj : factories)
+            assertEquals(0, ((Factory)obj).getSuppliers().size());
+    }
+    
+    @Test
+    public void testScroll() {
+        final List<Integer> chunkSizes = new ArrayList<Integer>();
+        final List<Object> suppliers = new ArrayList<Object>();
+        int count = template.scroll("from Supplier s order by s.ssn", null, null, 3, new DtoChunkHandler() {
+            public void handle(List<?> dtos) {
+                chunkSizes.add(dtos.size());
+                suppliers.addAll(dtos);
+            }
+        });
+        assertEquals(2 * FACTORIES, count);
+        assertEquals(2 * FACTORIES, suppliers.size());
+        assertEquals(3, chunkSizes.get(0).intValue());
+        assertEquals(1, chunkSizes.get(chunkSizes.size()-1).intValue());
+        assertEquals(4, chunkSizes.size());
+        
+        for (int i=0; i < suppliers.size(); i++) {
+            Supplier supplier = (Supplier)suppliers.get(i);
+            assertEquals(0, supplier.getContracts().size());
+            assertEquals(10 * (i / 2) + i % 2, supplier.getSsn());
+        }
+    }
+    
+    @Test
+    public void testScrollKeepsSessionBoundEntities() {
+        Session session = sessionFactory.openSession();
+        TransactionSynchronizationManager.bindResource(sessionFactory, new SessionHolder(session));
+        long factoryId;
+        try {
+            session.beginTransaction();
+            Factory factory = (Factory)session.createQuery("from Factory f order by f.id").setMaxResults(1).uniqueResult();
+            factoryId = factory.getId();
+            // Pending change
+            factory.setAddress("moved");
+            
+            int count = template.scroll("from Supplier s order by s.ssn", null, null, 3, new DtoChunkHandler() {
+                public void handle(List<?> dtos) {
+                }
+            });
+            assertEquals(2 * FACTORIES, count);
+            // Only the scrolled entities are evicted
+            assertTrue(session.contains(factory));
+            assertEquals(1, session.getStatistics().getEntityCount());
+            session.getTransaction().commit();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(sessionFactory);
+            session.close();
+        }
+        session = sessionFactory.openSession();
+        try {
+            assertEquals("moved", ((Factory)session.get(Factory.class, factoryId)).getAddress());
+        } finally {
+            session.close();
+        }
+    }
+    
+    @Test
+    public void testScrollAllWithFetchPlan() {
+        FetchPlan fetchPlan = new FetchPlan(new Class<?>[] {Supplier.class}, CollectionPropertyName.EMPTY_ARRAY);
+        final List<Object> contracts = new ArrayList<Object>();
+        int count = template.scrollAll(Contract.class, fetchPlan, 4, new DtoChunkHandler() {
+            public void handle(List<?> dtos) {
+                contracts.addAll(dtos);
+            }
+        });
+        assertEquals(2 * FACTORIES, count);
+        
+        for (Object obj : contracts)
+            assertNotNull(((Contract)obj).getSupplier().getName());
+        // The suppliers are join fetched along with the contracts
+        assertEquals(1, sessionFactory.getStatistics().getPrepareStatementCount());
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DtoCentricHibernate3TemplateTest.class);
+    }
+}
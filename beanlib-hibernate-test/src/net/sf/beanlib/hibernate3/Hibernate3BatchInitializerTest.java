@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.hibernate.HibernatePropertyFilter;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AnnotationConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elh.maayan.test.Contract;
+import elh.maayan.test.Factory;
+import elh.maayan.test.Supplier;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class Hibernate3BatchInitializerTest {
+    private static final int FACTORIES = 5;
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void setUp() {
+        sessionFactory = new AnnotationConfiguration()
+            .addAnnotatedClass(Factory.class)
+            .addAnnotatedClass(Contract.class)
+            .addAnnotatedClass(Supplier.class)
+            .setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect")
+            .setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver")
+            .setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:batchinitializer")
+            .setProperty("hibernate.connection.username", "sa")
+            .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+            .setProperty("hibernate.generate_statistics", "true")
+            .buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            
+            for (int i=0; i < FACTORIES; i++) {
+                Factory factory = new Factory();
+                factory.setAddress("street " + i);
+                
+                for (int j=0; j < 2; j++) {
+                    Supplier supplier = new Supplier("supplier " + i + "-" + j);
+                    supplier.setSsn(10 * i + j);
+                    supplier.getContracts().add(new Contract(i + j, supplier));
+                    factory.addSupplier(supplier);
+                }
+                session.save(factory);
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        sessionFactory.getStatistics().clear();
+    }
+    
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void testInitialize() {
+        Session session = sessionFactory.openSession();
+        Hibernate3BatchInitializer batchInitializer = new Hibernate3BatchInitializer(session, 2);
+        List<?> factories;
+        try {
+            factories = session.createQuery("from Factory").list();
+            assertFalse(Hibernate.isInitialized(((Factory)factories.get(0)).getSuppliers()));
+            // The eager contracts of each factory
+            assertEquals(FACTORIES, sessionFactory.getStatistics().getCollectionFetchCount());
+            batchInitializer.initialize(factories, new HibernatePropertyFilter());
+        } finally {
+            session.close();
+        }
+        // 3 batches of suppliers of 5 factories, and 5 batches of contracts of 10 suppliers 
+        assertEquals(8, batchInitializer.getQueryCount());
+        assertEquals(FACTORIES, sessionFactory.getStatistics().getCollectionFetchCount());
+        
+        for (Object obj : factories) {
+            Factory factory = (Factory)obj;
+            assertTrue(Hibernate.isInitialized(factory.getSuppliers()));
+            
+            for (Supplier supplier : factory.getSuppliers())
+                assertTrue(Hibernate.isInitialized(supplier.getContracts()));
+        }
+    }
+    
+    @Test
+    public void testCopy() {
+        Session session = sessionFactory.openSession();
+        Hibernate3BeanReplicator replicator = new Hibernate3BeanReplicator();
+        Hibernate3BatchInitializer batchInitializer = new Hibernate3BatchInitializer(session);
+        replicator.initBatchInitializer(batchInitializer);
+        List<Factory> copies;
+        try {
+            List<?> factories = session.createQuery("from Factory").list();
+            copies = replicator.copyAll(factories, Factory.class);
+        } finally {
+            session.close();
+        }
+        assertEquals(2, batchInitializer.getQueryCount());
+        // Only the eager contracts of each factory are fetched one by one
+        assertEquals(FACTORIES, sessionFactory.getStatistics().getCollectionFetchCount());
+        assertEquals(FACTORIES, copies.size());
+        
+        for (Factory factory : copies) {
+            assertEquals(2, factory.getSuppliers().size());
+            
+            for (Supplier supplier : factory.getSuppliers())
+                assertEquals(1, supplier.getContracts().size());
+        }
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(Hibernate3BatchInitializerTest.class);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.hibernate.UnEnhancer;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.NoOp;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class Hibernate3BeanTransformerTest {
+    public static class Plain {
+        private String name;
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+    }
+    
+    private static Plain newEnhancedPlain(String name) {
+        Plain enhanced = (Plain)Enhancer.create(Plain.class, NoOp.INSTANCE);
+        enhanced.setName(name);
+        return enhanced;
+    }
+    
+    @Test
+    public void testCheckCGLibPerTransformation() {
+        Plain enhanced = newEnhancedPlain("foo");
+        Hibernate3BeanTransformer transformer = new Hibernate3BeanTransformer();
+        try {
+            UnEnhancer.setCheckCGLibForThisThread(false);
+            Plain to = transformer.transform(enhanced, Plain.class, null);
+            assertSame(enhanced.getClass(), to.getClass());
+            assertEquals("foo", to.getName());
+            assertFalse(transformer.isCheckCGLib());
+            // Without any reset, the next transformation follows the new setting
+            UnEnhancer.setCheckCGLibForThisThread(true);
+            assertTrue(transformer.isCheckCGLib());
+            to = transformer.transform(newEnhancedPlain("bar"), Plain.class, null);
+            assertSame(Plain.class, to.getClass());
+            assertEquals("bar", to.getName());
+        } finally {
+            UnEnhancer.clearThreadLocal();
+        }
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(Hibernate3BeanTransformerTest.class);
+    }
+}
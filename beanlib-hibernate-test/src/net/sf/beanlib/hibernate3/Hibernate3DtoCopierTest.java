@@ -15,9 +15,15 @@
  */
 package net.sf.beanlib.hibernate3;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -71,6 +77,51 @@ public class Hibernate3DtoCopierTest
         assertSame(childCopy, childCopy.getParent().getFoo());
     }
     
+    @Test public void testCollection() {
+        Parent shared = new Parent();
+        List<Child> children = new ArrayList<Child>();
+        
+        for (int i=0; i < 3; i++) {
+            Child child = new Child();
+            child.setParent(shared);
+            children.add(child);
+        }
+        children.add(null);
+        
+        Hibernate3DtoCopier copier = new Hibernate3DtoCopier("net.sf.beanlib", this.getClass());
+        List<?> copies = copier.hibernate2dto(children);
+        
+        assertEquals(4, copies.size());
+        assertNull(copies.get(3));
+        Parent sharedCopy = ((Child)copies.get(0)).getParent();
+        assertNotSame(shared, sharedCopy);
+        // The shared parent is copied only once for the whole batch
+        assertSame(sharedCopy, ((Child)copies.get(1)).getParent());
+        assertSame(sharedCopy, ((Child)copies.get(2)).getParent());
+        
+        List<?> fullCopies = copier.hibernate2dtoFully(children);
+        assertNotSame(fullCopies.get(0), copies.get(0));
+        assertSame(((Child)fullCopies.get(0)).getParent(), ((Child)fullCopies.get(2)).getParent());
+    }
+    
+    @Test public void testCollectionWithoutFetchPlan() {
+        Parent shared = new Parent();
+        List<Child> children = new ArrayList<Child>();
+        
+        for (int i=0; i < 2; i++) {
+            Child child = new Child();
+            child.setParent(shared);
+            children.add(child);
+        }
+        Hibernate3DtoCopier copier = new Hibernate3DtoCopier("net.sf.beanlib", this.getClass());
+        List<Child> copies = copier.hibernate2dto(Child.class, children, (FetchPlan)null, null);
+        
+        assertEquals(2, copies.size());
+        assertNotSame(children.get(0), copies.get(0));
+        assertNotSame(shared, copies.get(0).getParent());
+        assertSame(copies.get(0).getParent(), copies.get(1).getParent());
+    }
+    
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(Hibernate3DtoCopierTest.class);
     }
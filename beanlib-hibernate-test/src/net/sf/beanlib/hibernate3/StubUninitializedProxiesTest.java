@@ -0,0 +1,166 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.hibernate.HibernateBeanReplicator;
+import net.sf.beanlib.provider.collector.PrivateSetterMethodCollector;
+
+import org.hibernate.collection.PersistentSet;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class StubUninitializedProxiesTest {
+    public static class Item {
+        private Long id;
+        private String name;
+        private Item parent;
+        private Set<Item> children;
+        
+        public Long getId() { return id; }
+        private void setId(Long id) { this.id = id; }
+        
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        
+        public Item getParent() { return parent; }
+        public void setParent(Item parent) { this.parent = parent; }
+        
+        public Set<Item> getChildren() { return children; }
+        public void setChildren(Set<Item> children) { this.children = children; }
+    }
+    
+    /** 
+     * Stands for a Hibernate proxy of an item, which is loaded upon initialization.
+     * Named after the proxies generated by javassist.
+     */
+    public static class Item_$$_javassist_1 extends Item implements HibernateProxy {
+        private static final long serialVersionUID = 1L;
+        private final transient LazyInitializer lazyInitializer;
+        
+        Item_$$_javassist_1(Long id, int[] loads) {
+            lazyInitializer = newLazyInitializer(id, loads);
+        }
+        public Object writeReplace() { return this; }
+        public LazyInitializer getHibernateLazyInitializer() { return lazyInitializer; }
+    }
+    
+    /** Returns a lazy initializer of an item that counts the number of loads. */
+    private static LazyInitializer newLazyInitializer(final Long id, final int[] loads) {
+        final SessionImplementor session = newProxy(SessionImplementor.class, "getFactory", 
+                newProxy(SessionFactoryImplementor.class, "getClassMetadata", 
+                        newProxy(ClassMetadata.class, "getIdentifierPropertyName", "id")));
+        return newProxy(LazyInitializer.class, null, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                
+                if (name.equals("getIdentifier"))
+                    return id;
+                if (name.equals("getEntityName"))
+                    return Item.class.getName();
+                if (name.equals("getPersistentClass"))
+                    return Item.class;
+                if (name.equals("isUninitialized"))
+                    return loads[0] == 0;
+                if (name.equals("getSession"))
+                    return session;
+                if (name.equals("getImplementation")) {
+                    if (loads[0] == 0)
+                        loads[0]++;
+                    Item item = new Item();
+                    item.setId(id);
+                    item.setName("loaded");
+                    return item;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+    
+    /** Returns a proxy of the given interface that returns the given result from the given method. */
+    private static <T> T newProxy(Class<T> type, final String methodName, final Object result) {
+        InvocationHandler h = result instanceof InvocationHandler 
+                            ? (InvocationHandler)result 
+                            : new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals(methodName))
+                    return result;
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, h));
+    }
+    
+    @Test
+    public void testStub() {
+        int[] loads = {0};
+        Item from = new Item();
+        from.setId(1L);
+        from.setName("child");
+        from.setParent(new Item_$$_javassist_1(7L, loads));
+        from.setChildren(new PersistentSet());
+        
+        // The identifier setter of Item is private
+        HibernateBeanReplicator replicator = new Hibernate3BeanReplicator().initStubUninitializedProxies(true)
+                .initSetterMethodCollector(new PrivateSetterMethodCollector());
+        Item to = replicator.deepCopy(from);
+        
+        assertEquals(0, loads[0]);
+        assertEquals("child", to.getName());
+        assertSame(Item.class, to.getParent().getClass());
+        assertEquals(Long.valueOf(7L), to.getParent().getId());
+        assertNull(to.getParent().getName());
+        assertNull(to.getChildren());
+        
+        // The root proxy is also stubbed
+        Item stub = replicator.deepCopy(new Item_$$_javassist_1(8L, loads));
+        assertEquals(0, loads[0]);
+        assertSame(Item.class, stub.getClass());
+        assertEquals(Long.valueOf(8L), stub.getId());
+    }
+    
+    @Test
+    public void testInitialize() {
+        int[] loads = {0};
+        Item from = new Item();
+        from.setParent(new Item_$$_javassist_1(7L, loads));
+        
+        Item to = new Hibernate3BeanReplicator().deepCopy(from);
+        assertEquals(1, loads[0]);
+        assertEquals("loaded", to.getParent().getName());
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StubUninitializedProxiesTest.class);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate;
+
+import java.util.Collection;
+
+import net.sf.beanlib.spi.PropertyFilter;
+
+/**
+ * Used to initialize, in bulk, the lazy collections and proxies reachable from some 
+ * Hibernate objects prior to their replication.
+ * 
+ * @see HibernateBeanReplicator#initBatchInitializer(HibernateBatchInitializer)
+ * @see net.sf.beanlib.hibernate3.Hibernate3BatchInitializer
+ * 
+ * @author Joe D. Velopar
+ */
+public interface HibernateBatchInitializer {
+    /**
+     * Initializes the lazy collections and proxies reachable from the given objects.
+     * 
+     * @param roots the objects to start walking from, which may contain null
+     * @param propertyFilter used to determine which properties to walk; or null for all
+     */
+    public void initialize(Collection<?> roots, PropertyFilter propertyFilter);
+}
@@ -15,12 +15,16 @@
  */
 package net.sf.beanlib.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import net.jcip.annotations.NotThreadSafe;
 import net.sf.beanlib.CollectionPropertyName;
 import net.sf.beanlib.provider.BeanPopulator;
+import net.sf.beanlib.provider.BeanTransformer;
 import net.sf.beanlib.spi.BeanMethodCollector;
 import net.sf.beanlib.spi.BeanMethodFinder;
 import net.sf.beanlib.spi.BeanPopulationExceptionHandler;
@@ -82,6 +86,12 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
 {
     /** Used to do the heavy lifting of Hibernate object transformation and replication. */
     private final BeanTransformerSpi hibernateBeanTransformer;
+    
+    /** 
+     * Used to initialize the lazy collections and proxies in bulk before each copy, 
+     * or null if they are initialized one by one as the copy reaches them. 
+     */
+    private HibernateBatchInitializer batchInitializer;
 
     /**
      * You probably want to construct a 
@@ -111,7 +121,7 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
     public final <T> T copy(T from) {
         return (T)(from == null 
                          ? null 
-                         : copy(from, UnEnhancer.getActualClass(from)));
+                         : copy(from, actualClassOf(from, UnEnhancer.isCheckCGLib())));
     }
 
     /** 
@@ -131,12 +141,67 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
         if (from == null)
             return null;
         try {
+            if (batchInitializer != null)
+                batchInitializer.initialize(Collections.singleton(from), getPropertyFilter());
             return hibernateBeanTransformer.transform(from, toClass, null);
         } finally {
             hibernateBeanTransformer.reset();
         }
     }
     
+    /** 
+     * Returns a list of copies of the given objects, in the same order.
+     * <p>
+     * All the objects are copied as a single batch with the same configuration 
+     * and identity context, so an object referenced from multiple given objects
+     * (or given multiple times) is copied only once.
+     * 
+     * @param <T> type of the given objects.
+     * @param from given objects, which may contain null.
+     * 
+     * @see #copy(Object)
+     */
+    public final <T> List<T> copyAll(Collection<? extends T> from) {
+        return this.<T>copyAll(from, null);
+    }
+    
+    /** 
+     * Returns a list of instances of the given class with values copied from the given objects, 
+     * in the same order.
+     * <p>
+     * All the objects are copied as a single batch with the same configuration 
+     * and identity context, so an object referenced from multiple given objects
+     * (or given multiple times) is copied only once.
+     * 
+     * @param <T> type of the returned objects.
+     * @param from given objects, which may contain null.
+     * @param toClass target class of the returned objects; 
+     * or null for the actual class of each given object.
+     * 
+     * @see #copy(Object, Class)
+     */
+    public final <T> List<T> copyAll(Collection<?> from, Class<T> toClass) {
+        if (from == null)
+            return null;
+        final List<T> list = new ArrayList<T>(from.size());
+        final boolean checkCGLib = UnEnhancer.isCheckCGLib();
+        try {
+            if (batchInitializer != null)
+                batchInitializer.initialize(from, getPropertyFilter());
+            for (Object obj : from) {
+                if (obj == null) {
+                    list.add(null);
+                    continue;
+                }
+                final Class<T> c = toClass == null ? this.<T>actualClassOf(obj, checkCGLib) : toClass;
+                list.add(hibernateBeanTransformer.transform(obj, c, null));
+            }
+        } finally {
+            hibernateBeanTransformer.reset();
+        }
+        return list;
+    }
+    
     /** 
      * Convenient method to deep copy the given object using the default behavior.
      * <p>
@@ -156,7 +221,7 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
     public final <T> T deepCopy(T from) {
         return (T)(from == null 
                          ? null 
-                         : deepCopy(from, UnEnhancer.getActualClass(from)));
+                         : deepCopy(from, actualClassOf(from, UnEnhancer.isCheckCGLib())));
     }
 
     /** 
@@ -204,7 +269,7 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
     public final <T> T shallowCopy(T from) {
         return (T)(from == null 
                          ? null 
-                         : shallowCopy(from, UnEnhancer.getActualClass(from)));
+                         : shallowCopy(from, actualClassOf(from, UnEnhancer.isCheckCGLib())));
     }
 
     /** 
@@ -327,6 +392,60 @@ public abstract class HibernateBeanReplicator implements BeanPopulatorBaseSpi
         return this;
     }
 
+    /**
+     * Used to declare whether the object graphs to be replicated are known to be trees,
+     * in which case the identity of the replicated objects is not recorded.
+     * When debugging is enabled, an accidental cycle is detected by the replication depth.
+     * 
+     * @see BeanTransformer#initTreeMode(boolean)
+     * 
+     * @return the current object (ie this) for method chaining purposes.
+     * @throws UnsupportedOperationException if the underlying transformer is not a {@link BeanTransformer}
+     */
+    public final HibernateBeanReplicator initTreeMode(boolean treeMode) {
+        if (!(hibernateBeanTransformer instanceof BeanTransformer))
+            throw new UnsupportedOperationException("Tree mode is not supported by " 
+                    + hibernateBeanTransformer.getClass().getName());
+        ((BeanTransformer)hibernateBeanTransformer).initTreeMode(treeMode);
+        return this;
+    }
+
+    /**
+     * Returns true if uninitialized Hibernate proxies are replicated as stubs by the underlying transformer,
+     * in which case an uninitialized proxy given to be copied is not initialized to determine its actual class;
+     * false otherwise.  Defaults to false.
+     */
+    protected boolean isStubUninitializedProxies() {
+        return false;
+    }
+    
+    /**
+     * Used to copy in two phases: first initializing in bulk the lazy collections and proxies
+     * reachable via the properties allowed by the current property filter, 
+     * then copying entirely against the initialized data.
+     * 
+     * @param batchInitializer used to initialize the lazy collections and proxies before each copy;
+     * or null to initialize them one by one as the copy reaches them, which is the default.
+     * 
+     * @return the current object (ie this) for method chaining purposes.
+     */
+    public final HibernateBeanReplicator initBatchInitializer(HibernateBatchInitializer batchInitializer) {
+        this.batchInitializer = batchInitializer;
+        return this;
+    }
+    
+    public final HibernateBatchInitializer getBatchInitializer() {
+        return batchInitializer;
+    }
+    
+    /**
+     * Returns the actual class of the given object, 
+     * without initializing it if it is an uninitialized proxy to be stubbed.
+     */
+    private <T> Class<T> actualClassOf(Object from, boolean checkCGLib) {
+        return UnEnhancer.getActualClass(from, checkCGLib, !isStubUninitializedProxies());
+    }
+
     /**
      * Used to configure a finder to find the property getter methods of a source JavaBean.
      * 
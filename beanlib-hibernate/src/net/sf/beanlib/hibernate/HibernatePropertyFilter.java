@@ -22,10 +22,17 @@ import static net.sf.beanlib.utils.ClassUtils.isJavaPackage;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jcip.annotations.Immutable;
 
 import net.sf.beanlib.CollectionPropertyName;
+import net.sf.beanlib.spi.ClassDeterministicFilter;
 import net.sf.beanlib.spi.PropertyFilter;
 
 /**
@@ -39,10 +46,17 @@ import net.sf.beanlib.spi.PropertyFilter;
  * <li>The set of collection and map properties that will be replicated;</li>
  * <li>A {@link net.sf.beanlib.spi.PropertyFilter vetoer} used to veto the propagation of a property</li>
  * </ul>
+ * The decisions depend only on the reader methods, so they are made once per population plan
+ * unless there is a vetoer which is not a {@link ClassDeterministicFilter}.
+ * Regardless of the vetoer, the decisions of {@link #propagateImpl(String, Method)} are memoized 
+ * per declaring class, property name, reader return type and CGLib check mode 
+ * (see {@link UnEnhancer#isCheckCGLib()}) until the filter is reconfigured.
+ * The configured sets are therefore copied when passed to this filter, and returned as unmodifiable sets,
+ * so the configuration can only be changed via the <code>with*</code> methods.
  *
  * @author Joe D. Velopar
  */
-public class HibernatePropertyFilter implements PropertyFilter 
+public class HibernatePropertyFilter implements PropertyFilter, ClassDeterministicFilter 
 {
     /**
      * The set of entity bean classes for matching properties that will be replicated, 
@@ -56,7 +70,7 @@ public class HibernatePropertyFilter implements PropertyFilter
      * eagerly fetching if necessary.
      * Null means all whereas empty means none.
      */
-    private Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet;
+    private Set<CollectionPropertyName<?>> collectionPropertyNameSet;
     
     /** Used to veto the propagation of a property. */
     private PropertyFilter vetoer;
@@ -69,6 +83,21 @@ public class HibernatePropertyFilter implements PropertyFilter
      */ 
     private final String applicationPackagePrefix; 
     
+    /** 
+     * The configured collection and map property names indexed by declaring class,
+     * or null if all collection and map properties are to be replicated.
+     */
+    private Map<Class<?>, Set<String>> collectionPropertyNameIndex;
+    
+    /** 
+     * The memoized decisions of {@link #propagateImpl(String, Method)},
+     * replaced whenever the configuration is changed. 
+     */
+    private volatile ConcurrentMap<PropertyKey, Boolean> decisions = newDecisionMap();
+    
+    /** Incremented whenever the configuration is changed. */
+    private volatile int revision;
+    
     /**
      * Constructs with the specified options of controlling what to be replicated and what not.
      * 
@@ -87,8 +116,9 @@ public class HibernatePropertyFilter implements PropertyFilter
     public HibernatePropertyFilter(Set<Class<?>> entityBeanClassSet, 
         Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet, PropertyFilter vetoer)
     {
-        this.entityBeanClassSet = entityBeanClassSet;
-        this.collectionPropertyNameSet = collectionPropertyNameSet;
+        this.entityBeanClassSet = copyOf(entityBeanClassSet);
+        this.collectionPropertyNameSet = copyOf(collectionPropertyNameSet);
+        this.collectionPropertyNameIndex = indexCollectionPropertyNames(collectionPropertyNameSet);
         this.vetoer = vetoer;
         this.applicationPackagePrefix = "#";    // disable by matching no packages 
     }
@@ -117,8 +147,9 @@ public class HibernatePropertyFilter implements PropertyFilter
     public HibernatePropertyFilter(String applicationPackagePrefix, Set<Class<?>> entityBeanClassSet, 
         Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet, PropertyFilter vetoer)
     {
-        this.entityBeanClassSet = entityBeanClassSet;
-        this.collectionPropertyNameSet = collectionPropertyNameSet;
+        this.entityBeanClassSet = copyOf(entityBeanClassSet);
+        this.collectionPropertyNameSet = copyOf(collectionPropertyNameSet);
+        this.collectionPropertyNameIndex = indexCollectionPropertyNames(collectionPropertyNameSet);
         this.vetoer = vetoer;
         this.applicationPackagePrefix = applicationPackagePrefix;
     }
@@ -144,9 +175,14 @@ public class HibernatePropertyFilter implements PropertyFilter
         this.entityBeanClassSet = Collections.emptySet();
     }
     
+    /** Returns an unmodifiable copy of the given set; or null if the given set is null. */
+    private static <T> Set<T> copyOf(Set<? extends T> set) {
+        return set == null ? null : Collections.unmodifiableSet(new HashSet<T>(set));
+    }
+    
     /**
      * Returns the configured set of entity bean classes for matching properties that will be replicated, 
-     * eagerly fetching if necessary;
+     * eagerly fetching if necessary, as an unmodifiable set;
      * null if all entity bean classes are to be replicated; 
      * or empty if no entity bean class is to be replicated.
      */
@@ -166,19 +202,19 @@ public class HibernatePropertyFilter implements PropertyFilter
      * @return the current instance for method chaining purposes.
      */
     public HibernatePropertyFilter withEntityBeanClassSet(Set<Class<?>> entityBeanClassSet) {
-        this.entityBeanClassSet = entityBeanClassSet;
+        this.entityBeanClassSet = copyOf(entityBeanClassSet);
+        this.reconfigured();
         return this;
     }
 
     /**
      * Returns the configured set of collection and map properties that are to be replicated, 
-     * eagerly fetching if necessary;
+     * eagerly fetching if necessary, as an unmodifiable set;
      * null if all collection and map properties are to be replicated; 
      * or empty if no collection nor map properties are to be replicated.
      */
-    @SuppressWarnings("unchecked")
     public Set<CollectionPropertyName<?>> getCollectionPropertyNameSet() {
-        return (Set<CollectionPropertyName<?>>)collectionPropertyNameSet;
+        return collectionPropertyNameSet;
     }
 
     /**
@@ -194,7 +230,9 @@ public class HibernatePropertyFilter implements PropertyFilter
     public HibernatePropertyFilter withCollectionPropertyNameSet(
             Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet) 
     {
-        this.collectionPropertyNameSet = collectionPropertyNameSet;
+        this.collectionPropertyNameSet = copyOf(collectionPropertyNameSet);
+        this.collectionPropertyNameIndex = indexCollectionPropertyNames(collectionPropertyNameSet);
+        this.reconfigured();
         return this;
     }
 
@@ -212,9 +250,69 @@ public class HibernatePropertyFilter implements PropertyFilter
      */
     public HibernatePropertyFilter withVetoer(PropertyFilter vetoer) {
         this.vetoer = vetoer;
+        this.reconfigured();
         return this;
     }
     
+    /** Discards the memoized decisions after a configuration change. */
+    private void reconfigured() {
+        this.revision++;
+        // Published last so a thread seeing the new map also sees the new configuration
+        this.decisions = newDecisionMap();
+    }
+    
+    private static ConcurrentMap<PropertyKey, Boolean> newDecisionMap() {
+        return new ConcurrentHashMap<PropertyKey, Boolean>();
+    }
+    
+    /** 
+     * Returns the names of the given collection and map properties indexed by declaring class,
+     * so they can be checked without allocating a {@link CollectionPropertyName} per property;
+     * or null if the given set is null.
+     */
+    private static Map<Class<?>, Set<String>> indexCollectionPropertyNames(
+            Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet) 
+    {
+        if (collectionPropertyNameSet == null)
+            return null;
+        Map<Class<?>, Set<String>> index = new HashMap<Class<?>, Set<String>>();
+        
+        for (CollectionPropertyName<?> colPropName : collectionPropertyNameSet) {
+            Set<String> names = index.get(colPropName.getDeclaringClass());
+            
+            if (names == null) {
+                names = new HashSet<String>();
+                index.put(colPropName.getDeclaringClass(), names);
+            }
+            names.add(colPropName.getCollectionProperty());
+        }
+        return index;
+    }
+    
+    /**
+     * Returns true if this is not a subclass, and the vetoer, if any, is also class deterministic; 
+     * false otherwise.
+     */
+    public boolean isClassDeterministic() {
+        return getClass() == HibernatePropertyFilter.class
+            && (vetoer == null 
+                || vetoer instanceof ClassDeterministicFilter 
+                    && ((ClassDeterministicFilter)vetoer).isClassDeterministic());
+    }
+    
+    /**
+     * Returns the revision of the configuration of this filter, 
+     * combined with the CGLib check mode of the current thread (see {@link UnEnhancer#isCheckCGLib()})
+     * which the decisions of this filter also depend on.
+     */
+    public int getRevision() {
+        final PropertyFilter vetoer = this.vetoer;
+        final int configRevision = vetoer instanceof ClassDeterministicFilter
+                                 ? 31 * revision + ((ClassDeterministicFilter)vetoer).getRevision()
+                                 : revision;
+        return 2 * configRevision + (UnEnhancer.isCheckCGLib() ? 1 : 0);
+    }
+    
     public boolean propagate(String propertyName, Method readerMethod) 
     {
         if (propagateImpl(propertyName, readerMethod))
@@ -224,7 +322,23 @@ public class HibernatePropertyFilter implements PropertyFilter
     
     public boolean propagateImpl(String propertyName, Method readerMethod) 
     {
-        Class<?> returnType = UnEnhancer.unenhanceClass(readerMethod.getReturnType());
+        // Read the decisions first, as they are published after any configuration change
+        final ConcurrentMap<PropertyKey, Boolean> decisions = this.decisions;
+        // The decision depends on the CGLib check mode of the current thread via the unenhancement of classes
+        final boolean checkCGLib = UnEnhancer.isCheckCGLib();
+        PropertyKey key = new PropertyKey(readerMethod.getDeclaringClass(), propertyName, readerMethod.getReturnType(), checkCGLib);
+        Boolean decision = decisions.get(key);
+        
+        if (decision == null) {
+            decision = Boolean.valueOf(decide(propertyName, readerMethod, checkCGLib));
+            decisions.putIfAbsent(key, decision);
+        }
+        return decision.booleanValue();
+    }
+    
+    private boolean decide(String propertyName, Method readerMethod, boolean checkCGLib) 
+    {
+        Class<?> returnType = UnEnhancer.unenhanceClass(readerMethod.getReturnType(), checkCGLib);
         
         if (immutable(returnType))
             return true;
@@ -240,7 +354,7 @@ public class HibernatePropertyFilter implements PropertyFilter
                 // all fields to be populated
                 return true;
             }
-            return checkCollectionProperty(propertyName, readerMethod);
+            return checkCollectionProperty(propertyName, readerMethod, checkCGLib);
         }
         // Only a selected set of entity bean to be populated.
         if (isJavaPackage(returnType)) {
@@ -249,7 +363,7 @@ public class HibernatePropertyFilter implements PropertyFilter
                 // All Collection/Map properties to be populated.
                 return true;
             }
-            return checkCollectionProperty(propertyName, readerMethod);
+            return checkCollectionProperty(propertyName, readerMethod, checkCGLib);
         }
         // An entity bean.
         Class<?> superClass = returnType;
@@ -266,21 +380,18 @@ public class HibernatePropertyFilter implements PropertyFilter
         }
     }
     
-    private boolean checkCollectionProperty(String propertyName, Method readerMethod)
+    private boolean checkCollectionProperty(String propertyName, Method readerMethod, boolean checkCGLib)
     {
         // Only a specified set of Collection/Map properties needs to be populated
-        Class<?> returnType = UnEnhancer.unenhanceClass(readerMethod.getReturnType());
+        Class<?> returnType = UnEnhancer.unenhanceClass(readerMethod.getReturnType(), checkCGLib);
         
         if (Collection.class.isAssignableFrom(returnType) 
         ||  Map.class.isAssignableFrom(returnType)) 
         {
-            @SuppressWarnings("unchecked")
-            CollectionPropertyName<?> colPropName = 
-                new CollectionPropertyName(
-                        UnEnhancer.unenhanceClass(readerMethod.getDeclaringClass()), propertyName); 
-
             // A Collection/Map property
-            return collectionPropertyNameSet.contains(colPropName);
+            Set<String> names = collectionPropertyNameIndex.get(
+                    UnEnhancer.unenhanceClass(readerMethod.getDeclaringClass(), checkCGLib));
+            return names != null && names.contains(propertyName);
         }
         // Not a Collection/Map property.
         return true;
@@ -290,4 +401,41 @@ public class HibernatePropertyFilter implements PropertyFilter
     public boolean isApplicationClass(Class<?> c) {
         return c != null && fqcn(c).startsWith(applicationPackagePrefix);
     }
+    
+    /** Identifies a property for the purpose of memoizing the propagation decision. */
+    @Immutable
+    private static final class PropertyKey {
+        private final Class<?> declaringClass;
+        private final String propertyName;
+        private final Class<?> returnType;
+        private final boolean checkCGLib;
+        private final int hashCode;
+        
+        PropertyKey(Class<?> declaringClass, String propertyName, Class<?> returnType, boolean checkCGLib) {
+            this.declaringClass = declaringClass;
+            this.propertyName = propertyName;
+            this.returnType = returnType;
+            this.checkCGLib = checkCGLib;
+            this.hashCode = ((31 * declaringClass.hashCode() + propertyName.hashCode()) * 31 
+                          + returnType.hashCode()) * 31 + (checkCGLib ? 1 : 0);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof PropertyKey))
+                return false;
+            PropertyKey that = (PropertyKey)obj;
+            return this.declaringClass == that.declaringClass
+                && this.returnType == that.returnType
+                && this.checkCGLib == that.checkCGLib
+                && this.propertyName.equals(that.propertyName);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
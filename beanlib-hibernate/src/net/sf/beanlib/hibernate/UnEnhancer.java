@@ -15,6 +15,7 @@
  */
 package net.sf.beanlib.hibernate;
 
+import net.sf.beanlib.util.WeakClassCache;
 import net.sf.cglib.proxy.Enhancer;
 
 import org.apache.log4j.Logger;
@@ -23,6 +24,14 @@ import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.proxy.LazyInitializer;
 
 /**
+ * Used to dig out the pre CGLIB/Javassist enhanced classes and objects.
+ * <p>
+ * The pre-enhanced class of each class is memoized, separately for when CGLib enhanced 
+ * classes are checked and when they are not, without preventing the classes 
+ * (and therefore their class loaders) from being garbage collected.  Callers unenhancing many values, such as
+ * during a copy operation, can resolve {@link #isCheckCGLib()} once and pass it along
+ * rather than having the per thread setting looked up for every value.
+ * 
  * @author Joe D. Velopar
  * @author Hanson Char
  */
@@ -35,6 +44,11 @@ public class UnEnhancer
     }
     
     private static volatile boolean defaultCheckCGLib = true;
+    
+    /** Memoized pre-enhanced class per class, when CGLib enhanced classes are checked. */
+    private static final WeakClassCache<Class<?>> cgLibCheckedClasses = new WeakClassCache<Class<?>>();
+    /** Memoized pre-enhanced class per class, when CGLib enhanced classes are not checked. */
+    private static final WeakClassCache<Class<?>> cgLibUncheckedClasses = new WeakClassCache<Class<?>>();
 
     private UnEnhancer() {}
     
@@ -56,58 +70,104 @@ public class UnEnhancer
     /**
      * Digs out the pre CGLIB/Javassist enhanced class, if any.
      */
-    public static <T> Class<T> unenhanceClass(Class<?> c) 
+    public static <T> Class<T> unenhanceClass(Class<?> c) {
+        return unenhanceClass(c, isCheckCGLib());
+    }
+    
+    /**
+     * Digs out the pre CGLIB/Javassist enhanced class, if any, memoized per class.
+     * 
+     * @param checkCGLib true if CGLib enhanced classes are to be checked, 
+     * as typically resolved once via {@link #isCheckCGLib()} for an entire copy operation.
+     */
+    public static <T> Class<T> unenhanceClass(Class<?> c, boolean checkCGLib) 
+    {
+        if (c == null)
+            return null;
+        final WeakClassCache<Class<?>> cache = checkCGLib ? cgLibCheckedClasses : cgLibUncheckedClasses;
+        Class<?> ret = cache.get(c);
+        
+        if (ret == null)
+            ret = cache.putIfAbsent(c, computeUnenhancedClass(c, checkCGLib));
+        @SuppressWarnings("unchecked") Class<T> t = (Class<T>)ret;
+        return t;
+    }
+    
+    private static Class<?> computeUnenhancedClass(Class<?> c, boolean checkCGLib) 
     {
         boolean enhanced = true;
         
         while (c != null && enhanced)
         {
-            enhanced =  isCheckCGLib() && Enhancer.isEnhanced(c)
+            enhanced =  checkCGLib && Enhancer.isEnhanced(c)
                      || isJavassistEnhanced(c)
                      ;
             if (enhanced)
                 c = c.getSuperclass();
         }
-        
-        @SuppressWarnings("unchecked") Class<T> ret = (Class<T>)c;
-        return ret;
+        return c;
+    }
+    
+    public static <T> Class<T> getActualClass(Object object) {
+        return getActualClass(object, isCheckCGLib());
     }
     
-    public static <T> Class<T> getActualClass(Object object) 
+    /**
+     * Returns the pre CGLIB/Javassist enhanced class of the given object, 
+     * or the class of the underlying persistent object if the given object is a Hibernate proxy,
+     * initializing the proxy if necessary.
+     * 
+     * @param checkCGLib true if CGLib enhanced classes are to be checked, 
+     * as typically resolved once via {@link #isCheckCGLib()} for an entire copy operation.
+     */
+    public static <T> Class<T> getActualClass(Object object, boolean checkCGLib) {
+        return getActualClass(object, checkCGLib, true);
+    }
+    
+    /**
+     * Returns the pre CGLIB/Javassist enhanced class of the given object, 
+     * or the class of the underlying persistent object if the given object is a Hibernate proxy.
+     * 
+     * @param checkCGLib true if CGLib enhanced classes are to be checked, 
+     * as typically resolved once via {@link #isCheckCGLib()} for an entire copy operation.
+     * @param initializeProxy true if an uninitialized Hibernate proxy is to be initialized
+     * to find out the class of the underlying persistent object; 
+     * false if the persistent class of the proxy is to be returned instead, which may 
+     * be a superclass of the actual class but never causes a database access. 
+     */
+    public static <T> Class<T> getActualClass(Object object, boolean checkCGLib, boolean initializeProxy) 
     {
-        Class<?> c = object.getClass();
-        boolean enhanced = true;
+        final Class<?> c = object.getClass();
+        final Class<T> unenhanced = unenhanceClass(c, checkCGLib);
         
-        while (c != null && enhanced)
+        if (unenhanced != c && object instanceof HibernateProxy) 
         {
-            enhanced =  isCheckCGLib() && Enhancer.isEnhanced(c)
-                     || isJavassistEnhanced(c)
-                     ;
-            if (enhanced) 
-            {
-                if (object instanceof HibernateProxy) 
-                {
-                    HibernateProxy hibernateProxy = (HibernateProxy)object; 
-                    LazyInitializer lazyInitializer = hibernateProxy.getHibernateLazyInitializer();
-                    try {
-                        // suggested by Chris (harris3@sourceforge.net)
-                        Object impl = lazyInitializer.getImplementation();
-                        
-                        if (impl != null) {
-                            @SuppressWarnings("unchecked") Class<T> ret = (Class<T>)impl.getClass();
-                            return ret;
-                        }
-                    } catch(HibernateException ex) {
-                        Logger.getLogger(UnEnhancer.class).warn("Unable to retrieve the underlying persistent object", ex);
+            HibernateProxy hibernateProxy = (HibernateProxy)object; 
+            LazyInitializer lazyInitializer = hibernateProxy.getHibernateLazyInitializer();
+            
+            if (initializeProxy || !lazyInitializer.isUninitialized()) {
+                try {
+                    // suggested by Chris (harris3@sourceforge.net)
+                    Object impl = lazyInitializer.getImplementation();
+                    
+                    if (impl != null) {
+                        @SuppressWarnings("unchecked") Class<T> ret = (Class<T>)impl.getClass();
+                        return ret;
                     }
-                    @SuppressWarnings("unchecked") Class<T> ret = lazyInitializer.getPersistentClass();
-                    return ret;
+                } catch(HibernateException ex) {
+                    Logger.getLogger(UnEnhancer.class).warn("Unable to retrieve the underlying persistent object", ex);
                 }
-                c = c.getSuperclass();
             }
+            @SuppressWarnings("unchecked") Class<T> ret = lazyInitializer.getPersistentClass();
+            return ret;
         }
-        @SuppressWarnings("unchecked") Class<T> ret = (Class<T>)c;
-        return ret;
+        return unenhanced;
+    }
+    
+    /** Returns true if the given object is a Hibernate proxy that has yet to be initialized; false otherwise. */
+    public static boolean isUninitializedProxy(Object object) {
+        return object instanceof HibernateProxy
+            && ((HibernateProxy)object).getHibernateLazyInitializer().isUninitialized();
     }
     
     public static <T> T unenhanceObject(T object) {
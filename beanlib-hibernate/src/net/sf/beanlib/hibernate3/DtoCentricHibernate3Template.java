@@ -20,21 +20,52 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import net.sf.beanlib.spi.PropertyFilter;
 
 import org.hibernate.Criteria;
+import org.hibernate.EntityMode;
+import org.hibernate.FetchMode;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.EntityKey;
+import org.hibernate.engine.PersistenceContext;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.hibernate.engine.SessionImplementor;
+import org.hibernate.impl.CriteriaImpl;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
 import org.springframework.dao.DataAccessException;
 import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 
 /**
  * Base class for Hibernate 3 DTO Centric {@link org.springframework.orm.hibernate3.HibernateTemplate}.
+ * <p>
+ * The loading and finder methods optionally accept a {@link FetchPlan},
+ * which defines once both what is fetched and what is replicated into DTO's.
+ * To-one associations included by the plan are join fetched whenever the entity name of a criteria query is known,
+ * up to the {@link #setMaxFetchDepth(int) maximum fetch depth};
+ * the remaining lazy collections and proxies included by the plan 
+ * are initialized in bulk via {@link Hibernate3BatchInitializer} before the replication.
+ * Collections are never join fetched, as joining multiple collections multiplies the rows returned.
+ * <p>
+ * The scroll methods stream large results instead of materializing them in full:
+ * the results are scrolled forward only, and replicated into DTO's one chunk at a time,
+ * evicting the entities loaded for each chunk from the session afterwards, 
+ * so the memory used is bounded by the chunk size.
+ * The entities already associated with the session before scrolling, 
+ * including any pending change to them, are left untouched.
  * 
  * @author Joe D. Velopar
  */
@@ -42,6 +73,15 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
 {
     private String applicationPackagePrefix;
     private Class<?> applicationSampleClass;
+    private int fetchBatchSize = Hibernate3BatchInitializer.DEFAULT_BATCH_SIZE;
+    /** Maximum depth of the join fetched to-one associations; or null for that of the session factory. */
+    private Integer maxFetchDepth;
+    
+    /** 
+     * Default maximum depth of the join fetched to-one associations, 
+     * if <code>hibernate.max_fetch_depth</code> is not configured for the session factory. 
+     */
+    public static final int DEFAULT_MAX_FETCH_DEPTH = 2;
 
     public DtoCentricHibernate3Template() {
 	}
@@ -68,6 +108,146 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
         return new Hibernate3DtoCopier(applicationPackagePrefix, applicationSampleClass);
     }
     
+    /** 
+     * Sets the maximum number of owners or entities to be initialized per query 
+     * when applying a fetch plan.
+     */
+    public DtoCentricHibernate3Template setFetchBatchSize(int fetchBatchSize) {
+        if (fetchBatchSize < 1)
+            throw new IllegalArgumentException("Argument fetchBatchSize must be positive");
+        this.fetchBatchSize = fetchBatchSize;
+        return this;
+    }
+    
+    public int getFetchBatchSize() {
+        return fetchBatchSize;
+    }
+    
+    /** 
+     * Sets the maximum depth of the to-one associations to be join fetched when applying a fetch plan,
+     * where the associations of the root entity are at depth one; or zero to disable join fetching.
+     * The lazy associations beyond are initialized in bulk instead.
+     * Defaults to <code>hibernate.max_fetch_depth</code> if configured for the session factory,
+     * or {@link #DEFAULT_MAX_FETCH_DEPTH} otherwise.
+     */
+    public DtoCentricHibernate3Template setMaxFetchDepth(int maxFetchDepth) {
+        if (maxFetchDepth < 0)
+            throw new IllegalArgumentException("Argument maxFetchDepth must not be negative");
+        this.maxFetchDepth = maxFetchDepth;
+        return this;
+    }
+    
+    public int getMaxFetchDepth() {
+        if (maxFetchDepth != null)
+            return maxFetchDepth;
+        SessionFactory sessionFactory = getSessionFactory();
+        Integer configured = sessionFactory instanceof SessionFactoryImplementor
+                           ? ((SessionFactoryImplementor)sessionFactory).getSettings().getMaximumFetchDepth()
+                           : null;
+        return configured == null ? DEFAULT_MAX_FETCH_DEPTH : configured;
+    }
+    
+    /**
+     * Returns the DTO's replicated from the given entities, 
+     * according to the given fetch plan if not null. 
+     */
+    private List<?> hibernate2dto(Session session, List<?> entities, FetchPlan fetchPlan) 
+    {
+        Hibernate3DtoCopier dtoCopier = getHibernateDtoCopier();
+        
+        if (fetchPlan == null)
+            return dtoCopier.hibernate2dto(entities);
+        return dtoCopier.hibernate2dto(null, entities, fetchPlan, 
+                    new Hibernate3BatchInitializer(session, fetchBatchSize));
+    }
+    
+    /**
+     * Join fetches the to-one associations of the given criteria that are included by the given fetch plan,
+     * recursively up to the maximum fetch depth.
+     * 
+     * @param entityName entity name of the criteria root; or null if unknown, in which case nothing is join fetched.
+     */
+    private void applyFetchPlan(Criteria criteria, String entityName, FetchPlan fetchPlan) 
+    {
+        final int maxFetchDepth = getMaxFetchDepth();
+        
+        if (fetchPlan == null || entityName == null || maxFetchDepth == 0)
+            return;
+        ClassMetadata classMetadata = getSessionFactory().getClassMetadata(entityName);
+        
+        if (classMetadata == null)
+            return;
+        PropertyFilter propertyFilter = getHibernateDtoCopier().createPropertyFilter(
+                fetchPlan.getInterestedEntityTypes(), fetchPlan.getCollectionPropertyNames());
+        Set<String> visitedEntityNames = new HashSet<String>();
+        visitedEntityNames.add(classMetadata.getEntityName());
+        joinToOneAssociations(criteria, classMetadata, null, 1, maxFetchDepth, propertyFilter, visitedEntityNames);
+    }
+    
+    /**
+     * Returns the entity name of the root of the given criteria; or null if unknown.
+     * <p>
+     * Notes the Criteria API doesn't expose the entity name, which is therefore read from
+     * {@link CriteriaImpl}, the internal implementation of the root criteria of Hibernate 3.
+     * The entity name is unknown for any other implementation, in which case no association 
+     * is join fetched, and the associations included by a fetch plan are only initialized in bulk.
+     */
+    private static String entityNameOf(Criteria criteria) {
+        return criteria instanceof CriteriaImpl ? ((CriteriaImpl)criteria).getEntityOrClassName() : null;
+    }
+    
+    /**
+     * @param depth depth of the associations of the given class metadata, starting from one
+     */
+    private void joinToOneAssociations(Criteria criteria, ClassMetadata classMetadata, String path, 
+            int depth, int maxFetchDepth, PropertyFilter propertyFilter, Set<String> visitedEntityNames)
+    {
+        Class<?> mappedClass = classMetadata.getMappedClass(EntityMode.POJO);
+        
+        if (mappedClass == null)
+            return;
+        String[] propertyNames = classMetadata.getPropertyNames();
+        Type[] propertyTypes = classMetadata.getPropertyTypes();
+        
+        for (int i=0; i < propertyNames.length; i++) 
+        {
+            if (!propertyTypes[i].isEntityType())
+                continue;
+            String propertyName = propertyNames[i];
+            Method readerMethod = getReaderMethod(mappedClass, propertyName);
+            
+            if (readerMethod == null || !propertyFilter.propagate(propertyName, readerMethod))
+                continue;
+            String associationPath = path == null ? propertyName : path + "." + propertyName;
+            criteria.setFetchMode(associationPath, FetchMode.JOIN);
+            String associatedEntityName = ((EntityType)propertyTypes[i]).getAssociatedEntityName();
+            
+            if (depth < maxFetchDepth && visitedEntityNames.add(associatedEntityName)) 
+            {
+                ClassMetadata associatedClassMetadata = getSessionFactory().getClassMetadata(associatedEntityName);
+                
+                if (associatedClassMetadata != null)
+                    joinToOneAssociations(criteria, associatedClassMetadata, associationPath, 
+                            depth + 1, maxFetchDepth, propertyFilter, visitedEntityNames);
+                visitedEntityNames.remove(associatedEntityName);
+            }
+        }
+    }
+    
+    /** Returns the public JavaBean getter of the given property; or null if there is none. */
+    private static Method getReaderMethod(Class<?> c, String propertyName) 
+    {
+        String suffix = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+        
+        for (String prefix : new String[] {"get", "is"}) {
+            try {
+                return c.getMethod(prefix + suffix);
+            } catch (NoSuchMethodException ignore) {
+            }
+        }
+        return null;
+    }
+    
     //-------------------------------------------------------------------------
     // Convenience methods for loading individual objects
     //-------------------------------------------------------------------------
@@ -133,29 +313,213 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     @Override
     public @SuppressWarnings("unchecked") List loadAll(final Class entityClass) 
         throws DataAccessException 
+    {
+        return loadAll(entityClass, null);
+    }
+
+    /** 
+     * Returns the DTO's of all the entities of the given class, 
+     * fetched and replicated according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List loadAll(final Class entityClass, final FetchPlan fetchPlan) 
+        throws DataAccessException 
     {
         return (List) execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
                 Criteria criteria = session.createCriteria(entityClass);
                 prepareCriteria(criteria);
-                return getHibernateDtoCopier().hibernate2dto(criteria.list());
+                applyFetchPlan(criteria, entityClass.getName(), fetchPlan);
+                return hibernate2dto(session, criteria.list(), fetchPlan);
             }
         }, true);
     }
 
-    @SuppressWarnings("unchecked")
     public <T> List<T> loadByCriteria(final CriteriaSpecifiable specifier) 
         throws DataAccessException 
+    {
+        return this.<T>loadByCriteria(specifier, null);
+    }
+    
+    /** 
+     * Returns the DTO's of the entities matching the specified criteria, 
+     * fetched and replicated according to the given fetch plan.
+     * The to-one associations included by the plan are join fetched only if the specified criteria 
+     * is a root criteria as created by the session, whose entity name is then known.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> loadByCriteria(final CriteriaSpecifiable specifier, final FetchPlan fetchPlan) 
+        throws DataAccessException 
     {
         return (List<T>)execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
                 Criteria criteria = specifier.specify(session);
                 prepareCriteria(criteria);
-                return getHibernateDtoCopier().hibernate2dto(criteria.list());
+                
+                applyFetchPlan(criteria, entityNameOf(criteria), fetchPlan);
+                return hibernate2dto(session, criteria.list(), fetchPlan);
+            }
+        }, true);
+    }
+    
+    //-------------------------------------------------------------------------
+    // Streaming methods
+    //-------------------------------------------------------------------------
+    
+    /**
+     * Streams the DTO's of all the entities of the given class to the given handler, 
+     * one chunk at a time.
+     * Note the entities loaded for each chunk are evicted from the session afterwards. 
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     * @param chunkSize maximum number of entities to be replicated and held in the session at a time
+     * @return the total number of entities streamed
+     */
+    public int scrollAll(final Class<?> entityClass, final FetchPlan fetchPlan, 
+            final int chunkSize, final DtoChunkHandler handler) 
+        throws DataAccessException 
+    {
+        checkChunkSize(chunkSize);
+        return (Integer) execute(new HibernateCallback() {
+            public Object doInHibernate(Session session) throws HibernateException {
+                Criteria criteria = session.createCriteria(entityClass);
+                prepareCriteria(criteria);
+                applyFetchPlan(criteria, entityClass.getName(), fetchPlan);
+                return scroll(session, criteria.scroll(ScrollMode.FORWARD_ONLY), fetchPlan, chunkSize, handler);
+            }
+        }, true);
+    }
+    
+    /**
+     * Streams the DTO's of the entities matching the specified criteria to the given handler, 
+     * one chunk at a time.
+     * Note the entities loaded for each chunk are evicted from the session afterwards. 
+     * The to-one associations included by the fetch plan are join fetched only if the specified criteria 
+     * is a root criteria as created by the session, whose entity name is then known.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     * @param chunkSize maximum number of entities to be replicated and held in the session at a time
+     * @return the total number of entities streamed
+     */
+    public int scrollByCriteria(final CriteriaSpecifiable specifier, final FetchPlan fetchPlan, 
+            final int chunkSize, final DtoChunkHandler handler) 
+        throws DataAccessException 
+    {
+        checkChunkSize(chunkSize);
+        return (Integer) execute(new HibernateCallback() {
+            public Object doInHibernate(Session session) throws HibernateException {
+                Criteria criteria = specifier.specify(session);
+                prepareCriteria(criteria);
+                
+                applyFetchPlan(criteria, entityNameOf(criteria), fetchPlan);
+                return scroll(session, criteria.scroll(ScrollMode.FORWARD_ONLY), fetchPlan, chunkSize, handler);
             }
         }, true);
     }
     
+    /**
+     * Streams the DTO's of the results of the given HQL query to the given handler, 
+     * one chunk at a time.
+     * Note the entities loaded for each chunk are evicted from the session afterwards. 
+     * 
+     * @param values positional parameter values of the query; or null if none.
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     * @param chunkSize maximum number of results to be replicated and held in the session at a time
+     * @return the total number of results streamed
+     */
+    public int scroll(final String queryString, final Object[] values, final FetchPlan fetchPlan, 
+            final int chunkSize, final DtoChunkHandler handler) 
+        throws DataAccessException 
+    {
+        checkChunkSize(chunkSize);
+        return (Integer) execute(new HibernateCallback() {
+            public Object doInHibernate(Session session) throws HibernateException {
+                Query queryObject = session.createQuery(queryString);
+                prepareQuery(queryObject);
+                if (values != null) {
+                    for (int i = 0; i < values.length; i++) {
+                        queryObject.setParameter(i, values[i]);
+                    }
+                }
+                return scroll(session, queryObject.scroll(ScrollMode.FORWARD_ONLY), fetchPlan, chunkSize, handler);
+            }
+        }, true);
+    }
+    
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Argument chunkSize must be positive");
+    }
+    
+    /**
+     * Scrolls through the given results, replicating them into DTO's one chunk at a time.
+     * The entities loaded for each chunk are evicted from the session before the DTO's are passed to the handler.
+     * 
+     * @return the total number of results scrolled
+     */
+    private int scroll(Session session, ScrollableResults results, FetchPlan fetchPlan, 
+            int chunkSize, DtoChunkHandler handler) 
+    {
+        List<Object> chunk = new ArrayList<Object>(chunkSize);
+        // The entities associated with the session before scrolling, which are not to be evicted
+        Set<?> retainedEntityKeys = new HashSet<Object>(session.getStatistics().getEntityKeys());
+        int count = 0;
+        try {
+            while (results.next()) {
+                Object[] row = results.get();
+                // Same as Query.list(), which returns an array only for a row with multiple columns
+                chunk.add(row.length == 1 ? row[0] : row);
+                count++;
+                
+                if (chunk.size() == chunkSize)
+                    handleChunk(session, chunk, fetchPlan, retainedEntityKeys, handler);
+            }
+            if (chunk.size() > 0)
+                handleChunk(session, chunk, fetchPlan, retainedEntityKeys, handler);
+        } finally {
+            results.close();
+        }
+        return count;
+    }
+    
+    private void handleChunk(Session session, List<Object> chunk, FetchPlan fetchPlan, 
+            Set<?> retainedEntityKeys, DtoChunkHandler handler) 
+    {
+        List<?> dtos = hibernate2dto(session, chunk, fetchPlan);
+        chunk.clear();
+        evictAllBut(session, retainedEntityKeys);
+        handler.handle(dtos);
+    }
+    
+    /** 
+     * Evicts from the given session the entities other than those of the given keys,
+     * along with their collections. 
+     * If the entities cannot be resolved from the session, the session is flushed and then cleared instead,
+     * so that no pending change is discarded.
+     */
+    private static void evictAllBut(Session session, Set<?> retainedEntityKeys) 
+    {
+        if (!(session instanceof SessionImplementor)) {
+            session.flush();
+            session.clear();
+            return;
+        }
+        PersistenceContext persistenceContext = ((SessionImplementor)session).getPersistenceContext();
+        
+        // Copied, as evicting entities changes the keys
+        for (Object key : new ArrayList<Object>(session.getStatistics().getEntityKeys())) {
+            if (retainedEntityKeys.contains(key))
+                continue;
+            Object entity = persistenceContext.getEntity((EntityKey)key);
+            
+            if (entity != null)
+                session.evict(entity);
+        }
+    }
+    
     //-------------------------------------------------------------------------
     // Convenience finder methods for HQL strings
     //-------------------------------------------------------------------------
@@ -163,6 +527,18 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     @Override
     public @SuppressWarnings("unchecked") List find(final String queryString, final Object[] values) 
         throws DataAccessException 
+    {
+        return find(queryString, values, null);
+    }
+
+    /** 
+     * Same as {@link #find} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List find(final String queryString, final Object[] values, final FetchPlan fetchPlan) 
+        throws DataAccessException 
     {
         return (List) execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
@@ -173,7 +549,7 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
                         queryObject.setParameter(i, values[i]);
                     }
                 }
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -182,6 +558,19 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     public @SuppressWarnings("unchecked") List findByNamedParam(
                 final String queryString, final String[] paramNames, final Object[] values)
             throws DataAccessException 
+    {
+        return findByNamedParam(queryString, paramNames, values, null);
+    }
+
+    /** 
+     * Same as {@link #findByNamedParam} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List findByNamedParam(
+                final String queryString, final String[] paramNames, final Object[] values, final FetchPlan fetchPlan)
+            throws DataAccessException 
     {
         if (paramNames.length != values.length) {
             throw new IllegalArgumentException("Length of paramNames array must match length of values array");
@@ -195,7 +584,7 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
                         applyNamedParameterToQuery(queryObject, paramNames[i], values[i]);
                     }
                 }
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -203,13 +592,25 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     @Override
     public @SuppressWarnings("unchecked") List findByValueBean(final String queryString, final Object valueBean)
             throws DataAccessException 
+    {
+        return findByValueBean(queryString, valueBean, null);
+    }
+
+    /** 
+     * Same as {@link #findByValueBean} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List findByValueBean(final String queryString, final Object valueBean, final FetchPlan fetchPlan)
+            throws DataAccessException 
     {
         return (List) execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
                 Query queryObject = session.createQuery(queryString);
                 prepareQuery(queryObject);
                 queryObject.setProperties(valueBean);
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -222,6 +623,18 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     @Override
     public @SuppressWarnings("unchecked") List findByNamedQuery(final String queryName, final Object[] values) 
         throws DataAccessException 
+    {
+        return findByNamedQuery(queryName, values, null);
+    }
+
+    /** 
+     * Same as {@link #findByNamedQuery} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List findByNamedQuery(final String queryName, final Object[] values, final FetchPlan fetchPlan) 
+        throws DataAccessException 
     {
         return (List) execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
@@ -232,7 +645,7 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
                         queryObject.setParameter(i, values[i]);
                     }
                 }
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -241,6 +654,19 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     public @SuppressWarnings("unchecked") List findByNamedQueryAndNamedParam(
             final String queryName, final String[] paramNames, final Object[] values)
             throws DataAccessException 
+    {
+        return findByNamedQueryAndNamedParam(queryName, paramNames, values, null);
+    }
+
+    /** 
+     * Same as {@link #findByNamedQueryAndNamedParam} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List findByNamedQueryAndNamedParam(
+            final String queryName, final String[] paramNames, final Object[] values, final FetchPlan fetchPlan)
+            throws DataAccessException 
     {
         if (paramNames != null && values != null && paramNames.length != values.length) {
             throw new IllegalArgumentException("Length of paramNames array must match length of values array");
@@ -254,7 +680,7 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
                         applyNamedParameterToQuery(queryObject, paramNames[i], values[i]);
                     }
                 }
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -262,13 +688,25 @@ public class DtoCentricHibernate3Template extends HibernateTemplate
     @Override
     public @SuppressWarnings("unchecked") List findByNamedQueryAndValueBean(final String queryName, final Object valueBean)
             throws DataAccessException 
+    {
+        return findByNamedQueryAndValueBean(queryName, valueBean, null);
+    }
+
+    /** 
+     * Same as {@link #findByNamedQueryAndValueBean} but fetches and replicates the result
+     * according to the given fetch plan.
+     * 
+     * @param fetchPlan fetch plan; or null for the default replication without any fetch plan.
+     */
+    public @SuppressWarnings("unchecked") List findByNamedQueryAndValueBean(final String queryName, final Object valueBean, final FetchPlan fetchPlan)
+            throws DataAccessException 
     {
         return (List) execute(new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException {
                 Query queryObject = session.getNamedQuery(queryName);
                 prepareQuery(queryObject);
                 queryObject.setProperties(valueBean);
-                return getHibernateDtoCopier().hibernate2dto(queryObject.list() /*, getSessionFactory() */);
+                return hibernate2dto(session, queryObject.list(), fetchPlan);
             }
         }, true);
     }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import java.util.List;
+
+/**
+ * Used as a callback to receive the DTO's streamed by {@link DtoCentricHibernate3Template}, 
+ * one chunk at a time.
+ * 
+ * @author Joe D. Velopar
+ */
+public interface DtoChunkHandler {
+    /**
+     * Handles the next chunk of DTO's, in the order of the scrolled results.
+     * The entities the DTO's were replicated from have already been evicted from the session.
+     */
+    public void handle(List<?> dtos);
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import net.jcip.annotations.Immutable;
+import net.sf.beanlib.CollectionPropertyName;
+
+/**
+ * The part of the object graphs of some Hibernate entities that is to be both fetched and 
+ * replicated into DTO's, specified the same way as for {@link Hibernate3DtoCopier}.
+ * <p>
+ * Defining the fetch and the replication once ensures they agree with each other:
+ * whatever is replicated is fetched upfront with a handful of queries, 
+ * rather than faulted in one association at a time during the replication.
+ * 
+ * @see DtoCentricHibernate3Template
+ * 
+ * @author Joe D. Velopar
+ */
+@Immutable
+public final class FetchPlan 
+{
+    private final Class<?>[] interestedEntityTypes;
+    private final CollectionPropertyName<?>[] collectionPropertyNames;
+    
+    /**
+     * @param interestedEntityTypes properties of these types will be fetched and replicated;
+     * null means all whereas empty means none other than those implied by the application package prefix.
+     * @param collectionPropertyNames collection and map properties to be fetched and replicated;
+     * null means all whereas empty means none.
+     */
+    public FetchPlan(Class<?>[] interestedEntityTypes, CollectionPropertyName<?>... collectionPropertyNames) 
+    {
+        this.interestedEntityTypes = interestedEntityTypes == null ? null : interestedEntityTypes.clone();
+        this.collectionPropertyNames = collectionPropertyNames == null ? null : collectionPropertyNames.clone();
+    }
+    
+    public Class<?>[] getInterestedEntityTypes() {
+        return interestedEntityTypes == null ? null : interestedEntityTypes.clone();
+    }
+    
+    public CollectionPropertyName<?>[] getCollectionPropertyNames() {
+        return collectionPropertyNames == null ? null : collectionPropertyNames.clone();
+    }
+}
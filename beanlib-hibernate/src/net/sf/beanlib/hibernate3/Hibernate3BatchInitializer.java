@@ -0,0 +1,321 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.hibernate3;
+
+import static net.sf.beanlib.utils.ClassUtils.immutable;
+import static net.sf.beanlib.utils.ClassUtils.isJavaPackage;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.hibernate.HibernateBatchInitializer;
+import net.sf.beanlib.hibernate.UnEnhancer;
+import net.sf.beanlib.spi.PropertyFilter;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+
+/**
+ * Hibernate 3 Batch Initializer.
+ * <p>
+ * Used to initialize, in bulk, the lazy collections and proxies reachable from some 
+ * Hibernate objects prior to their replication, so that the replication itself runs 
+ * entirely against initialized data rather than issuing a query per collection or proxy.
+ * <p>
+ * The object graph is walked via the JavaBean properties allowed by a {@link PropertyFilter},
+ * such as the one used for the replication. The uninitialized collections found are grouped 
+ * by role, and the uninitialized proxies by entity name; each group is then initialized 
+ * with IN-list queries of up to the configured batch size. The walk continues from the
+ * newly initialized data until no more uninitialized collection or proxy is reachable.
+ * <p>
+ * Notes the objects must be associated with the given session, which must be open.
+ * A collection or proxy that cannot be initialized in bulk, such as one of an entity 
+ * without an identifier property, is initialized individually.
+ * 
+ * @see net.sf.beanlib.hibernate.HibernateBeanReplicator#initBatchInitializer(HibernateBatchInitializer)
+ * 
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+public class Hibernate3BatchInitializer implements HibernateBatchInitializer
+{
+    /** Default maximum number of identifiers per IN-list query. */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    
+    private final Logger log = Logger.getLogger(getClass());
+    private final Session session;
+    private final int batchSize;
+    /** Readable properties per class. */
+    private final Map<Class<?>, PropertyDescriptor[]> propertiesByClass = new HashMap<Class<?>, PropertyDescriptor[]>();
+    /** Number of queries issued so far. */
+    private int queryCount;
+    
+    /** Constructs with the given session and the {@link #DEFAULT_BATCH_SIZE}. */
+    public Hibernate3BatchInitializer(Session session) {
+        this(session, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * @param session the session the objects to be walked are associated with
+     * @param batchSize maximum number of identifiers per IN-list query
+     */
+    public Hibernate3BatchInitializer(Session session, int batchSize) 
+    {
+        if (session == null)
+            throw new IllegalArgumentException("Argument session must not be null");
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Argument batchSize must be positive");
+        this.session = session;
+        this.batchSize = batchSize;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    /** Returns the number of queries issued so far by this initializer. */
+    public int getQueryCount() {
+        return queryCount;
+    }
+    
+    /**
+     * Initializes the lazy collections and proxies reachable from the given objects.
+     * 
+     * @param roots the objects to start walking from, which may contain null
+     * @param propertyFilter used to determine which properties to walk; or null for all
+     */
+    public void initialize(Collection<?> roots, PropertyFilter propertyFilter) 
+    {
+        final Map<Object,Object> visited = new IdentityHashMap<Object,Object>();
+        // Objects yet to be walked
+        List<Object> frontier = new ArrayList<Object>(roots);
+        // Collections visited but yet to have their elements walked
+        List<PersistentCollection> initialized = new ArrayList<PersistentCollection>();
+        
+        while (!frontier.isEmpty() || !initialized.isEmpty()) {
+            // Phase one: gather the uninitialized collections and proxies 
+            final Map<String, List<PersistentCollection>> collectionsByRole = 
+                new LinkedHashMap<String, List<PersistentCollection>>();
+            final Map<String, List<HibernateProxy>> proxiesByEntityName = 
+                new LinkedHashMap<String, List<HibernateProxy>>();
+            
+            for (Object obj : frontier)
+                walk(obj, propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            for (PersistentCollection collection : initialized)
+                walkContents(collection, propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            // Phase two: initialize them in bulk, and carry on from the initialized data
+            frontier = new ArrayList<Object>();
+            initialized = new ArrayList<PersistentCollection>();
+            
+            for (Map.Entry<String, List<PersistentCollection>> e : collectionsByRole.entrySet()) {
+                initializeCollections(e.getKey(), e.getValue());
+                initialized.addAll(e.getValue());
+            }
+            for (Map.Entry<String, List<HibernateProxy>> e : proxiesByEntityName.entrySet()) {
+                initializeProxies(e.getKey(), e.getValue());
+                
+                for (HibernateProxy proxy : e.getValue())
+                    frontier.add(proxy.getHibernateLazyInitializer().getImplementation());
+            }
+        }
+    }
+    
+    private void walk(Object obj, PropertyFilter propertyFilter, Map<Object,Object> visited,
+            Map<String, List<PersistentCollection>> collectionsByRole,
+            Map<String, List<HibernateProxy>> proxiesByEntityName) 
+    {
+        if (obj == null || immutable(obj.getClass()))
+            return;
+        if (obj instanceof HibernateProxy) {
+            HibernateProxy proxy = (HibernateProxy)obj;
+            
+            if (proxy.getHibernateLazyInitializer().isUninitialized()) {
+                if (visited.put(obj, obj) == null)
+                    add(proxiesByEntityName, proxy.getHibernateLazyInitializer().getEntityName(), proxy);
+                return;
+            }
+            obj = proxy.getHibernateLazyInitializer().getImplementation();
+        }
+        if (visited.put(obj, obj) != null)
+            return;
+        if (obj instanceof PersistentCollection) {
+            PersistentCollection collection = (PersistentCollection)obj;
+            
+            if (!collection.wasInitialized()) {
+                add(collectionsByRole, collection.getRole(), collection);
+                return;
+            }
+        }
+        walkContents(obj, propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+    }
+    
+    private void walkContents(Object obj, PropertyFilter propertyFilter, Map<Object,Object> visited,
+            Map<String, List<PersistentCollection>> collectionsByRole,
+            Map<String, List<HibernateProxy>> proxiesByEntityName) 
+    {
+        if (obj instanceof Collection) {
+            for (Object element : (Collection<?>)obj)
+                walk(element, propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            return;
+        }
+        if (obj instanceof Map) {
+            for (Map.Entry<?,?> e : ((Map<?,?>)obj).entrySet()) {
+                walk(e.getKey(), propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+                walk(e.getValue(), propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            }
+            return;
+        }
+        if (obj instanceof Object[]) {
+            for (Object element : (Object[])obj)
+                walk(element, propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            return;
+        }
+        if (obj.getClass().isArray() || isJavaPackage(obj.getClass()))
+            return;
+        // A JavaBean
+        for (PropertyDescriptor pd : getProperties(obj.getClass())) {
+            Method reader = pd.getReadMethod();
+            
+            if (propertyFilter != null && !propertyFilter.propagate(pd.getName(), reader))
+                continue;
+            try {
+                walk(reader.invoke(obj), propertyFilter, visited, collectionsByRole, proxiesByEntityName);
+            } catch (IllegalAccessException e) {
+                throw new BeanlibException(e);
+            } catch (InvocationTargetException e) {
+                throw new BeanlibException(e.getTargetException());
+            }
+        }
+    }
+    
+    /** Returns the public readable properties of the given class, other than those of immutable types. */
+    private PropertyDescriptor[] getProperties(Class<?> c) 
+    {
+        PropertyDescriptor[] properties = propertiesByClass.get(c);
+        
+        if (properties == null) {
+            List<PropertyDescriptor> list = new ArrayList<PropertyDescriptor>();
+            try {
+                for (PropertyDescriptor pd : Introspector.getBeanInfo(UnEnhancer.unenhanceClass(c)).getPropertyDescriptors()) {
+                    Method reader = pd.getReadMethod();
+                    
+                    if (reader != null && !immutable(reader.getReturnType()))
+                        list.add(pd);
+                }
+            } catch (IntrospectionException e) {
+                throw new BeanlibException(e);
+            }
+            properties = list.toArray(new PropertyDescriptor[list.size()]);
+            propertiesByClass.put(c, properties);
+        }
+        return properties;
+    }
+    
+    private static <T> void add(Map<String, List<T>> map, String key, T value) 
+    {
+        List<T> list = map.get(key);
+        
+        if (list == null) {
+            list = new ArrayList<T>();
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+    
+    /** 
+     * Initializes the given collections of the given role by fetch joining them 
+     * from their owners, in batches.
+     */
+    private void initializeCollections(String role, List<PersistentCollection> collections) 
+    {
+        final SessionFactoryImplementor factory = (SessionFactoryImplementor)session.getSessionFactory();
+        final CollectionPersister collectionPersister = factory.getCollectionPersister(role);
+        final EntityPersister ownerPersister = collectionPersister.getOwnerEntityPersister();
+        final String entityName = ownerPersister.getEntityName();
+        
+        if (!ownerPersister.hasIdentifierProperty() || !role.startsWith(entityName + ".")) {
+            initializeIndividually(collections);
+            return;
+        }
+        final String property = role.substring(entityName.length() + 1);
+        final String hql = "select distinct o from " + entityName + " o left join fetch o." + property
+                         + " where o." + ownerPersister.getIdentifierPropertyName() + " in (:ids)";
+        final List<Serializable> keys = new ArrayList<Serializable>(collections.size());
+        
+        for (PersistentCollection collection : collections)
+            keys.add(collection.getKey());
+        query(hql, keys);
+        // Any collection left uninitialized, such as one not owned by an entity of the session
+        initializeIndividually(collections);
+    }
+    
+    /** Initializes the given proxies of the given entity by loading the entities in batches. */
+    private void initializeProxies(String entityName, List<HibernateProxy> proxies) 
+    {
+        final SessionFactoryImplementor factory = (SessionFactoryImplementor)session.getSessionFactory();
+        final EntityPersister persister = factory.getEntityPersister(entityName);
+        
+        if (persister.hasIdentifierProperty()) {
+            final String hql = "from " + entityName + " e where e." + persister.getIdentifierPropertyName() + " in (:ids)";
+            final List<Serializable> ids = new ArrayList<Serializable>(proxies.size());
+            
+            for (HibernateProxy proxy : proxies)
+                ids.add(proxy.getHibernateLazyInitializer().getIdentifier());
+            query(hql, ids);
+        }
+        // Resolved from the persistence context if loaded above
+        initializeIndividually(proxies);
+    }
+    
+    private void query(String hql, List<Serializable> ids) 
+    {
+        for (int from=0; from < ids.size(); from += batchSize) {
+            List<Serializable> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            
+            if (log.isDebugEnabled())
+                log.debug(hql + " with " + batch.size() + " identifiers");
+            session.createQuery(hql).setParameterList("ids", batch).list();
+            queryCount++;
+        }
+    }
+    
+    private void initializeIndividually(Collection<?> objects) 
+    {
+        for (Object obj : objects) {
+            if (!Hibernate.isInitialized(obj))
+                Hibernate.initialize(obj);
+        }
+    }
+}
@@ -69,12 +69,14 @@ import net.sf.beanlib.spi.PropertyFilter;
 @NotThreadSafe
 public class Hibernate3BeanReplicator extends HibernateBeanReplicator
 {
+    /** Same as the transformer of the base class, used to access the Hibernate 3 specific options. */
+    private final Hibernate3BeanTransformer hibernate3BeanTransformer;
+    
     /**
      * By default, all properties will be included for replication.
      */
     public Hibernate3BeanReplicator() {
-    	super(new Hibernate3BeanTransformer()
-    	        .initPropertyFilter(new HibernatePropertyFilter()));
+    	this(new Hibernate3BeanTransformer(), new HibernatePropertyFilter());
     }
 
     /**
@@ -85,8 +87,7 @@ public class Hibernate3BeanReplicator extends HibernateBeanReplicator
      * with a type of an entity bean class will be included for replication.
      */
     public Hibernate3BeanReplicator(String applicationPackagePrefix) {
-        super(new Hibernate3BeanTransformer()
-                .initPropertyFilter(new HibernatePropertyFilter(applicationPackagePrefix)));
+        this(new Hibernate3BeanTransformer(), new HibernatePropertyFilter(applicationPackagePrefix));
     }
 	
     /**
@@ -114,12 +115,11 @@ public class Hibernate3BeanReplicator extends HibernateBeanReplicator
             Set<Class<?>> entityBeanClassSet, 
             Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet, PropertyFilter vetoer) 
     {
-        super(new Hibernate3BeanTransformer()
-              .initPropertyFilter(
-                    new HibernatePropertyFilter()
-                    .withEntityBeanClassSet(entityBeanClassSet)
-                    .withCollectionPropertyNameSet(collectionPropertyNameSet)
-                    .withVetoer(vetoer)));
+        this(new Hibernate3BeanTransformer(),
+              new HibernatePropertyFilter()
+              .withEntityBeanClassSet(entityBeanClassSet)
+              .withCollectionPropertyNameSet(collectionPropertyNameSet)
+              .withVetoer(vetoer));
     }
     
     /**
@@ -150,11 +150,34 @@ public class Hibernate3BeanReplicator extends HibernateBeanReplicator
             Set<Class<?>> entityBeanClassSet, 
             Set<? extends CollectionPropertyName<?>> collectionPropertyNameSet, PropertyFilter vetoer) 
     {
-        super(new Hibernate3BeanTransformer()
-              .initPropertyFilter(
-                    new HibernatePropertyFilter(applicationPackagePrefix)
-                    .withEntityBeanClassSet(entityBeanClassSet)
-                    .withCollectionPropertyNameSet(collectionPropertyNameSet)
-                    .withVetoer(vetoer)));
+        this(new Hibernate3BeanTransformer(),
+              new HibernatePropertyFilter(applicationPackagePrefix)
+              .withEntityBeanClassSet(entityBeanClassSet)
+              .withCollectionPropertyNameSet(collectionPropertyNameSet)
+              .withVetoer(vetoer));
+    }
+    
+    private Hibernate3BeanReplicator(Hibernate3BeanTransformer hibernate3BeanTransformer, PropertyFilter propertyFilter) {
+        super(hibernate3BeanTransformer.initPropertyFilter(propertyFilter));
+        this.hibernate3BeanTransformer = hibernate3BeanTransformer;
+    }
+
+    /**
+     * Used to declare whether uninitialized Hibernate proxies and collections are never to be 
+     * initialized during replication, in which case uninitialized entities are replicated as
+     * identifier-only stubs and uninitialized collections as null.
+     * 
+     * @see Hibernate3BeanTransformer#initStubUninitializedProxies(boolean)
+     * 
+     * @return the current object (ie this) for method chaining purposes.
+     */
+    public final Hibernate3BeanReplicator initStubUninitializedProxies(boolean stubUninitializedProxies) {
+        hibernate3BeanTransformer.initStubUninitializedProxies(stubUninitializedProxies);
+        return this;
+    }
+    
+    @Override
+    protected final boolean isStubUninitializedProxies() {
+        return hibernate3BeanTransformer.isStubUninitializedProxies();
     }
 }
@@ -19,6 +19,7 @@ import net.sf.beanlib.hibernate.UnEnhancer;
 import net.sf.beanlib.provider.BeanPopulator;
 import net.sf.beanlib.provider.BeanTransformer;
 import net.sf.beanlib.spi.BeanPopulatorSpi;
+import net.sf.beanlib.spi.BeanTransformerSpi;
 
 /**
  * A Hibernate 3 Bean Transformer is simply a {@link BeanTransformer}
@@ -35,6 +36,16 @@ import net.sf.beanlib.spi.BeanPopulatorSpi;
  */
 public class Hibernate3BeanTransformer extends BeanTransformer
 {
+    /** 
+     * Whether CGLib enhanced classes are checked during the current replication,
+     * resolved via {@link UnEnhancer#isCheckCGLib()} upon entering the outermost transformation
+     * on the replicating thread; or null if no such transformation is in progress. 
+     */
+    private volatile Boolean checkCGLib;
+    
+    /** True if uninitialized Hibernate proxies are replicated as identifier-only stubs. */
+    private boolean stubUninitializedProxies;
+    
     public Hibernate3BeanTransformer() {
         this(BeanPopulator.factory);
     }
@@ -61,10 +72,84 @@ public class Hibernate3BeanTransformer extends BeanTransformer
         throws InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException 
     {
         // figure out the pre-enhanced class
-        Class<T> actualClass = UnEnhancer.getActualClass(from);
+        Class<T> actualClass = UnEnhancer.getActualClass(from, isCheckCGLib(), !stubUninitializedProxies);
         Class<T> targetClass = chooseClass(actualClass, toClass);
         return newInstanceAsPrivileged(targetClass);
     }
     
-    @Override protected final <T> T unenhanceObject(T from) { return UnEnhancer.unenhanceObject(from); }
+    @Override 
+    protected final <T> T unenhanceObject(T from) { 
+        // An uninitialized proxy to be stubbed is left to the bean replicator as is
+        return stubUninitializedProxies && UnEnhancer.isUninitializedProxy(from)
+             ? from 
+             : UnEnhancer.unenhanceObject(from); 
+    }
+    
+    /**
+     * Initializes whether uninitialized Hibernate proxies and collections are never to be initialized
+     * during replication.  Defaults to false.
+     * <p>
+     * If true, an uninitialized entity proxy is replicated as a stub, which is an instance 
+     * of the target class with only the identifier property set; and an uninitialized collection
+     * or map is replicated as null.  This avoids any database access caused by the replication itself,
+     * at the expense of leaving the unloaded parts of the object graph unpopulated.
+     * Notes the identifier property of a stub is set only if it can be resolved 
+     * via the session factory of the proxy, and its setter is collected by the configured
+     * {@link net.sf.beanlib.spi.BeanMethodCollector setter method collector}.
+     */
+    public Hibernate3BeanTransformer initStubUninitializedProxies(boolean stubUninitializedProxies) {
+        if (isFrozen())
+            throw new IllegalStateException("The configuration of a frozen bean transformer cannot be changed");
+        this.stubUninitializedProxies = stubUninitializedProxies;
+        return this;
+    }
+    
+    /** 
+     * Returns true if uninitialized Hibernate proxies and collections are never initialized during replication.
+     * @see #initStubUninitializedProxies(boolean) 
+     */
+    public final boolean isStubUninitializedProxies() {
+        return stubUninitializedProxies;
+    }
+    
+    /**
+     * Returns true if the given transformer never initializes Hibernate proxies and collections
+     * during replication.
+     */
+    static boolean isStubUninitializedProxies(BeanTransformerSpi beanTransformer) {
+        return beanTransformer instanceof Hibernate3BeanTransformer
+            && ((Hibernate3BeanTransformer)beanTransformer).isStubUninitializedProxies();
+    }
+    
+    /**
+     * Returns true if CGLib enhanced classes are to be checked during the current replication.
+     * The per thread setting of {@link UnEnhancer} is looked up once per outermost transformation, 
+     * on the replicating thread, rather than once per value, so the parallel workers 
+     * follow the setting of the replicating thread;
+     * except for a frozen transformer, which may be shared by multiple threads. 
+     */
+    public final boolean isCheckCGLib() {
+        final Boolean b = checkCGLib;
+        return b == null ? UnEnhancer.isCheckCGLib() : b.booleanValue();
+    }
+    
+    /**
+     * Returns true if CGLib enhanced classes are to be checked during the current replication
+     * of the given transformer.
+     */
+    static boolean isCheckCGLib(BeanTransformerSpi beanTransformer) {
+        return beanTransformer instanceof Hibernate3BeanTransformer
+             ? ((Hibernate3BeanTransformer)beanTransformer).isCheckCGLib()
+             : UnEnhancer.isCheckCGLib();
+    }
+    
+    @Override
+    protected void beginReplication() {
+        checkCGLib = Boolean.valueOf(UnEnhancer.isCheckCGLib());
+    }
+    
+    @Override
+    protected void resetReplicationState() {
+        checkCGLib = null;
+    }
 }
@@ -74,8 +74,11 @@ public class Hibernate3CollectionReplicator extends CollectionReplicator {
     @Override
     public <V,T> T replicateCollection(Collection<V> from, Class<T> toClass)
     {
-        if (!Hibernate.isInitialized(from))
+        if (!Hibernate.isInitialized(from)) {
+            if (Hibernate3BeanTransformer.isStubUninitializedProxies(getBeanTransformer()))
+                return null;
             Hibernate.initialize(from);
+        }
         return super.replicateCollection(from, toClass);
     }
     
@@ -135,7 +138,8 @@ public class Hibernate3CollectionReplicator extends CollectionReplicator {
         throws InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException 
     {
         // figure out the pre-enhanced class
-        Class<T> actualClass = UnEnhancer.getActualClass(from);
+        Class<T> actualClass = UnEnhancer.getActualClass(from, 
+                Hibernate3BeanTransformer.isCheckCGLib(getBeanTransformer()));
         Class<T> targetClass = chooseClass(actualClass, toClass);
         return newInstanceAsPrivileged(targetClass);
     }
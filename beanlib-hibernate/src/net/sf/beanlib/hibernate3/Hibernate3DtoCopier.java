@@ -17,7 +17,6 @@ package net.sf.beanlib.hibernate3;
 
 import static net.sf.beanlib.utils.ClassUtils.fqcn;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -146,12 +145,9 @@ public class Hibernate3DtoCopier
     public List<?> hibernate2dtoFully(Collection<?> hibernateBeans) {
         if (hibernateBeans == null)
             return null;
-        List<Object> list = new ArrayList<Object>(hibernateBeans.size());
-        HibernateBeanReplicator replicator = createHibernateBeanReplicator();
-        
-        for (Object obj : hibernateBeans)
-            list.add(replicator.deepCopy(obj));
-        return list;
+        return createHibernateBeanReplicator()
+                .initPropertyFilter(new HibernatePropertyFilter())
+                .copyAll(hibernateBeans);
     }
     
     /** 
@@ -257,14 +253,8 @@ public class Hibernate3DtoCopier
     {
         if (hibernateBeans == null)
             return null;
-            
-        List<Object> list = new ArrayList<Object>(hibernateBeans.size());
-        
-        for (Object entityBean : hibernateBeans) {
-            Object to = copy(entityBean, ArrayUtils.EMPTY_CLASS_ARRAY);
-            list.add(to);
-        }
-        return list;
+        return createHibernateBeanReplicator(ArrayUtils.EMPTY_CLASS_ARRAY, CollectionPropertyName.EMPTY_ARRAY)
+                .copyAll(hibernateBeans);
     }
     
     /**
@@ -285,34 +275,36 @@ public class Hibernate3DtoCopier
     {
         if (hibernateBeans == null)
             return null;
-        List<E> list = new ArrayList<E>(hibernateBeans.size());
-        
-        for (Object entityBean : hibernateBeans) {
-            E to = copy(targetEntityType, entityBean, interestedEntityTypes, collectionPropertyNames);
-            list.add(to);
-        }
-        return list;
+        return createHibernateBeanReplicator(interestedEntityTypes, collectionPropertyNames)
+                .copyAll(hibernateBeans, UnEnhancer.<E>unenhanceClass(targetEntityType));
     }
     
-    /** 
-     * Returns a DTO by partially cloning the object graph of the given Hibernate "from" instance 
-     * that follows the JavaBean getter/setter convention on a best attempt basis, 
-     * excluding all collection and map properties.
-     * <p>
-     * The replication is typically recursive in that the object graph of the input object is basically replicated 
-     * into an equivalent output object graph, resolving circular references, and eagerly fetching proxied instances as necessary.
-     *   
-     * @param from given entity bean to be cloned
-     * @param interestedEntityTypes properties of these types will be included for cloning
+    /**
+     * Returns a list of DTO's of the specified target entity type
+     * by partially cloning the object graphs of the given collection of Hibernate entity beans
+     * according to the given fetch plan, after initializing in bulk 
+     * the lazy collections and proxies included by the plan.
+     *  
+     * @param targetEntityType target entity type; or null for the actual class of each entity bean
+     * @param hibernateBeans given collection of Hibernate entity beans to be cloned
+     * @param fetchPlan the properties to be included in the cloning; or null to include only 
+     * the properties implied by the application package prefix, excluding all collection and map properties,
+     * in which case there is nothing to be initialized in bulk
+     * @param batchInitializer used to initialize the lazy collections and proxies included by the plan
      * 
      * @see #applicationPackagePrefix
      */
-    private Object copy(Object from, Class<?>[] interestedEntityTypes) 
+    public <E> List<E> hibernate2dto(Class<E> targetEntityType, 
+        Collection<?> hibernateBeans, FetchPlan fetchPlan, Hibernate3BatchInitializer batchInitializer)
     {
-        if (from == null)
+        if (hibernateBeans == null)
             return null;
-        return copy(UnEnhancer.getActualClass(from), 
-                    from, interestedEntityTypes, CollectionPropertyName.EMPTY_ARRAY);
+        if (fetchPlan == null)
+            return hibernate2dto(targetEntityType, hibernateBeans, 
+                    ArrayUtils.EMPTY_CLASS_ARRAY, CollectionPropertyName.EMPTY_ARRAY);
+        return createHibernateBeanReplicator(fetchPlan.getInterestedEntityTypes(), fetchPlan.getCollectionPropertyNames())
+                .initBatchInitializer(batchInitializer)
+                .copyAll(hibernateBeans, UnEnhancer.<E>unenhanceClass(targetEntityType));
     }
     
     /** 
@@ -359,7 +351,41 @@ public class Hibernate3DtoCopier
     {
         if (from == null)
             return null;
+        @SuppressWarnings("unchecked") 
+        E ret = (E)createHibernateBeanReplicator(interestedEntityTypes, collectionPropertyNames)
+                    .copy(from, UnEnhancer.unenhanceClass(targetEntityType));
+        return ret;
+    }
+    
+    /** 
+     * Returns a replicator configured to include only those properties that are explicitly specified, 
+     * or implied by the application package prefix.
+     * 
+     * @param interestedEntityTypes properties of these types will be included for cloning
+     * @param collectionPropertyNames collection and map properties to be included in the cloning
+     */
+    private HibernateBeanReplicator createHibernateBeanReplicator(
+        Class<?>[] interestedEntityTypes, CollectionPropertyName<?>[] collectionPropertyNames)
+    {
         HibernateBeanReplicator replicator = createHibernateBeanReplicator();
+        replicator
+          .initPropertyFilter(createPropertyFilter(interestedEntityTypes, collectionPropertyNames))
+          .initDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE)
+          .initSetterMethodCollector(new ProtectedSetterMethodCollector())
+          ;
+        return replicator;
+    }
+    
+    /** 
+     * Returns a property filter including only those properties that are explicitly specified, 
+     * or implied by the application package prefix.
+     * 
+     * @param interestedEntityTypes properties of these types will be included for cloning
+     * @param collectionPropertyNames collection and map properties to be included in the cloning
+     */
+    PropertyFilter createPropertyFilter(
+        Class<?>[] interestedEntityTypes, CollectionPropertyName<?>[] collectionPropertyNames)
+    {
         // Assumes all entity classes
         Set<Class<?>> entityBeanClassSet = null;
         
@@ -382,17 +408,7 @@ public class Hibernate3DtoCopier
                 // Collection properties explicitly specified. 
                 collectionPropertyNameSet = new HashSet<CollectionPropertyName<?>>(Arrays.asList(collectionPropertyNames));
         }
-        PropertyFilter propertyFilter = new HibernatePropertyFilter(
-                                            applicationPackagePrefix, entityBeanClassSet, collectionPropertyNameSet, null);
-        replicator
-          .initPropertyFilter(propertyFilter)
-          .initDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE)
-          .initSetterMethodCollector(new ProtectedSetterMethodCollector())
-          ;
-        
-        @SuppressWarnings("unchecked") 
-        E ret = (E)replicator.copy(from, UnEnhancer.unenhanceClass(targetEntityType));
-        return ret;
-        
+        return new HibernatePropertyFilter(
+                applicationPackagePrefix, entityBeanClassSet, collectionPropertyNameSet, null);
     }
 }
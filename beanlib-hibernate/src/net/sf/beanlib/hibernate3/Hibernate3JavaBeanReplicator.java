@@ -15,12 +15,32 @@
  */
 package net.sf.beanlib.hibernate3;
 
+import static net.sf.beanlib.utils.ClassUtils.wrapperOf;
+
+import java.beans.Introspector;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jcip.annotations.Immutable;
 import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
 import net.sf.beanlib.hibernate.UnEnhancer;
+import net.sf.beanlib.provider.invoker.FieldAccessMethodInvoker;
+import net.sf.beanlib.provider.invoker.FieldAccessorMethods;
 import net.sf.beanlib.provider.replicator.BeanReplicator;
+import net.sf.beanlib.spi.BeanMethodCollector;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
 import net.sf.beanlib.spi.BeanTransformerSpi;
+import net.sf.beanlib.spi.MethodInvoker;
 import net.sf.beanlib.spi.replicator.BeanReplicatorSpi;
 
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
 /**
  * Hibernate 3 specific JavaBean Replicator.
  * 
@@ -52,6 +72,12 @@ public class Hibernate3JavaBeanReplicator extends BeanReplicator
         return factory.newBeanReplicatable(beanTransformer);
     }
     
+    /** 
+     * Resolved setter of the identifier property of stubs, per entity name, target class, 
+     * setter method collector and method invoker factory. 
+     */
+    private final ConcurrentMap<IdSetterKey, IdSetter> idSetters = new ConcurrentHashMap<IdSetterKey, IdSetter>();
+    
     protected Hibernate3JavaBeanReplicator(BeanTransformerSpi beanTransformer) {
         super(beanTransformer);
     }
@@ -61,15 +87,163 @@ public class Hibernate3JavaBeanReplicator extends BeanReplicator
         throws InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException 
     {
         // figure out the pre-enhanced class
-        Class<T> actualClass = UnEnhancer.getActualClass(from);
+        Class<T> actualClass = UnEnhancer.getActualClass(from, 
+                Hibernate3BeanTransformer.isCheckCGLib(getBeanTransformer()), 
+                !Hibernate3BeanTransformer.isStubUninitializedProxies(getBeanTransformer()));
         Class<T> targetClass = chooseClass(actualClass, toClass);
         return newInstanceAsPrivileged(targetClass);
     }
     
     @Override
     public <V,T> T replicateBean(V from, Class<T> toClass) {
+        if (from instanceof HibernateProxy
+        &&  Hibernate3BeanTransformer.isStubUninitializedProxies(getBeanTransformer())) 
+        {
+            LazyInitializer lazyInitializer = ((HibernateProxy)from).getHibernateLazyInitializer();
+            
+            if (lazyInitializer.isUninitialized())
+                return replicateAsStub(from, lazyInitializer, toClass);
+        }
         return super.replicateBean(unenhanceObject(from), toClass, from);
     }
     
+    /**
+     * Replicates the given uninitialized proxy as an instance of the target class 
+     * with only the identifier property set, without initializing the proxy.
+     */
+    private <T> T replicateAsStub(Object from, LazyInitializer lazyInitializer, Class<T> toClass) 
+    {
+        Class<T> targetClass = chooseClass(lazyInitializer.getPersistentClass(), 
+                UnEnhancer.<T>unenhanceClass(toClass, Hibernate3BeanTransformer.isCheckCGLib(getBeanTransformer())));
+        T to;
+        try {
+            to = newInstanceAsPrivileged(targetClass);
+        } catch (InstantiationException e) {
+            throw new BeanlibException(e);
+        } catch (IllegalAccessException e) {
+            throw new BeanlibException(e);
+        } catch (NoSuchMethodException e) {
+            throw new BeanlibException(e);
+        }
+        putTargetCloned(from, to);
+        setIdentifier(to, lazyInitializer);
+        return to;
+    }
+    
+    /** 
+     * Sets the identifier of the given proxy to the given stub, if the identifier property 
+     * can be resolved via the session factory of the proxy.
+     */
+    private void setIdentifier(Object stub, LazyInitializer lazyInitializer) 
+    {
+        final Serializable id = lazyInitializer.getIdentifier();
+        final SessionImplementor session = lazyInitializer.getSession();
+        
+        if (id == null || session == null) {
+            log.warn("Unable to resolve the identifier property of a detached " + lazyInitializer.getEntityName());
+            return;
+        }
+        final BeanPopulatorBaseConfig baseConfig = getBeanTransformer().getBeanPopulatorBaseConfig();
+        final IdSetterKey key = new IdSetterKey(lazyInitializer.getEntityName(), stub.getClass(), 
+                baseConfig.getSetterMethodCollector(), baseConfig.getMethodInvokerFactory());
+        IdSetter idSetter = idSetters.get(key);
+        
+        if (idSetter == null) {
+            idSetter = resolveIdSetter(stub, id, session, key);
+            idSetters.putIfAbsent(key, idSetter);
+        }
+        if (idSetter.invoker != null)
+            idSetter.invoker.invoke(stub, new Object[] {id});
+    }
+    
+    /** 
+     * Resolves the setter of the identifier property of the given stub 
+     * via the configured setter method collector and method invoker factory.
+     */
+    private IdSetter resolveIdSetter(Object stub, Serializable id, SessionImplementor session, IdSetterKey key) 
+    {
+        ClassMetadata classMetadata = session.getFactory().getClassMetadata(key.entityName);
+        String idProperty = classMetadata == null ? null : classMetadata.getIdentifierPropertyName();
+        
+        if (idProperty == null) 
+            return IdSetter.NONE;
+        final int prefixLength = key.setterMethodCollector.getMethodPrefix().length();
+        
+        for (Method m : key.setterMethodCollector.collect(stub)) {
+            Class<?>[] paramTypes = m.getParameterTypes();
+            
+            if (paramTypes.length == 1 
+            &&  idProperty.equals(Introspector.decapitalize(m.getName().substring(prefixLength)))
+            &&  wrapperOf(paramTypes[0]).isInstance(id)) 
+            {
+                // A synthetic field accessor method can only be invoked via a field access method invoker
+                MethodInvoker invoker = FieldAccessorMethods.isAccessorMethod(m)
+                                      ? FieldAccessMethodInvoker.factory.newMethodInvoker(m)
+                                      : key.methodInvokerFactory.newMethodInvoker(m);
+                return new IdSetter(invoker);
+            }
+        }
+        log.warn("Unable to find the setter of identifier property " + idProperty + " of " + stub.getClass());
+        return IdSetter.NONE;
+    }
+    
+    /** 
+     * Key of the resolved setter of the identifier property of stubs. 
+     */
+    @Immutable
+    private static final class IdSetterKey {
+        private final String entityName;
+        private final Class<?> targetClass;
+        private final BeanMethodCollector setterMethodCollector;
+        private final MethodInvoker.Factory methodInvokerFactory;
+        private final int hashCode;
+        
+        IdSetterKey(String entityName, Class<?> targetClass, 
+                BeanMethodCollector setterMethodCollector, MethodInvoker.Factory methodInvokerFactory) 
+        {
+            this.entityName = entityName;
+            this.targetClass = targetClass;
+            this.setterMethodCollector = setterMethodCollector;
+            this.methodInvokerFactory = methodInvokerFactory;
+            this.hashCode = ((31 * entityName.hashCode() + targetClass.hashCode()) * 31 
+                          + System.identityHashCode(setterMethodCollector)) * 31 
+                          + System.identityHashCode(methodInvokerFactory);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof IdSetterKey))
+                return false;
+            IdSetterKey that = (IdSetterKey)obj;
+            return this.targetClass == that.targetClass
+                && this.setterMethodCollector == that.setterMethodCollector
+                && this.methodInvokerFactory == that.methodInvokerFactory
+                && this.entityName.equals(that.entityName);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+    
+    /** 
+     * Resolved setter of the identifier property of stubs. 
+     */
+    @Immutable
+    private static final class IdSetter {
+        /** Used when the identifier property or its setter cannot be resolved. */
+        static final IdSetter NONE = new IdSetter(null);
+        
+        /** Invoker of the setter; or null if there is none. */
+        final MethodInvoker invoker;
+        
+        IdSetter(MethodInvoker invoker) {
+            this.invoker = invoker;
+        }
+    }
+    
     @Override protected final <T> T unenhanceObject(T from) { return UnEnhancer.unenhanceObject(from); }
 }
@@ -62,8 +62,11 @@ public class Hibernate3MapReplicator extends MapReplicator {
     @Override
     public <K,V,T> T replicateMap(Map<K,V> from, Class<T> toClass)
     {
-        if (!Hibernate.isInitialized(from))
+        if (!Hibernate.isInitialized(from)) {
+            if (Hibernate3BeanTransformer.isStubUninitializedProxies(getBeanTransformer()))
+                return null;
             Hibernate.initialize(from);
+        }
         return super.replicateMap(from, toClass);
     }
     
@@ -72,7 +75,8 @@ public class Hibernate3MapReplicator extends MapReplicator {
         throws InstantiationException, IllegalAccessException, SecurityException, NoSuchMethodException 
     {
         // figure out the pre-enhanced class
-        Class<T> actualClass = UnEnhancer.getActualClass(from);
+        Class<T> actualClass = UnEnhancer.getActualClass(from, 
+                Hibernate3BeanTransformer.isCheckCGLib(getBeanTransformer()));
         Class<T> targetClass = chooseClass(actualClass, toClass);
         return newInstanceAsPrivileged(targetClass);
     }
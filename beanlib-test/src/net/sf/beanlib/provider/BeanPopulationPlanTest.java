@@ -0,0 +1,337 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.PropertyInfo;
+import net.sf.beanlib.provider.collector.ProtectedSetterMethodCollector;
+import net.sf.beanlib.provider.finder.PublicReaderMethodFinder;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.BeanTransformerSpi;
+import net.sf.beanlib.spi.ClassDeterministicFilter;
+import net.sf.beanlib.spi.CustomBeanTransformerSpi;
+import net.sf.beanlib.spi.DetailedPropertyFilter;
+import net.sf.beanlib.spi.PropertyFilter;
+import net.sf.beanlib.utils.ClassUtils;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class BeanPopulationPlanTest {
+    @Test
+    public void testPlanCached() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        assertSame(Foo.class, plan.getFromClass());
+        assertSame(Foo.class, plan.getToClass());
+        assertSame(plan, baseConfig.getBeanPopulationPlan(new Foo("a"), new Foo("b")));
+        assertNotSame(plan, baseConfig.getBeanPopulationPlan(new Foo(), new Bar()));
+        assertSame(plan, baseConfig.getBeanPopulationPlan(new Foo(), new Foo()));
+        // A cloned config doesn't share the cached plans
+        assertNotSame(plan, baseConfig.clone().getBeanPopulationPlan(new Foo(), new Foo()));
+    }
+
+    @Test
+    public void testPlanInvalidated() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        assertEquals(2, plan.size());
+        
+        baseConfig.setSetterMethodCollector(new ProtectedSetterMethodCollector());
+        BeanPopulationPlan protectedPlan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        assertNotSame(plan, protectedPlan);
+        assertEquals(3, protectedPlan.size());
+    }
+
+    public static class Money {
+        private String currency;
+        public String getCurrency() { return currency; }
+        public void setCurrency(String currency) { this.currency = currency; }
+    }
+    
+    public static class Wallet {
+        private Money money;
+        public Money getMoney() { return money; }
+        public void setMoney(Money money) { this.money = money; }
+    }
+    
+    @Test
+    public void testPlanInvalidatedByImmutableRegistration() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Wallet(), new Wallet());
+        assertEquals(1, plan.size());
+        assertFalse(plan.isDirectTransfer(0));
+        
+        ClassUtils.registerImmutable(Money.class);
+        BeanPopulationPlan immutablePlan = baseConfig.getBeanPopulationPlan(new Wallet(), new Wallet());
+        assertNotSame(plan, immutablePlan);
+        assertTrue(immutablePlan.isDirectTransfer(0));
+        assertSame(immutablePlan, baseConfig.getBeanPopulationPlan(new Wallet(), new Wallet()));
+    }
+
+    @Test
+    public void testTargetReaderResolvedUponFirstMerge() {
+        final List<String> found = new ArrayList<String>();
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setReaderMethodFinder(new PublicReaderMethodFinder() {
+            @Override
+            public Method find(String propertyName, Object bean) {
+                found.add(propertyName);
+                return super.find(propertyName, bean);
+            }
+        });
+        Bar from = new Bar("from");
+        from.setBar(new Bar("nested"));
+        from.getBar().setString("nested");
+        
+        new BeanPopulator(from, new Bar("to")).initBeanPopulatorBaseConfig(baseConfig).populate();
+        int planned = found.size();
+        new BeanPopulator(from, new Bar("to")).initBeanPopulatorBaseConfig(baseConfig).populate();
+        // Neither the plan nor the population looks up the target readers without merging
+        assertEquals(planned, found.size());
+        
+        Bar to = new Bar("to");
+        Bar existing = new Bar("existing");
+        to.setBar(existing);
+        BeanTransformer transformer = new BeanTransformer().initMergeMode(true);
+        new BeanPopulator(from, to).initBeanPopulatorBaseConfig(baseConfig).initTransformer(transformer).populate();
+        transformer.reset();
+        assertSame(existing, to.getBar());
+        assertEquals("nested", existing.getString());
+        // Only the target reader of the mutable bar property is looked up, and only once
+        assertEquals(planned + 1, found.size());
+        assertEquals("Bar", found.get(planned));
+        
+        to.setBar(existing);
+        new BeanPopulator(from, to).initBeanPopulatorBaseConfig(baseConfig).initTransformer(transformer).populate();
+        assertEquals(planned + 1, found.size());
+    }
+
+    @Test
+    public void testPropertiesWithoutReaderSkipped() {
+        BeanPopulationPlan plan = new BeanPopulatorBaseConfig().getBeanPopulationPlan(new Foo(), new Bar());
+        Set<String> names = new HashSet<String>();
+        
+        for (int i=0; i < plan.size(); i++)
+            names.add(plan.getPropertyName(i));
+        Set<String> expected = new HashSet<String>();
+        expected.add("boo");
+        expected.add("string");
+        assertEquals(expected, names);
+    }
+
+    @Test
+    public void testPopulateWithCachedPlan() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        
+        for (int i=0; i < 3; i++) {
+            Foo from = new Foo("from");
+            from.setBoo(i % 2 == 0);
+            from.setString("foo" + i);
+            Bar to = new Bar("to");
+            new BeanPopulator(from, to).initBeanPopulatorBaseConfig(baseConfig).populate();
+            assertEquals(from.getString(), to.getString());
+            assertEquals(from.isBoo(), to.isBoo());
+            assertEquals("to", to.getProtectedSetString());
+        }
+    }
+
+    public static class Tick {
+        private int size;
+        private double price;
+        private long time;
+        
+        public int getSize() { return size; }
+        public void setSize(int size) { this.size = size; }
+        
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+        
+        public long getTime() { return time; }
+        public void setTime(long time) { this.time = time; }
+    }
+    
+    public static class TickDto {
+        private Integer size;
+        private double price;
+        private String time;
+        
+        public Integer getSize() { return size; }
+        public void setSize(Integer size) { this.size = size; }
+        
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+        
+        public String getTime() { return time; }
+        public void setTime(String time) { this.time = time; }
+    }
+    
+    @Test
+    public void testPrimitiveTransfer() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE);
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Tick(), new TickDto());
+        assertEquals(3, plan.size());
+        
+        for (int i=0; i < plan.size(); i++) {
+            String name = plan.getPropertyName(i);
+            // primitive to wrapper, and primitive to primitive, but not primitive to String
+            assertEquals(name, !name.equals("time"), plan.isPrimitiveTransfer(i));
+        }
+        Tick from = new Tick();
+        from.setSize(100);
+        from.setPrice(12.5);
+        from.setTime(1);
+        TickDto to = new BeanTransformer().initBeanPopulatorBaseConfig(baseConfig).transform(from, TickDto.class, null);
+        assertEquals(Integer.valueOf(100), to.getSize());
+        assertEquals(12.5, to.getPrice(), 0);
+        assertNull(to.getTime());
+    }
+    
+    @Test
+    public void testPrimitiveTransferClaimedByCustomTransformer() {
+        Tick from = new Tick();
+        from.setSize(100);
+        from.setPrice(12.5);
+        BeanTransformer transformer = new BeanTransformer(new CustomBeanTransformerSpi.Factory() {
+            public CustomBeanTransformerSpi newCustomBeanTransformer(BeanTransformerSpi beanTransformer) {
+                return new CustomBeanTransformerSpi() {
+                    public boolean isTransformable(Object from, Class<?> toClass, PropertyInfo propertyInfo) {
+                        return propertyInfo != null && "size".equals(propertyInfo.getPropertyName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    public <T> T transform(Object in, Class<T> toClass, PropertyInfo propertyInfo) {
+                        return (T)Integer.valueOf(((Integer)in).intValue() * 2);
+                    }
+                };
+            }
+        });
+        Tick to = transformer.transform(from, Tick.class, null);
+        assertEquals(200, to.getSize());
+        assertEquals(12.5, to.getPrice(), 0);
+    }
+
+    /** A class deterministic property filter vetoing a configurable property. */
+    private static class CountingPropertyFilter implements PropertyFilter, ClassDeterministicFilter {
+        private String vetoed;
+        private int revision;
+        private int count;
+        
+        CountingPropertyFilter(String vetoed) { this.vetoed = vetoed; }
+        
+        public boolean propagate(String propertyName, Method readerMethod) {
+            count++;
+            return !propertyName.equals(vetoed);
+        }
+        public boolean isClassDeterministic() { return true; }
+        public int getRevision() { return revision; }
+        
+        void veto(String vetoed) {
+            this.vetoed = vetoed;
+            revision++;
+        }
+    }
+    
+    @Test
+    public void testClassDeterministicPropertyFilter() {
+        CountingPropertyFilter filter = new CountingPropertyFilter("string");
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setPropertyFilter(filter);
+        
+        for (int i=0; i < 3; i++) {
+            Foo from = new Foo();
+            from.setString("foo");
+            from.setBoo(true);
+            Foo to = new BeanPopulator(from, new Foo()).initBeanPopulatorBaseConfig(baseConfig).populate();
+            assertNull(to.getString());
+            assertTrue(to.isBoo());
+        }
+        // Decided once per property
+        assertEquals(2, filter.count);
+        // Decided again once reconfigured
+        filter.veto("boo");
+        Foo from = new Foo();
+        from.setString("foo");
+        from.setBoo(true);
+        Foo to = new BeanPopulator(from, new Foo()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        assertEquals("foo", to.getString());
+        assertFalse(to.isBoo());
+        assertEquals(4, filter.count);
+    }
+    
+    @Test
+    public void testInstanceDependentPropertyFilter() {
+        final int[] count = {0};
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setPropertyFilter(new PropertyFilter() {
+            public boolean propagate(String propertyName, Method readerMethod) {
+                count[0]++;
+                return true;
+            }
+        });
+        for (int i=0; i < 3; i++)
+            new BeanPopulator(new Foo(), new Foo()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        // Decided for every bean
+        assertEquals(6, count[0]);
+    }
+    
+    @Test
+    public void testClassDeterministicDetailedPropertyFilter() {
+        class VetoingDetailedPropertyFilter implements DetailedPropertyFilter, ClassDeterministicFilter {
+            String vetoed = "string";
+            int revision;
+            
+            public boolean propagate(String propertyName, Object fromBean, Method readerMethod, Object toBean, Method setterMethod) {
+                return !propertyName.equals(vetoed);
+            }
+            public boolean isClassDeterministic() { return true; }
+            public int getRevision() { return revision; }
+        }
+        VetoingDetailedPropertyFilter filter = new VetoingDetailedPropertyFilter();
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setDetailedPropertyFilter(filter);
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        // Decided when the plan is computed
+        assertEquals(1, plan.size());
+        assertEquals("boo", plan.getPropertyName(0));
+        assertSame(plan, baseConfig.getBeanPopulationPlan(new Foo(), new Foo()));
+        
+        filter.vetoed = "boo";
+        filter.revision++;
+        plan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        assertEquals(1, plan.size());
+        assertEquals("string", plan.getPropertyName(0));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BeanPopulationPlanTest.class);
+    }
+}
@@ -20,8 +20,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
 import junit.framework.JUnit4TestAdapter;
 import net.sf.beanlib.provider.collector.ProtectedSetterMethodCollector;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
 
 import org.junit.Test;
 
@@ -248,6 +254,90 @@ public class BeanPopulatorTest {
         }
     }
 
+    public static class Quote {
+        private String symbol;
+        private String venue;
+        private BigDecimal price;
+        
+        public String getSymbol() { return symbol; }
+        public void setSymbol(String symbol) { this.symbol = symbol; }
+        
+        public String getVenue() { return venue; }
+        public void setVenue(String venue) { this.venue = venue; }
+        
+        public BigDecimal getPrice() { return price; }
+        public void setPrice(BigDecimal price) { this.price = price; }
+    }
+    
+    public static class Ticker {
+        private String symbol;
+        
+        public String getSymbol() { return symbol; }
+        public void setSymbol(String symbol) { this.symbol = symbol; }
+    }
+    
+    /** 
+     * Returns the number of bytes allocated so far by the current thread;
+     * or -1 if not supported by the JVM.
+     */
+    private static long getCurrentThreadAllocatedBytes() throws Exception {
+        final Object threadMXBean = ManagementFactory.getThreadMXBean();
+        final Class<?> c;
+        try {
+            c = Class.forName("com.sun.management.ThreadMXBean");
+        } catch(ClassNotFoundException e) {
+            return -1;
+        }
+        if (!c.isInstance(threadMXBean)
+        ||  !((Boolean)c.getMethod("isThreadAllocatedMemorySupported").invoke(threadMXBean))
+        ||  !((Boolean)c.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadMXBean)))
+            return -1;
+        return (Long)c.getMethod("getThreadAllocatedBytes", long.class)
+                      .invoke(threadMXBean, Thread.currentThread().getId());
+    }
+    
+    /** Returns the minimum number of bytes allocated per populate from the given bean to the given bean. */
+    private static long bytesPerPopulate(Object from, Object to) throws Exception {
+        BeanTransformer transformer = new BeanTransformer();
+        BeanPopulatorBaseConfig baseConfig = transformer.getBeanPopulatorBaseConfig();
+        final int n = 20000;
+        long bytesPerPopulate = Long.MAX_VALUE;
+        // Repeat to rule out any one-off allocation such as the class loading or compilation
+        for (int round=0; round < 5; round++) {
+            final long start = getCurrentThreadAllocatedBytes();
+            
+            for (int i=0; i < n; i++) {
+                new BeanPopulator(from, to)
+                    .initBeanPopulatorBaseConfig(baseConfig)
+                    .initTransformer(transformer)
+                    .populate();
+                transformer.reset();
+            }
+            bytesPerPopulate = Math.min(bytesPerPopulate, (getCurrentThreadAllocatedBytes() - start) / n);
+        }
+        return bytesPerPopulate;
+    }
+    
+    @Test
+    public void testAllocationFree() throws Exception {
+        if (getCurrentThreadAllocatedBytes() < 0)
+            return; // Allocated bytes accounting not supported
+        Quote from = new Quote();
+        from.setSymbol("IBM");
+        from.setVenue("NYSE");
+        from.setPrice(new BigDecimal("123.45"));
+        Quote to = new Quote();
+        final long quoteBytes = bytesPerPopulate(from, to);
+        assertEquals("IBM", to.getSymbol());
+        assertSame(from.getPrice(), to.getPrice());
+        
+        Ticker ticker = new Ticker();
+        ticker.setSymbol("IBM");
+        final long tickerBytes = bytesPerPopulate(ticker, new Ticker());
+        // Only the populator itself is allocated, but nothing per property
+        assertTrue("quoteBytes=" + quoteBytes + ", tickerBytes=" + tickerBytes, quoteBytes <= tickerBytes);
+    }
+
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(BeanPopulatorTest.class);
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class CompiledReplicatorTest {
+    private static Bar newCyclicBar(String s) {
+        Bar bar = new Bar(s);
+        bar.setString(s);
+        bar.setBarString("bar" + s);
+        bar.setBar(bar);
+        return bar;
+    }
+    
+    @Test
+    public void testCopy() {
+        CompiledReplicator replicator = CompiledReplicator.newCompiledReplicator(new BeanTransformer());
+        Bar from = newCyclicBar("foo");
+        Bar to = replicator.copy(from);
+        
+        assertNotSame(from, to);
+        assertEquals("foo", to.getString());
+        assertEquals("barfoo", to.getBarString());
+        assertSame(to, to.getBar());
+        // Each invocation has its own context
+        assertNotSame(to, replicator.copy(from));
+        
+        Foo foo = new Foo("foo");
+        foo.setString("foo");
+        Bar bar = replicator.copy(foo, Bar.class);
+        assertEquals("foo", bar.getString());
+    }
+    
+    @Test
+    public void testFrozen() {
+        BeanTransformer beanTransformer = new BeanTransformer();
+        CompiledReplicator.newCompiledReplicator(beanTransformer);
+        assertTrue(beanTransformer.isFrozen());
+        try {
+            beanTransformer.initDebug(true);
+            fail();
+        } catch(IllegalStateException expected) {
+        }
+        try {
+            beanTransformer.transform(new Foo(), Foo.class, null);
+            fail();
+        } catch(IllegalStateException expected) {
+        }
+    }
+    
+    @Test
+    public void testPlansRetainedWhenFrozen() {
+        BeanTransformer beanTransformer = new BeanTransformer();
+        Bar warmed = beanTransformer.transform(newCyclicBar("foo"), Bar.class, null);
+        assertEquals("barfoo", warmed.getBarString());
+        BeanPopulatorBaseConfig baseConfig = beanTransformer.getBeanPopulatorBaseConfig();
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Bar(), new Bar());
+        
+        CompiledReplicator.newCompiledReplicator(beanTransformer);
+        assertNotSame(baseConfig, beanTransformer.getBeanPopulatorBaseConfig());
+        assertSame(plan, beanTransformer.getBeanPopulatorBaseConfig().getBeanPopulationPlan(new Bar(), new Bar()));
+    }
+    
+    @Test
+    public void testConcurrentCopies() throws Exception {
+        final CompiledReplicator replicator = CompiledReplicator.newCompiledReplicator(new BeanTransformer());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Bar>> futures = new ArrayList<Future<Bar>>();
+            
+            for (int i=0; i < 100; i++) {
+                final Bar from = newCyclicBar(String.valueOf(i));
+                futures.add(executor.submit(new Callable<Bar>() {
+                    public Bar call() {
+                        return replicator.copy(from);
+                    }
+                }));
+            }
+            for (int i=0; i < futures.size(); i++) {
+                Bar to = futures.get(i).get();
+                assertEquals(String.valueOf(i), to.getString());
+                assertSame(to, to.getBar());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompiledReplicatorTest.class);
+    }
+}
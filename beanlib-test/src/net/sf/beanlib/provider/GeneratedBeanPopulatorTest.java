@@ -0,0 +1,220 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.PropertyInfo;
+import net.sf.beanlib.provider.replicator.BeanReplicator;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.BeanTransformerSpi;
+import net.sf.beanlib.spi.CustomBeanTransformerSpi;
+import net.sf.beanlib.spi.DetailedPropertyFilter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class GeneratedBeanPopulatorTest {
+    public static class Order {
+        private int quantity;
+        private long total;
+        private double price;
+        private String symbol;
+        private Integer rank;
+        private Bar bar;
+        private List<String> tags;
+        
+        public int getQuantity() { return quantity; }
+        public void setQuantity(int quantity) { this.quantity = quantity; }
+        public long getTotal() { return total; }
+        public void setTotal(long total) { this.total = total; }
+        public double getPrice() { return price; }
+        public void setPrice(double price) { this.price = price; }
+        public String getSymbol() { return symbol; }
+        public void setSymbol(String symbol) { this.symbol = symbol; }
+        public Integer getRank() { return rank; }
+        public void setRank(Integer rank) { this.rank = rank; }
+        public Bar getBar() { return bar; }
+        public void setBar(Bar bar) { this.bar = bar; }
+        public List<String> getTags() { return tags; }
+        public void setTags(List<String> tags) { this.tags = tags; }
+    }
+    
+    public static class OrderDto {
+        private Integer quantity;
+        private long total;
+        private String symbol;
+        
+        public Integer getQuantity() { return quantity; }
+        public OrderDto setQuantity(Integer quantity) { this.quantity = quantity; return this; }
+        public long getTotal() { return total; }
+        public long setTotal(long total) { return this.total = total; }
+        public String getSymbol() { return symbol; }
+        public void setSymbol(String symbol) { this.symbol = symbol; }
+    }
+    
+    public static class Boxed {
+        private Integer quantity;
+        private Long total;
+        
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+        public Long getTotal() { return total; }
+        public void setTotal(Long total) { this.total = total; }
+    }
+    
+    private static Order newOrder() {
+        Order order = new Order();
+        order.setQuantity(3);
+        order.setTotal(Long.MAX_VALUE);
+        order.setPrice(1.5);
+        order.setSymbol("IBM");
+        order.setRank(7);
+        Bar bar = new Bar("bar");
+        bar.setString("s");
+        order.setBar(bar);
+        List<String> tags = new ArrayList<String>();
+        tags.add("tag");
+        order.setTags(tags);
+        return order;
+    }
+    
+    @Test
+    public void testReplicate() {
+        Order from = newOrder();
+        Order to = new BeanReplicator(new BeanTransformer(GeneratedBeanPopulator.factory)).replicateBean(from);
+        
+        assertNotSame(from, to);
+        assertEquals(3, to.getQuantity());
+        assertEquals(Long.MAX_VALUE, to.getTotal());
+        assertEquals(1.5, to.getPrice(), 0);
+        assertSame("IBM", to.getSymbol());
+        assertEquals(Integer.valueOf(7), to.getRank());
+        // Nested beans and collections are still replicated
+        assertNotSame(from.getBar(), to.getBar());
+        assertEquals("s", to.getBar().getString());
+        assertNotSame(from.getTags(), to.getTags());
+        assertEquals(from.getTags(), to.getTags());
+    }
+    
+    @Test
+    public void testGenerated() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        Order from = newOrder();
+        Order to = new GeneratedBeanPopulator(from, new Order()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        assertEquals("IBM", to.getSymbol());
+        
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(from, to);
+        GeneratedBeanCopier copier = plan.getGeneratedBeanCopier();
+        assertNotSame(GeneratedBeanCopier.NONE, copier);
+        
+        for (int i=0; i < plan.size(); i++) {
+            assertTrue(copier.isGenerated(i));
+            String name = plan.getPropertyName(i);
+            assertEquals(name, name.equals("quantity") || name.equals("total") || name.equals("price") 
+                            || name.equals("symbol") || name.equals("rank"), 
+                    plan.isDirectTransfer(i));
+        }
+        // The generated copier is reused
+        new GeneratedBeanPopulator(newOrder(), new Order()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        assertSame(copier, plan.getGeneratedBeanCopier());
+    }
+    
+    @Test
+    public void testPrimitiveToWrapper() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE);
+        OrderDto to = new GeneratedBeanPopulator(newOrder(), new OrderDto())
+                            .initBeanPopulatorBaseConfig(baseConfig)
+                            .populate();
+        assertEquals(Integer.valueOf(3), to.getQuantity());
+        assertEquals(Long.MAX_VALUE, to.getTotal());
+        assertEquals("IBM", to.getSymbol());
+    }
+    
+    @Test
+    public void testNullWrapperToPrimitive() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE);
+        Order expected = new BeanPopulator(new Boxed(), newOrder())
+                            .initBeanPopulatorBaseConfig(baseConfig.clone())
+                            .populate();
+        Order to = new GeneratedBeanPopulator(new Boxed(), newOrder())
+                            .initBeanPopulatorBaseConfig(baseConfig)
+                            .populate();
+        assertTrue(baseConfig.getBeanPopulationPlan(new Boxed(), to).getGeneratedBeanCopier().isGenerated(0));
+        assertEquals(expected.getQuantity(), to.getQuantity());
+        assertEquals(expected.getTotal(), to.getTotal());
+        assertEquals(0, to.getQuantity());
+        assertEquals(0, to.getTotal());
+    }
+    
+    @Test
+    public void testNotGenerated() {
+        // Protected setter methods cannot be invoked from a generated class
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setSetterMethodCollector(new net.sf.beanlib.provider.collector.ProtectedSetterMethodCollector());
+        Foo to = new GeneratedBeanPopulator(new Foo("protected"), new Foo())
+                        .initBeanPopulatorBaseConfig(baseConfig)
+                        .populate();
+        assertEquals("protected", to.getProtectedSetString());
+        
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Foo(), new Foo());
+        GeneratedBeanCopier copier = plan.getGeneratedBeanCopier();
+        
+        for (int i=0; i < plan.size(); i++)
+            assertEquals(!plan.getPropertyName(i).equals("protectedSetString"), copier.isGenerated(i));
+    }
+    
+    @Test
+    public void testCustomTransformer() {
+        final List<String> transformed = new ArrayList<String>();
+        BeanTransformerSpi transformer = new BeanTransformer(GeneratedBeanPopulator.factory)
+            .initCustomTransformerFactory(new CustomBeanTransformerSpi.Factory() {
+                public CustomBeanTransformerSpi newCustomBeanTransformer(BeanTransformerSpi beanTransformer) {
+                    return new CustomBeanTransformerSpi() {
+                        public boolean isTransformable(Object from, Class<?> toClass, PropertyInfo propertyInfo) {
+                            return toClass == String.class && propertyInfo != null;
+                        }
+                        public <T> T transform(Object in, Class<T> toClass, PropertyInfo propertyInfo) {
+                            transformed.add(propertyInfo.getPropertyName());
+                            return toClass.cast(in + "!");
+                        }
+                    };
+                }
+            });
+        Order to = new BeanReplicator(transformer).replicateBean(newOrder());
+        // Immutable values claimed by the custom transformer are not copied inline
+        assertEquals("IBM!", to.getSymbol());
+        assertEquals(3, to.getQuantity());
+        assertTrue(transformed.contains("symbol"));
+        assertFalse(transformed.contains("quantity"));
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GeneratedBeanPopulatorTest.class);
+    }
+}
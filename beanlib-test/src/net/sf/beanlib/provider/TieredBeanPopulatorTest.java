@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.provider.GeneratedBeanPopulatorTest.Boxed;
+import net.sf.beanlib.provider.GeneratedBeanPopulatorTest.Order;
+import net.sf.beanlib.provider.replicator.BeanReplicator;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.DetailedPropertyFilter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class TieredBeanPopulatorTest {
+    private static final Executor CALLER_RUNS = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    
+    private static Order newOrder(String symbol) {
+        Order order = new Order();
+        order.setSymbol(symbol);
+        order.setQuantity(symbol.length());
+        return order;
+    }
+    
+    @Test
+    public void testPromotion() {
+        TieredBeanPopulator.Factory factory = TieredBeanPopulator.newFactory(3, CALLER_RUNS);
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(new Order(), new Order());
+        
+        for (int i=0; i < 2; i++) {
+            Order to = factory.newBeanPopulator(newOrder("IBM"), new Order()).initBeanPopulatorBaseConfig(baseConfig).populate();
+            assertEquals("IBM", to.getSymbol());
+            assertEquals(3, to.getQuantity());
+        }
+        // Still reflective
+        assertNull(plan.getGeneratedBeanCopier());
+        assertEquals(0, factory.getStatistics().getPromotionCount());
+        
+        Order to = factory.newBeanPopulator(newOrder("ORCL"), new Order()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        assertEquals("ORCL", to.getSymbol());
+        // Promoted
+        GeneratedBeanCopier copier = plan.getGeneratedBeanCopier();
+        assertNotSame(GeneratedBeanCopier.NONE, copier);
+        
+        TieredBeanPopulator.Statistics statistics = factory.getStatistics();
+        assertEquals(1, statistics.getPromotionCount());
+        assertEquals(1, statistics.getGeneratedCount());
+        assertEquals(0, statistics.getPendingCount());
+        assertTrue(statistics.getCompileTimeNanos() > 0);
+        
+        to = factory.newBeanPopulator(newOrder("SUNW"), new Order()).initBeanPopulatorBaseConfig(baseConfig).populate();
+        assertEquals("SUNW", to.getSymbol());
+        assertEquals(4, to.getQuantity());
+        assertSame(copier, plan.getGeneratedBeanCopier());
+        assertEquals(1, statistics.getPromotionCount());
+    }
+    
+    @Test
+    public void testNullWrapperToPrimitiveAcrossPromotion() {
+        TieredBeanPopulator.Factory factory = TieredBeanPopulator.newFactory(2, CALLER_RUNS);
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setDetailedPropertyFilter(DetailedPropertyFilter.ALWAYS_PROPAGATE);
+        
+        // The same copy keeps working once the plan is promoted
+        for (int i=0; i < 4; i++) {
+            Order to = factory.newBeanPopulator(new Boxed(), newOrder("IBM")).initBeanPopulatorBaseConfig(baseConfig).populate();
+            assertEquals(0, to.getQuantity());
+            assertEquals(0, to.getTotal());
+        }
+        assertEquals(1, factory.getStatistics().getPromotionCount());
+        assertEquals(1, factory.getStatistics().getGeneratedCount());
+    }
+    
+    @Test
+    public void testAsynchronousPromotion() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TieredBeanPopulator.Factory factory = TieredBeanPopulator.newFactory(10, executor);
+        BeanReplicator replicator = new BeanReplicator(new BeanTransformer(factory));
+        
+        for (int i=0; i < 100; i++) {
+            Order from = newOrder("S" + i);
+            from.setBar(new Bar());
+            from.getBar().setString(from.getSymbol());
+            Order to = replicator.replicateBean(from);
+            assertEquals(from.getSymbol(), to.getSymbol());
+            assertEquals(from.getQuantity(), to.getQuantity());
+            assertNotSame(from.getBar(), to.getBar());
+            assertEquals(from.getSymbol(), to.getBar().getString());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Both Order and Bar are promoted
+        assertEquals(2, factory.getStatistics().getPromotionCount());
+        assertEquals(2, factory.getStatistics().getGeneratedCount());
+        assertEquals(0, factory.getStatistics().getPendingCount());
+    }
+    
+    @Test
+    public void testDefaultExecutor() throws InterruptedException {
+        for (int i=0; i < 2; i++) {
+            TieredBeanPopulator.Factory factory = TieredBeanPopulator.newFactory(1, null);
+            Order to = factory.newBeanPopulator(newOrder("IBM"), new Order())
+                              .initBeanPopulatorBaseConfig(new BeanPopulatorBaseConfig())
+                              .populate();
+            assertEquals("IBM", to.getSymbol());
+            assertEquals(1, factory.getStatistics().getPromotionCount());
+            
+            for (int j=0; j < 100 && factory.getStatistics().getPendingCount() > 0; j++)
+                Thread.sleep(100);
+            assertEquals(0, factory.getStatistics().getPendingCount());
+            // A subsequent promotion starts a new background thread
+            TieredBeanPopulator.shutdownDefaultExecutor();
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        TieredBeanPopulator.newFactory(0, null);
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TieredBeanPopulatorTest.class);
+    }
+}
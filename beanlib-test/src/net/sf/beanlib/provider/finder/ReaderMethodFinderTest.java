@@ -0,0 +1,97 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.finder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class ReaderMethodFinderTest {
+    public static class Base {
+        protected String getName() { return "base"; }
+        protected boolean isActive() { return true; }
+        private int getCount() { return 1; }
+        public static String getStatic() { return "static"; }
+    }
+    
+    public static class Sub extends Base {
+        @Override protected String getName() { return "sub"; }
+        public String getValue(int i) { return "value"; }
+        public String getPublicName() { return "public"; }
+        public boolean isPublicActive() { return true; }
+    }
+    
+    @Test
+    public void testPublic() throws Exception {
+        PublicReaderMethodFinder finder = new PublicReaderMethodFinder();
+        Sub bean = new Sub();
+        
+        for (int i=0; i < 2; i++) {
+            long count = PublicReaderMethodFinder.getAvoidedLookupCount();
+            assertEquals(Sub.class.getMethod("getPublicName"), finder.find("publicName", bean));
+            assertEquals(Sub.class.getMethod("isPublicActive"), finder.find("publicActive", bean));
+            assertEquals(Base.class.getMethod("getStatic"), finder.find("static", bean));
+            assertNull(finder.find("name", bean));
+            assertNull(finder.find("value", bean));
+            assertNull(finder.find("missing", bean));
+            
+            if (i > 0) {
+                // Both the hits and misses are served from the cache
+                assertTrue(PublicReaderMethodFinder.getAvoidedLookupCount() - count >= 6);
+            }
+        }
+    }
+    
+    @Test
+    public void testProtected() throws Exception {
+        ProtectedReaderMethodFinder finder = new ProtectedReaderMethodFinder();
+        Sub bean = new Sub();
+        
+        assertEquals(Sub.class.getDeclaredMethod("getName"), finder.find("name", bean));
+        assertEquals(Sub.class.getDeclaredMethod("getName"), finder.find("Name", bean));
+        assertEquals(Base.class.getDeclaredMethod("isActive"), finder.find("active", bean));
+        assertNull(finder.find("count", bean));
+        assertNull(finder.find("static", bean));
+        assertNull(finder.find("value", bean));
+        assertNull(finder.find("missing", bean));
+        assertEquals(Base.class.getDeclaredMethod("getName"), finder.find("name", new Base()));
+        // Repeated lookups are served by the same index
+        assertSame(finder.find("name", bean), new ProtectedReaderMethodFinder().find("name", new Sub()));
+    }
+    
+    @Test
+    public void testPrivate() throws Exception {
+        PrivateReaderMethodFinder finder = new PrivateReaderMethodFinder();
+        Sub bean = new Sub();
+        
+        assertEquals(Sub.class.getDeclaredMethod("getName"), finder.find("name", bean));
+        assertEquals(Base.class.getDeclaredMethod("getCount"), finder.find("count", bean));
+        assertNull(finder.find("static", bean));
+        // The protected finder is not affected by the private finder's index
+        assertNull(new ProtectedReaderMethodFinder().find("count", bean));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReaderMethodFinderTest.class);
+    }
+}
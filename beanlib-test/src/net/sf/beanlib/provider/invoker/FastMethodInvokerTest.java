@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.spi.MethodInvoker;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class FastMethodInvokerTest {
+    public static class Bean {
+        private int number;
+        private String string;
+        
+        public int getNumber() {
+            return number;
+        }
+        public void setNumber(int number) {
+            this.number = number;
+        }
+        protected String getString() {
+            return string;
+        }
+        protected void setString(String string) {
+            this.string = string;
+        }
+        public void setFailure(String failure) {
+            throw new IllegalStateException(failure);
+        }
+    }
+    
+    @Test
+    public void testPublicMethod() throws Exception {
+        Method setter = Bean.class.getMethod("setNumber", int.class);
+        MethodInvoker setterInvoker = FastMethodInvoker.factory.newMethodInvoker(setter);
+        assertSame(setter, setterInvoker.getMethod());
+        MethodInvoker readerInvoker = FastMethodInvoker.factory.newMethodInvoker(Bean.class.getMethod("getNumber"));
+        
+        Bean bean = new Bean();
+        setterInvoker.invoke(bean, new Object[] {Integer.valueOf(3)});
+        assertEquals(3, bean.getNumber());
+        assertEquals(Integer.valueOf(3), readerInvoker.invoke(bean, null));
+        // Widening conversion as per reflection
+        setterInvoker.invoke(bean, new Object[] {Byte.valueOf((byte)0)});
+        assertEquals(0, bean.getNumber());
+    }
+    
+    @Test
+    public void testNonPublicMethod() throws Exception {
+        MethodInvoker setterInvoker = FastMethodInvoker.factory.newMethodInvoker(
+                Bean.class.getDeclaredMethod("setString", String.class));
+        MethodInvoker readerInvoker = FastMethodInvoker.factory.newMethodInvoker(
+                Bean.class.getDeclaredMethod("getString"));
+        assertTrue(setterInvoker instanceof ReflectionMethodInvoker);
+        
+        Bean bean = new Bean();
+        setterInvoker.invoke(bean, new Object[] {"foo"});
+        assertEquals("foo", readerInvoker.invoke(bean, null));
+    }
+    
+    @Test
+    public void testException() throws Exception {
+        MethodInvoker invoker = FastMethodInvoker.factory.newMethodInvoker(
+                Bean.class.getMethod("setFailure", String.class));
+        try {
+            invoker.invoke(new Bean(), new Object[] {"bar"});
+            fail();
+        } catch(BeanlibException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+            assertEquals("bar", ex.getCause().getMessage());
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FastMethodInvokerTest.class);
+    }
+}
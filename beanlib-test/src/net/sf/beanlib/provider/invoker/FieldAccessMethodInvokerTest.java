@@ -0,0 +1,246 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.provider.BeanTransformer;
+import net.sf.beanlib.provider.collector.FieldSetterMethodCollector;
+import net.sf.beanlib.provider.collector.PrivateSetterMethodCollector;
+import net.sf.beanlib.provider.finder.FieldReaderMethodFinder;
+import net.sf.beanlib.provider.finder.PrivateReaderMethodFinder;
+import net.sf.beanlib.provider.replicator.BeanReplicator;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.MethodInvoker;
+import net.sf.beanlib.spi.PropertyFilter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class FieldAccessMethodInvokerTest {
+    public static class Base {
+        private String name;
+        private int count;
+        
+        public String getName() {
+            return name == null ? null : name.toUpperCase();
+        }
+        public void setName(String name) {
+            this.name = name + "!";
+        }
+        private int getCount() {
+            return count;
+        }
+        private void setCount(int count) {
+            this.count = count;
+        }
+    }
+    
+    public static class Derived extends Base {
+        private boolean active;
+        private String secret;
+        
+        public boolean isActive() {
+            return active;
+        }
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+        public String getSecret() {
+            return secret;
+        }
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+        public String getComputed() {
+            return "computed";
+        }
+        public void setComputed(String computed) {
+            this.secret = computed;
+        }
+    }
+    
+    public static class FieldOnlyBase {
+        private String name;
+        protected final long id;
+        
+        public FieldOnlyBase() {
+            this(0);
+        }
+        public FieldOnlyBase(long id) {
+            this.id = id;
+        }
+    }
+    
+    public static class FieldOnly extends FieldOnlyBase {
+        private static String shared = "shared";
+        private int count;
+        private boolean active;
+        private String secret;
+        private FieldOnly child;
+        
+        public FieldOnly() {
+        }
+        public FieldOnly(long id) {
+            super(id);
+        }
+    }
+    
+    @Test
+    public void testFieldAccess() throws Exception {
+        Method getter = Base.class.getMethod("getName");
+        MethodInvoker getterInvoker = FieldAccessMethodInvoker.factory.newMethodInvoker(getter);
+        assertTrue(getterInvoker instanceof FieldAccessMethodInvoker);
+        assertSame(getter, getterInvoker.getMethod());
+        
+        Method setter = Base.class.getMethod("setName", String.class);
+        MethodInvoker setterInvoker = FieldAccessMethodInvoker.factory.newMethodInvoker(setter);
+        Base bean = new Base();
+        assertNull(setterInvoker.invoke(bean, new Object[] {"abc"}));
+        // The setter and getter logic is bypassed
+        assertEquals("abc", getterInvoker.invoke(bean, null));
+        assertEquals("ABC", bean.getName());
+    }
+    
+    @Test
+    public void testInheritedPrivateField() throws Exception {
+        Method setter = Base.class.getDeclaredMethod("setCount", int.class);
+        MethodInvoker setterInvoker = FieldAccessMethodInvoker.factory.newMethodInvoker(setter);
+        Derived bean = new Derived();
+        setterInvoker.invoke(bean, new Object[] {3});
+        assertEquals(3, FieldAccessMethodInvoker.factory.newMethodInvoker(
+                Base.class.getDeclaredMethod("getCount")).invoke(bean, null));
+        
+        MethodInvoker booleanInvoker = FieldAccessMethodInvoker.factory.newMethodInvoker(
+                Derived.class.getMethod("isActive"));
+        assertTrue(booleanInvoker instanceof FieldAccessMethodInvoker);
+        assertEquals(Boolean.FALSE, booleanInvoker.invoke(bean, null));
+    }
+    
+    @Test
+    public void testFallback() throws Exception {
+        // No field named computed
+        Method getter = Derived.class.getMethod("getComputed");
+        MethodInvoker getterInvoker = FieldAccessMethodInvoker.factory.newMethodInvoker(getter);
+        assertTrue(getterInvoker instanceof FastMethodInvoker);
+        assertEquals("computed", getterInvoker.invoke(new Derived(), null));
+    }
+    
+    @Test
+    public void testReplicate() {
+        BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+        baseConfig.setMethodInvokerFactory(FieldAccessMethodInvoker.factory);
+        BeanTransformer transformer = new BeanTransformer();
+        transformer.initBeanPopulatorBaseConfig(baseConfig);
+        transformer.initSetterMethodCollector(new PrivateSetterMethodCollector())
+                   .initReaderMethodFinder(new PrivateReaderMethodFinder())
+                   .initPropertyFilter(new PropertyFilter() {
+                       public boolean propagate(String propertyName, Method readerMethod) {
+                           return !propertyName.equals("secret") && !propertyName.equals("computed");
+                       }
+                   });
+        Derived from = new Derived();
+        from.setName("name");
+        ((Base)from).setCount(5);
+        from.setActive(true);
+        from.setSecret("secret");
+        Derived to = new BeanReplicator(transformer).replicateBean(from);
+        
+        assertEquals("NAME!", to.getName());
+        assertEquals(5, ((Base)to).getCount());
+        assertTrue(to.isActive());
+        // The property filter still applies
+        assertNull(to.getSecret());
+    }
+    
+    @Test
+    public void testFieldAccessorMethods() throws Exception {
+        Set<String> setterNames = new HashSet<String>();
+        
+        for (Method m : FieldAccessorMethods.getSetterMethods(FieldOnly.class))
+            setterNames.add(m.getName());
+        // Neither static nor final fields are set
+        assertEquals(5, setterNames.size());
+        assertTrue(setterNames.contains("setName"));
+        assertTrue(setterNames.contains("setChild"));
+        assertFalse(setterNames.contains("setId"));
+        assertFalse(setterNames.contains("setShared"));
+        
+        Method reader = new FieldReaderMethodFinder().find("name", new FieldOnly());
+        assertEquals("getName", reader.getName());
+        assertSame(String.class, reader.getReturnType());
+        // Declared by the class declaring the field
+        assertSame(FieldOnlyBase.class, reader.getDeclaringClass());
+        assertTrue(reader.isSynthetic());
+        assertTrue(FieldAccessorMethods.isAccessorMethod(reader));
+        assertEquals(FieldOnlyBase.class.getDeclaredField("name"), FieldAccessorMethods.getField(reader));
+        assertSame(long.class, new FieldReaderMethodFinder().find("Id", new FieldOnly()).getReturnType());
+        assertNull(new FieldReaderMethodFinder().find("shared", new FieldOnly()));
+        // Not a synthetic accessor method
+        assertFalse(FieldAccessorMethods.isAccessorMethod(Base.class.getMethod("getName")));
+        assertNull(FieldAccessorMethods.getField(Base.class.getMethod("getName")));
+    }
+    
+    @Test
+    public void testReplicateFieldsWithoutAccessors() {
+        BeanTransformer transformer = new BeanTransformer();
+        transformer.initSetterMethodCollector(new FieldSetterMethodCollector())
+                   .initReaderMethodFinder(new FieldReaderMethodFinder())
+                   .initPropertyFilter(new PropertyFilter() {
+                       public boolean propagate(String propertyName, Method readerMethod) {
+                           return !propertyName.equals("secret");
+                       }
+                   });
+        FieldOnly from = new FieldOnly(7);
+        ((FieldOnlyBase)from).name = "name";
+        from.count = 5;
+        from.active = true;
+        from.secret = "secret";
+        from.child = new FieldOnly();
+        from.child.count = 6;
+        from.child.child = from;
+        FieldOnly to = new BeanReplicator(transformer).replicateBean(from);
+        
+        assertEquals("name", ((FieldOnlyBase)to).name);
+        assertEquals(5, to.count);
+        assertTrue(to.active);
+        // The property filter still applies
+        assertNull(to.secret);
+        // Final fields are not set
+        assertEquals(0, to.id);
+        assertNotNull(to.child);
+        assertNotSame(from.child, to.child);
+        assertEquals(6, to.child.count);
+        assertSame(to, to.child.child);
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FieldAccessMethodInvokerTest.class);
+    }
+}
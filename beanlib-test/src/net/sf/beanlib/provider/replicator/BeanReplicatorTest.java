@@ -17,6 +17,7 @@ package net.sf.beanlib.provider.replicator;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
@@ -94,6 +95,34 @@ public class BeanReplicatorTest
         assertSame(to.getClazz(), List.class);
     }
     
+    @Test
+    public void testCopyAll() {
+        ComplexBean shared = new ComplexBean("shared");
+        ComplexBean[] a = { shared };
+        ComplexBean foo = new ComplexBean("foo");
+        foo.setArray(a);
+        ComplexBean bar = new ComplexBean("bar");
+        bar.setCollection(Arrays.asList(a));
+        
+        List<ComplexBean> to = new BeanReplicator().copyAll(Arrays.asList(foo, bar, null, foo));
+        
+        assertThat(to.size(), is(4));
+        assertThat(to.get(0).getName(), is("foo"));
+        assertThat(to.get(1).getName(), is("bar"));
+        assertThat(to.get(0), not(sameInstance(foo)));
+        assertThat(to.get(2), nullValue());
+        assertThat(to.get(3), sameInstance(to.get(0)));
+        // The shared bean is replicated only once for the whole batch
+        ComplexBean toShared = to.get(0).getArray()[0];
+        assertThat(toShared, not(sameInstance(shared)));
+        assertThat(to.get(1).getCollection().iterator().next(), sameInstance(toShared));
+    }
+    
+    @Test
+    public void testCopyAllNull() {
+        assertThat(new BeanReplicator().copyAll(null, ComplexBean.class), nullValue());
+    }
+    
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(new Object(){}.getClass().getEnclosingClass());
     }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.BeanlibException;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class InstantiatorTest {
+    public static class PublicBean {
+        public PublicBean() {}
+    }
+    
+    public static class PrivateBean {
+        private PrivateBean() {}
+    }
+    
+    public static class NoDefaultBean {
+        public NoDefaultBean(String s) {}
+    }
+    
+    public static class FailingBean {
+        public FailingBean() { throw new IllegalStateException("failed"); }
+    }
+    
+    @Test
+    public void testNoArgConstructor() throws Exception {
+        Instantiator instantiator = Instantiator.forNoArgConstructor(PublicBean.class);
+        assertSame(instantiator, Instantiator.forNoArgConstructor(PublicBean.class));
+        assertEquals(PublicBean.class, instantiator.newInstance(null).getClass());
+        assertEquals(PrivateBean.class, 
+                Instantiator.forNoArgConstructor(PrivateBean.class).newInstance(null).getClass());
+    }
+    
+    @Test
+    public void testMissingConstructor() throws Exception {
+        for (int i=0; i < 2; i++) {
+            try {
+                Instantiator.forNoArgConstructor(NoDefaultBean.class);
+                fail();
+            } catch(NoSuchMethodException expected) {
+                assertEquals(NoDefaultBean.class.getName() + ".<init>()", expected.getMessage());
+            }
+        }
+    }
+    
+    @Test
+    public void testFailingConstructor() throws Exception {
+        try {
+            Instantiator.forNoArgConstructor(FailingBean.class).newInstance(null);
+            fail();
+        } catch(BeanlibException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+    
+    @Test
+    public void testComparatorConstructor() throws Exception {
+        Comparator<Object> comparator = Collections.reverseOrder();
+        Object[] args = {comparator};
+        TreeSet<?> set = (TreeSet<?>)Instantiator.forComparatorConstructor(TreeSet.class).newInstance(args);
+        assertSame(comparator, set.comparator());
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(InstantiatorTest.class);
+    }
+}
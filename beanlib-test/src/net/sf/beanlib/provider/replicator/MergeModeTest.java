@@ -0,0 +1,180 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.provider.BeanTransformer;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class MergeModeTest {
+    public static class Child {
+        private String name;
+        private int value;
+        
+        public Child() {}
+        public Child(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public int getValue() { return value; }
+        public void setValue(int value) { this.value = value; }
+        
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Child && String.valueOf(name).equals(String.valueOf(((Child)that).name));
+        }
+        @Override
+        public int hashCode() {
+            return String.valueOf(name).hashCode();
+        }
+    }
+    
+    public static class Node {
+        private String name;
+        private Child child;
+        private List<Child> children = new ArrayList<Child>();
+        private Set<Child> childSet = new HashSet<Child>();
+        private Map<String,Child> childMap = new HashMap<String,Child>();
+        
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public Child getChild() { return child; }
+        public void setChild(Child child) { this.child = child; }
+        public List<Child> getChildren() { return children; }
+        public void setChildren(List<Child> children) { this.children = children; }
+        public Set<Child> getChildSet() { return childSet; }
+        public void setChildSet(Set<Child> childSet) { this.childSet = childSet; }
+        public Map<String, Child> getChildMap() { return childMap; }
+        public void setChildMap(Map<String, Child> childMap) { this.childMap = childMap; }
+    }
+    
+    private static Node newNode(int version, int size) {
+        Node node = new Node();
+        node.setName("node" + version);
+        node.setChild(new Child("child", version));
+        
+        for (int i=0; i < size; i++) {
+            node.getChildren().add(new Child("c" + i, version));
+            node.getChildSet().add(new Child("s" + i, version));
+            node.getChildMap().put("m" + i, new Child("m" + i, version));
+        }
+        return node;
+    }
+    
+    @Test
+    public void testMerge() {
+        Node to = new BeanReplicator().replicateBean(newNode(1, 3));
+        Child child = to.getChild();
+        List<Child> children = to.getChildren();
+        Child child0 = children.get(0);
+        Set<Child> childSet = to.getChildSet();
+        Child setChild0 = findByName(childSet, "s0");
+        Map<String,Child> childMap = to.getChildMap();
+        Child mapChild0 = childMap.get("m0");
+        
+        BeanTransformer transformer = new BeanTransformer().initMergeMode(true);
+        assertTrue(transformer.isMergeMode());
+        // Shrinks
+        assertSame(to, new BeanReplicator(transformer).populate(newNode(2, 2), to));
+        transformer.reset();
+        
+        assertEquals("node2", to.getName());
+        assertSame(child, to.getChild());
+        assertEquals(2, child.getValue());
+        
+        assertSame(children, to.getChildren());
+        assertEquals(2, children.size());
+        assertSame(child0, children.get(0));
+        assertEquals(2, child0.getValue());
+        
+        assertSame(childSet, to.getChildSet());
+        assertEquals(2, childSet.size());
+        assertSame(setChild0, findByName(childSet, "s0"));
+        assertEquals(2, setChild0.getValue());
+        
+        assertSame(childMap, to.getChildMap());
+        assertEquals(2, childMap.size());
+        assertFalse(childMap.containsKey("m2"));
+        assertSame(mapChild0, childMap.get("m0"));
+        assertEquals(2, mapChild0.getValue());
+        
+        // Grows
+        new BeanReplicator(transformer).populate(newNode(3, 4), to);
+        assertEquals(4, children.size());
+        assertSame(child0, children.get(0));
+        assertEquals(3, children.get(3).getValue());
+        assertEquals(4, childSet.size());
+        assertSame(setChild0, findByName(childSet, "s0"));
+        assertEquals(3, findByName(childSet, "s3").getValue());
+        assertEquals(4, childMap.size());
+        assertSame(mapChild0, childMap.get("m0"));
+        assertEquals(3, childMap.get("m3").getValue());
+    }
+    
+    @Test
+    public void testWithoutMerge() {
+        Node to = new BeanReplicator().replicateBean(newNode(1, 3));
+        Child child = to.getChild();
+        List<Child> children = to.getChildren();
+        
+        new BeanReplicator().populate(newNode(2, 2), to);
+        assertNotSame(child, to.getChild());
+        assertNotSame(children, to.getChildren());
+        assertEquals(2, to.getChild().getValue());
+    }
+    
+    @Test
+    public void testNullReplaced() {
+        Node to = new BeanReplicator().replicateBean(newNode(1, 1));
+        Node from = newNode(2, 1);
+        from.setChild(null);
+        from.setChildren(null);
+        
+        new BeanReplicator(new BeanTransformer().initMergeMode(true)).populate(from, to);
+        assertEquals(null, to.getChild());
+        assertEquals(null, to.getChildren());
+    }
+    
+    private static Child findByName(Set<Child> set, String name) {
+        for (Child child : set)
+            if (child.getName().equals(name))
+                return child;
+        return null;
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MergeModeTest.class);
+    }
+}
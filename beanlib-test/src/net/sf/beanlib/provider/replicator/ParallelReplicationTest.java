@@ -0,0 +1,157 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.PropertyInfo;
+import net.sf.beanlib.provider.Bar;
+import net.sf.beanlib.provider.BeanTransformer;
+import net.sf.beanlib.provider.Foo;
+import net.sf.beanlib.spi.BeanTransformerSpi;
+import net.sf.beanlib.spi.CustomBeanTransformerSpi;
+import net.sf.beanlib.util.ConcurrentIdentityMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class ParallelReplicationTest {
+    private static final int SIZE = 5000;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /** Returns a list of bars all referencing the same shared bar, with each bar appearing twice. */
+    private static List<Bar> newBars(Bar shared) {
+        List<Bar> list = new ArrayList<Bar>();
+        
+        for (int i=0; i < SIZE; i++) {
+            Bar bar = new Bar();
+            bar.setString(String.valueOf(i));
+            bar.setBar(shared);
+            list.add(bar);
+            list.add(bar);
+        }
+        return list;
+    }
+    
+    private static void assertReplicated(List<Bar> from, List<?> to) {
+        assertEquals(from.size(), to.size());
+        final Bar toShared = ((Bar)to.get(0)).getBar();
+        assertNotSame(from.get(0).getBar(), toShared);
+        
+        for (int i=0; i < to.size(); i++) {
+            Bar bar = (Bar)to.get(i);
+            // Original order
+            assertEquals(String.valueOf(i/2), bar.getString());
+            assertNotSame(from.get(i), bar);
+            // Shared references mapped to a single target
+            assertSame(toShared, bar.getBar());
+            assertSame(to.get(i & ~1), bar);
+        }
+    }
+    
+    @Test
+    public void testCollection() {
+        BeanTransformer beanTransformer = new BeanTransformer().initParallelReplication(executor, 100);
+        assertTrue(beanTransformer.getClonedMap() instanceof ConcurrentIdentityMap<?,?>);
+        List<Bar> from = newBars(new Bar("shared"));
+        List<?> to = beanTransformer.transform(from, List.class, null);
+        assertReplicated(from, to);
+        assertFalse(beanTransformer.isParallelWorker());
+    }
+    
+    @Test
+    public void testArray() {
+        BeanTransformer beanTransformer = new BeanTransformer().initParallelReplication(executor, 100);
+        List<Bar> from = newBars(new Bar("shared"));
+        Bar[] to = beanTransformer.transform(from.toArray(new Bar[from.size()]), Bar[].class, null);
+        
+        List<Bar> toList = new ArrayList<Bar>();
+        
+        for (Bar bar : to)
+            toList.add(bar);
+        assertReplicated(from, toList);
+    }
+    
+    @Test
+    public void testRejectedByExecutor() {
+        executor.shutdown();
+        BeanTransformer beanTransformer = new BeanTransformer().initParallelReplication(executor, 100);
+        List<Bar> from = newBars(new Bar("shared"));
+        assertReplicated(from, beanTransformer.transform(from, List.class, null));
+    }
+    
+    @Test
+    public void testTreeMode() {
+        BeanTransformer beanTransformer = new BeanTransformer()
+            .initTreeMode(true)
+            .initDebug(true)
+            .initParallelReplication(executor, 100);
+        List<Bar> from = newBars(null);
+        List<?> to = beanTransformer.transform(from, List.class, null);
+        assertEquals(from.size(), to.size());
+        assertEquals(String.valueOf(SIZE-1), ((Bar)to.get(to.size()-1)).getString());
+        // Identity not tracked in tree mode
+        assertNotSame(to.get(0), to.get(1));
+    }
+    
+    @Test
+    public void testFailure() {
+        BeanTransformer beanTransformer = new BeanTransformer()
+            .initParallelReplication(executor, 100)
+            .initCustomTransformerFactory(new CustomBeanTransformerSpi.Factory() {
+                public CustomBeanTransformerSpi newCustomBeanTransformer(BeanTransformerSpi beanTransformer) {
+                    return new CustomBeanTransformerSpi() {
+                        public boolean isTransformable(Object from, Class<?> toClass, PropertyInfo propertyInfo) {
+                            return from instanceof Foo && "4321".equals(((Foo)from).getString());
+                        }
+                        public <T> T transform(Object in, Class<T> toClass, PropertyInfo propertyInfo) {
+                            throw new BeanlibException("4321");
+                        }
+                    };
+                }
+            });
+        try {
+            beanTransformer.transform(newBars(null), List.class, null);
+            fail();
+        } catch(BeanlibException expected) {
+            assertEquals("4321", expected.getMessage());
+        }
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelReplicationTest.class);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.provider.Bar;
+import net.sf.beanlib.provider.BeanTransformer;
+import net.sf.beanlib.provider.CompiledReplicator;
+import net.sf.beanlib.provider.Foo;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class TreeModeClonedMapTest {
+    private static Bar newBar(String s) {
+        Bar bar = new Bar(s);
+        bar.setString(s);
+        bar.setBarString("bar" + s);
+        return bar;
+    }
+    
+    @Test
+    public void testNothingRecorded() {
+        TreeModeClonedMap map = new TreeModeClonedMap(TreeModeClonedMap.DEFAULT_MAX_DEPTH);
+        Object key = new Object();
+        assertNull(map.put(key, "value"));
+        assertFalse(map.containsKey(key));
+        assertNull(map.get(key));
+        assertTrue(map.isEmpty());
+    }
+    
+    @Test
+    public void testTree() {
+        BeanTransformer beanTransformer = new BeanTransformer().initTreeMode(true);
+        assertTrue(beanTransformer.isTreeMode());
+        assertTrue(beanTransformer.getClonedMap() instanceof TreeModeClonedMap);
+        Bar from = newBar("parent");
+        from.setBar(newBar("child"));
+        Bar to = beanTransformer.transform(from, Bar.class, null);
+        
+        assertNotSame(from, to);
+        assertEquals("parent", to.getString());
+        assertNotSame(from.getBar(), to.getBar());
+        assertEquals("barchild", to.getBar().getBarString());
+        assertNull(to.getBar().getBar());
+        
+        beanTransformer.initTreeMode(false);
+        assertFalse(beanTransformer.getClonedMap() instanceof TreeModeClonedMap);
+    }
+    
+    @Test
+    public void testSharedReferenceReplicatedPerOccurrence() {
+        Foo foo = new Foo("foo");
+        foo.setString("foo");
+        List<Foo> from = new ArrayList<Foo>();
+        from.add(foo);
+        from.add(foo);
+        
+        List<?> to = new BeanTransformer().initTreeMode(true).transform(from, List.class, null);
+        assertEquals(2, to.size());
+        assertNotSame(to.get(0), to.get(1));
+        assertEquals("foo", ((Foo)to.get(1)).getString());
+        
+        to = new BeanTransformer().transform(from, List.class, null);
+        assertSame(to.get(0), to.get(1));
+    }
+    
+    @Test
+    public void testCycleDetectedByDepth() {
+        BeanTransformer beanTransformer = new BeanTransformer()
+            .initTreeMode(true)
+            .initTreeModeMaxDepth(8)
+            .initDebug(true);
+        Bar from = newBar("foo");
+        from.setBar(from);
+        try {
+            beanTransformer.transform(from, Bar.class, null);
+            fail();
+        } catch(BeanlibException expected) {
+        }
+        assertEquals(0, ((TreeModeClonedMap)beanTransformer.getClonedMap()).getDepth());
+        
+        // Depth within the limit
+        Bar to = beanTransformer.transform(newBar("foo"), Bar.class, null);
+        assertEquals("foo", to.getString());
+    }
+    
+    @Test
+    public void testCompiledReplicator() {
+        CompiledReplicator replicator = CompiledReplicator.newCompiledReplicator(
+                new BeanTransformer().initTreeMode(true));
+        Bar from = newBar("parent");
+        from.setBar(newBar("child"));
+        Bar to = replicator.copy(from);
+        assertEquals("child", to.getBar().getString());
+        assertNotSame(to, replicator.copy(from));
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TreeModeClonedMapTest.class);
+    }
+}
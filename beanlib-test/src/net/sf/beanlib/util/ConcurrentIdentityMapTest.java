@@ -0,0 +1,108 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class ConcurrentIdentityMapTest {
+    @Test
+    public void testIdentity() {
+        ConcurrentIdentityMap<Object,Object> map = new ConcurrentIdentityMap<Object,Object>(0);
+        String a = new String("a");
+        String b = new String("a");
+        assertNull(map.putIfAbsent(a, "1"));
+        assertEquals("1", map.putIfAbsent(a, "2"));
+        assertEquals("1", map.get(a));
+        assertFalse(map.containsKey(b));
+        Object absent = new Object();
+        assertSame(absent, map.get(b, absent));
+        
+        assertNull(map.replace(b, "3"));
+        assertFalse(map.containsKey(b));
+        assertTrue(map.replace(a, "1", "3"));
+        assertFalse(map.remove(a, "1"));
+        assertTrue(map.remove(a, "3"));
+        assertTrue(map.isEmpty());
+        
+        map.put(null, "null");
+        map.put(b, null);
+        assertEquals(2, map.size());
+        assertEquals(2, map.entrySet().size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(null));
+    }
+    
+    @Test
+    public void testConcurrentPutIfAbsent() throws Exception {
+        final ConcurrentIdentityMap<Object,Object> map = new ConcurrentIdentityMap<Object,Object>(16);
+        final Object[] keys = new Object[10000];
+        
+        for (int i=0; i < keys.length; i++)
+            keys[i] = new Object();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            
+            for (int t=0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int won = 0;
+                        
+                        for (Object key : keys) {
+                            Object value = new Object();
+                            
+                            if (map.putIfAbsent(key, value) == null)
+                                won++;
+                        }
+                        return won;
+                    }
+                }));
+            }
+            int won = 0;
+            
+            for (Future<Integer> future : futures)
+                won += future.get();
+            // Each key is won by exactly one thread
+            assertEquals(keys.length, won);
+            assertEquals(keys.length, map.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ConcurrentIdentityMapTest.class);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class ReusableIdentityMapTest {
+    @Test
+    public void testIdentity() {
+        ReusableIdentityMap<Object,Object> map = new ReusableIdentityMap<Object,Object>();
+        String a = new String("a");
+        String b = new String("a");
+        map.put(a, "1");
+        assertEquals("1", map.get(a));
+        assertNull(map.get(b));
+        assertFalse(map.containsKey(b));
+        
+        map.put(b, null);
+        assertTrue(map.containsKey(b));
+        assertNull(map.get(b));
+        Object absent = new Object();
+        assertNull(map.get(b, absent));
+        assertSame(absent, map.get(new Object(), absent));
+        
+        map.put(null, "null");
+        assertEquals("null", map.get(null));
+        assertEquals(3, map.size());
+        assertEquals(3, map.entrySet().size());
+        assertEquals("1", map.put(a, "2"));
+        assertEquals(3, map.size());
+    }
+    
+    @Test
+    public void testAgainstIdentityHashMap() {
+        Random random = new Random(1);
+        ReusableIdentityMap<Object,Object> map = new ReusableIdentityMap<Object,Object>(2);
+        Map<Object,Object> expected = new IdentityHashMap<Object,Object>();
+        List<Object> keys = new ArrayList<Object>();
+        
+        for (int i=0; i < 200; i++)
+            keys.add(new Object());
+        for (int round=0; round < 5; round++) {
+            for (int i=0; i < 5000; i++) {
+                Object key = keys.get(random.nextInt(keys.size()));
+                
+                switch(random.nextInt(3)) {
+                    case 0:
+                        assertEquals(expected.put(key, i), map.put(key, i));
+                        break;
+                    case 1:
+                        assertEquals(expected.remove(key), map.remove(key));
+                        break;
+                    default:
+                        assertEquals(expected.get(key), map.get(key));
+                        assertEquals(expected.containsKey(key), map.containsKey(key));
+                }
+                assertEquals(expected.size(), map.size());
+            }
+            assertTrue(map.equals(expected));
+            map.clear();
+            expected.clear();
+            
+            for (Object key : keys)
+                assertFalse(map.containsKey(key));
+            assertTrue(map.isEmpty());
+        }
+    }
+    
+    @Test
+    public void testClearLargeMap() {
+        ReusableIdentityMap<Object,Object> map = new ReusableIdentityMap<Object,Object>();
+        map.ensureCapacity(ReusableIdentityMap.MAX_RETAINED_CAPACITY);
+        List<Object> keys = new ArrayList<Object>();
+        
+        for (int i=0; i < ReusableIdentityMap.MAX_RETAINED_CAPACITY; i++) {
+            Object key = new Object();
+            keys.add(key);
+            map.put(key, key);
+        }
+        assertEquals(keys.size(), map.size());
+        
+        for (Object key : keys)
+            assertSame(key, map.get(key));
+        map.clear();
+        assertEquals(0, map.size());
+        
+        for (Object key : keys)
+            assertFalse(map.containsKey(key));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReusableIdentityMapTest.class);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class WeakClassCacheTest {
+    @Test
+    public void testPutIfAbsent() {
+        WeakClassCache<String> cache = new WeakClassCache<String>();
+        assertNull(cache.get(String.class));
+        assertEquals("a", cache.putIfAbsent(String.class, "a"));
+        assertEquals("a", cache.putIfAbsent(String.class, "b"));
+        assertEquals("a", cache.get(String.class));
+        assertNull(cache.get(Object.class));
+    }
+    
+    @Test
+    public void testPut() {
+        WeakClassCache<String> cache = new WeakClassCache<String>();
+        cache.put(String.class, "a");
+        assertEquals("a", cache.get(String.class));
+        cache.put(String.class, "b");
+        assertEquals("b", cache.get(String.class));
+        assertEquals("b", cache.putIfAbsent(String.class, "c"));
+    }
+    
+    @Test
+    public void testManyClasses() {
+        WeakClassCache<Integer> cache = new WeakClassCache<Integer>();
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        // Array classes of increasing dimensions, enough to grow the table several times
+        for (Class<?> c = int.class; classes.size() < 200; c = Array.newInstance(c, 0).getClass())
+            classes.add(c);
+        for (int i=0; i < classes.size(); i++)
+            assertEquals(Integer.valueOf(i), cache.putIfAbsent(classes.get(i), i));
+        for (int i=0; i < classes.size(); i++) {
+            assertEquals(Integer.valueOf(i), cache.get(classes.get(i)));
+            assertEquals(Integer.valueOf(i), cache.putIfAbsent(classes.get(i), -1));
+        }
+    }
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(WeakClassCacheTest.class);
+    }
+}
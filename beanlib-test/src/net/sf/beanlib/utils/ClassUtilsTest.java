@@ -0,0 +1,88 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import junit.framework.JUnit4TestAdapter;
+import net.sf.beanlib.provider.replicator.BeanReplicator;
+
+import org.junit.Test;
+
+/**
+ * @author Joe D. Velopar
+ */
+public class ClassUtilsTest {
+    public static class Value {
+        private String name;
+        public Value() {}
+        public Value(String name) { this.name = name; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+    }
+    
+    public static class Holder {
+        private Value value;
+        public Value getValue() { return value; }
+        public void setValue(Value value) { this.value = value; }
+    }
+    
+    @Test
+    public void testTraits() {
+        assertEquals(0, ClassUtils.traits(null));
+        assertEquals(ClassUtils.IMMUTABLE_TRAIT | ClassUtils.JAVA_PACKAGE_TRAIT, ClassUtils.traits(String.class));
+        assertEquals(ClassUtils.JAVA_PACKAGE_TRAIT | ClassUtils.COLLECTION_TRAIT, ClassUtils.traits(ArrayList.class));
+        assertEquals(ClassUtils.JAVA_PACKAGE_TRAIT | ClassUtils.DATE_TRAIT, ClassUtils.traits(Date.class));
+        assertEquals(ClassUtils.JAVA_PACKAGE_TRAIT | ClassUtils.ARRAY_TRAIT, ClassUtils.traits(Date[].class));
+        assertEquals(ClassUtils.ARRAY_TRAIT, ClassUtils.traits(int[][].class));
+        assertEquals(0, ClassUtils.traits(Holder.class));
+        
+        assertTrue(ClassUtils.immutable(int.class));
+        assertTrue(ClassUtils.immutable(Integer.class));
+        assertFalse(ClassUtils.immutable(Date.class));
+        assertTrue(ClassUtils.isJavaPackage(String[].class));
+        assertFalse(ClassUtils.isHibernatePackage(String.class));
+        assertFalse(ClassUtils.isJavaPackage(null));
+    }
+    
+    @Test
+    public void testRegisterImmutable() {
+        Holder from = new Holder();
+        from.setValue(new Value("foo"));
+        
+        Holder to = new BeanReplicator().replicateBean(from);
+        assertNotSame(from.getValue(), to.getValue());
+        assertEquals("foo", to.getValue().getName());
+        
+        assertFalse(ClassUtils.immutable(Value.class));
+        ClassUtils.registerImmutable(Value.class);
+        assertTrue(ClassUtils.immutable(Value.class));
+        
+        to = new BeanReplicator().replicateBean(from);
+        assertSame(from.getValue(), to.getValue());
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ClassUtilsTest.class);
+    }
+}
@@ -30,7 +30,6 @@ public class CollectionPropertyName<T> {
     private final Class<T> declaringClass;
     private final String collectionProperty;
     private final int hashCode;
-    private final BeanGetter beanGetter = new BeanGetter();
     
     /** Convenient factory method. */
     public static <T> CollectionPropertyName<T>[] createCollectionPropertyNames(Class<T> declaringClass, String[] collectionProperties)
@@ -52,7 +51,9 @@ public class CollectionPropertyName<T> {
     public CollectionPropertyName(Class<T> declaringClass, String collectionProperty) {
         this.declaringClass = declaringClass;
         this.collectionProperty = collectionProperty;
-        this.hashCode = beanGetter.getBeanHashCode(this);
+        // Computed directly rather than introspected, as instances are created per property 
+        this.hashCode = 31 * (declaringClass == null ? 0 : declaringClass.hashCode()) 
+                      + (collectionProperty == null ? 0 : collectionProperty.hashCode());
     }
     public Class<T> getDeclaringClass() { return declaringClass; }
     
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import java.beans.Introspector;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.provider.invoker.FieldAccessMethodInvoker;
+import net.sf.beanlib.provider.invoker.FieldAccessorMethods;
+import net.sf.beanlib.spi.BeanMethodCollector;
+import net.sf.beanlib.spi.BeanMethodFinder;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.ClassDeterministicFilter;
+import net.sf.beanlib.spi.DetailedPropertyFilter;
+import net.sf.beanlib.spi.MethodInvoker;
+import net.sf.beanlib.spi.PropertyFilter;
+import net.sf.beanlib.utils.ClassUtils;
+
+/**
+ * An immutable plan of how the properties of a source JavaBean class
+ * are to be propagated to a target JavaBean class.
+ * <p>
+ * A plan captures everything that depends only on the pair of classes and the
+ * bean populator base configuration: the ordered setter methods of the target class
+ * with the matching reader methods of the source class, the invokers of these methods, 
+ * the parameter types, the property names, the primitive values that can bypass the transformer,
+ * and the property filter decisions that can be made without looking at the bean instances,
+ * ie the decisions of any {@link ClassDeterministicFilter}.
+ * It is therefore computed once per pair of classes and cached in the
+ * {@link BeanPopulatorBaseConfig} via {@link BeanPopulatorBaseConfig#getBeanPopulationPlan(Object, Object)},
+ * so that populating a bean only involves the property invocations.
+ * A plan also holds the {@link GeneratedBeanCopier} of the pair of classes, once generated,
+ * and the number of populations counted by a {@link TieredBeanPopulator}.
+ * <p>
+ * Notes the configured {@link BeanMethodCollector} and {@link BeanMethodFinder} are
+ * assumed to return the same methods for all beans of the same class.
+ *
+ * @see BeanPopulator
+ *
+ * @author Joe D. Velopar
+ */
+@Immutable
+public class BeanPopulationPlan
+{
+    private static final PropertyPlan[] EMPTY_PROPERTY_PLANS = {};
+
+    private final Class<?> fromClass;
+    private final Class<?> toClass;
+    private final PropertyPlan[] propertyPlans;
+    /** Lazily generated by {@link GeneratedBeanPopulator}. */
+    private volatile GeneratedBeanCopier generatedBeanCopier;
+    /** Number of populations counted by {@link TieredBeanPopulator}. */
+    private final AtomicInteger populationCount = new AtomicInteger();
+    /** Revision of the class deterministic detailed property filter applied when this plan was computed. */
+    private final int detailedPropertyFilterRevision;
+    /** Revision of the registered immutable classes when this plan was computed. */
+    private final int immutablesRevision;
+    /** Skip mask of the class deterministic property filter last applied, if any. */
+    private volatile PropertyFilterSkipMask propertyFilterSkipMask;
+
+    private BeanPopulationPlan(Class<?> fromClass, Class<?> toClass, PropertyPlan[] propertyPlans,
+            int detailedPropertyFilterRevision, int immutablesRevision) 
+    {
+        this.fromClass = fromClass;
+        this.toClass = toClass;
+        this.propertyPlans = propertyPlans;
+        this.detailedPropertyFilterRevision = detailedPropertyFilterRevision;
+        this.immutablesRevision = immutablesRevision;
+    }
+
+    /**
+     * Computes a new plan for populating the properties from beans of the same class as the given from bean
+     * to beans of the same class as the given to bean.
+     *
+     * @param fromBean a sample from bean
+     * @param toBean a sample to bean
+     * @param baseConfig the bean populator base configuration
+     */
+    public static BeanPopulationPlan newBeanPopulationPlan(Object fromBean, Object toBean, BeanPopulatorBaseConfig baseConfig)
+    {
+        // Read first, so a concurrent registration can only make the plan stale rather than wrong
+        final int immutablesRevision = ClassUtils.getImmutablesRevision();
+        final BeanMethodCollector setterMethodCollector = baseConfig.getSetterMethodCollector();
+        final BeanMethodFinder readerMethodFinder = baseConfig.getReaderMethodFinder();
+        final DetailedPropertyFilter detailedPropertyFilter = baseConfig.getDetailedPropertyFilter();
+        final int detailedPropertyFilterRevision = revisionOf(detailedPropertyFilter);
+        final boolean classDeterministicDetailedPropertyFilter = isClassDeterministic(detailedPropertyFilter);
+        final MethodInvoker.Factory methodInvokerFactory = baseConfig.getMethodInvokerFactory();
+        final int prefixLength = setterMethodCollector.getMethodPrefix().length();
+        List<PropertyPlan> list = new ArrayList<PropertyPlan>();
+
+        for (Method setterMethod : setterMethodCollector.collect(toBean))
+        {
+            final String propertyString = setterMethod.getName().substring(prefixLength);
+            final Method readerMethod = readerMethodFinder.find(propertyString, fromBean);
+
+            if (readerMethod == null)
+                continue;
+            // Reader method of fromBean found
+            final String propertyName = Introspector.decapitalize(propertyString);
+
+            if (classDeterministicDetailedPropertyFilter) {
+                // Decision made once and for all
+                if (!detailedPropertyFilter.propagate(propertyName, fromBean, readerMethod, toBean, setterMethod))
+                    continue;
+                list.add(new PropertyPlan(list.size(), propertyName, 
+                        newMethodInvoker(methodInvokerFactory, readerMethod), 
+                        newMethodInvoker(methodInvokerFactory, setterMethod), false));
+            }
+            else
+                list.add(new PropertyPlan(list.size(), propertyName, 
+                        newMethodInvoker(methodInvokerFactory, readerMethod), 
+                        newMethodInvoker(methodInvokerFactory, setterMethod), 
+                        detailedPropertyFilter != null));
+        }
+        return new BeanPopulationPlan(fromBean.getClass(), toBean.getClass(),
+                list.toArray(EMPTY_PROPERTY_PLANS), detailedPropertyFilterRevision, immutablesRevision);
+    }
+
+    /** 
+     * Returns a new invoker of the given method via the given factory, 
+     * unless it is a synthetic field accessor method which can only be accessed via a {@link FieldAccessMethodInvoker}.
+     */
+    private static MethodInvoker newMethodInvoker(MethodInvoker.Factory methodInvokerFactory, Method method) {
+        return FieldAccessorMethods.isAccessorMethod(method)
+             ? FieldAccessMethodInvoker.factory.newMethodInvoker(method)
+             : methodInvokerFactory.newMethodInvoker(method);
+    }
+
+    /**
+     * Returns true if the decision of the given detailed property filter
+     * is known to depend only on the reader and setter methods; false otherwise.
+     */
+    private static boolean isClassDeterministic(DetailedPropertyFilter detailedPropertyFilter) {
+        return detailedPropertyFilter == DetailedPropertyFilter.ALWAYS_PROPAGATE
+            || detailedPropertyFilter instanceof ClassDeterministicFilter
+                && ((ClassDeterministicFilter)detailedPropertyFilter).isClassDeterministic()
+            ;
+    }
+    
+    /** 
+     * Returns the revision of the given filter if it is a {@link ClassDeterministicFilter}; 
+     * or zero otherwise.
+     */
+    private static int revisionOf(Object filter) {
+        return filter instanceof ClassDeterministicFilter 
+             ? ((ClassDeterministicFilter)filter).getRevision()
+             : 0;
+    }
+    
+    /**
+     * Returns true if this plan is still applicable to the given detailed property filter,
+     * ie neither the revision of the filter nor that of the registered immutable classes 
+     * (which determine the values transferred directly) has changed since this plan was computed; 
+     * false otherwise.
+     */
+    public boolean isApplicable(DetailedPropertyFilter detailedPropertyFilter) {
+        return revisionOf(detailedPropertyFilter) == detailedPropertyFilterRevision
+            && ClassUtils.getImmutablesRevision() == immutablesRevision;
+    }
+    
+    /**
+     * Returns the decisions of the given property filter for the properties of this plan
+     * as a skip mask indexed by property, computed once per filter and revision;
+     * or null if the property filter is not class deterministic, in which case the filter
+     * has to be applied for every bean populated.
+     */
+    boolean[] getPropertyFilterSkipMask(PropertyFilter propertyFilter) 
+    {
+        if (!(propertyFilter instanceof ClassDeterministicFilter)
+        ||  !((ClassDeterministicFilter)propertyFilter).isClassDeterministic())
+            return null;
+        final int revision = revisionOf(propertyFilter);
+        final PropertyFilterSkipMask skipMask = propertyFilterSkipMask;
+        
+        if (skipMask != null 
+        &&  skipMask.propertyFilter == propertyFilter 
+        &&  skipMask.revision == revision)
+            return skipMask.skip;
+        final boolean[] skip = new boolean[propertyPlans.length];
+        
+        try {
+            for (int i=0; i < skip.length; i++)
+                skip[i] = !propertyFilter.propagate(propertyPlans[i].getPropertyName(), propertyPlans[i].getReaderMethod());
+        } catch(RuntimeException ex) {
+            // Leave it to the population of each bean to report the failure
+            return null;
+        }
+        propertyFilterSkipMask = new PropertyFilterSkipMask(propertyFilter, revision, skip);
+        return skip;
+    }
+
+    /** Returns the source JavaBean class. */
+    public Class<?> getFromClass() {
+        return fromClass;
+    }
+
+    /** Returns the target JavaBean class. */
+    public Class<?> getToClass() {
+        return toClass;
+    }
+
+    /**
+     * Returns the plans of the individual properties to be propagated, in the order
+     * of the setter methods returned by the configured {@link BeanMethodCollector}.
+     * The returned array must not be modified.
+     */
+    PropertyPlan[] getPropertyPlans() {
+        return propertyPlans;
+    }
+
+    /** Returns the number of properties to be propagated. */
+    public int size() {
+        return propertyPlans.length;
+    }
+
+    /** Returns the name of the property planned at the given index. */
+    public String getPropertyName(int index) {
+        return propertyPlans[index].getPropertyName();
+    }
+
+    /** 
+     * Returns true if the property planned at the given index is a primitive 
+     * to be transferred to either the same primitive type or its wrapper type; false otherwise.
+     */
+    public boolean isPrimitiveTransfer(int index) {
+        return propertyPlans[index].isPrimitiveTransfer();
+    }
+
+    /** 
+     * Returns true if the property planned at the given index is either a primitive transfer,
+     * or an immutable value to be transferred to the same type; false otherwise.
+     */
+    public boolean isDirectTransfer(int index) {
+        return propertyPlans[index].isDirectTransfer();
+    }
+
+    /** Returns the generated bean copier of this plan, or null if it has not yet been generated. */
+    GeneratedBeanCopier getGeneratedBeanCopier() {
+        return generatedBeanCopier;
+    }
+
+    void setGeneratedBeanCopier(GeneratedBeanCopier generatedBeanCopier) {
+        this.generatedBeanCopier = generatedBeanCopier;
+    }
+
+    /** Increments and returns the number of populations carried out with this plan. */
+    int incrementPopulationCount() {
+        return populationCount.incrementAndGet();
+    }
+
+    /**
+     * The decisions of a class deterministic property filter of a specific revision.
+     *
+     * @author Joe D. Velopar
+     */
+    @Immutable
+    private static class PropertyFilterSkipMask
+    {
+        private final PropertyFilter propertyFilter;
+        private final int revision;
+        /** True at the index of each property to be skipped. */
+        private final boolean[] skip;
+        
+        PropertyFilterSkipMask(PropertyFilter propertyFilter, int revision, boolean[] skip) {
+            this.propertyFilter = propertyFilter;
+            this.revision = revision;
+            this.skip = skip;
+        }
+    }
+
+    /**
+     * The plan of propagating a single property.
+     *
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    static class PropertyPlan
+    {
+        private final int index;
+        private final String propertyName;
+        private final MethodInvoker readerInvoker;
+        private final MethodInvoker setterInvoker;
+        /** 
+         * Reader of the existing value from the target bean to be merged, or null if not applicable;
+         * resolved upon the first merge, as most populations never merge.
+         */
+        private MethodInvoker targetReaderInvoker;
+        /** True once the target reader invoker has been resolved. */
+        private volatile boolean targetReaderResolved;
+        private final Class<?> paramType;
+        /** 
+         * True if the reader returns a primitive, and the setter takes 
+         * either the same primitive type or its wrapper type.
+         */
+        private final boolean primitiveTransfer;
+        /**
+         * True if the value read can be passed as is to the setter by a bean transformer,
+         * ie either a primitive transfer or an immutable value of the same type.
+         */
+        private final boolean directTransfer;
+        /**
+         * False if the detailed property filter either doesn't exist, or
+         * has already been applied when the plan was built.
+         */
+        private final boolean detailedPropertyFilterPending;
+
+        private PropertyPlan(int index, String propertyName, MethodInvoker readerInvoker, MethodInvoker setterInvoker,
+                boolean detailedPropertyFilterPending)
+        {
+            this.index = index;
+            this.propertyName = propertyName;
+            this.readerInvoker = readerInvoker;
+            this.setterInvoker = setterInvoker;
+            this.paramType = setterInvoker.getMethod().getParameterTypes()[0];
+            final Class<?> returnType = readerInvoker.getMethod().getReturnType();
+            this.primitiveTransfer = returnType.isPrimitive() 
+                && (paramType == returnType || paramType == ClassUtils.wrapperOf(returnType));
+            this.directTransfer = primitiveTransfer 
+                || paramType == returnType && ClassUtils.immutable(returnType);
+            this.detailedPropertyFilterPending = detailedPropertyFilterPending;
+            // A primitive or immutable property is never merged
+            this.targetReaderResolved = paramType.isPrimitive() || ClassUtils.immutable(paramType);
+        }
+
+        /** Returns the index of this property plan in the bean population plan. */
+        int getIndex() {
+            return index;
+        }
+
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        Method getReaderMethod() {
+            return readerInvoker.getMethod();
+        }
+
+        Method getSetterMethod() {
+            return setterInvoker.getMethod();
+        }
+
+        MethodInvoker getReaderInvoker() {
+            return readerInvoker;
+        }
+
+        MethodInvoker getSetterInvoker() {
+            return setterInvoker;
+        }
+
+        /**
+         * Returns the reader of the existing value from the given target bean to be merged,
+         * resolved via the given configuration upon the first invocation;
+         * or null if either there is none, or the property is primitive or immutable 
+         * and therefore never merged.
+         */
+        MethodInvoker getTargetReaderInvoker(Object toBean, BeanPopulatorBaseConfig baseConfig) 
+        {
+            if (targetReaderResolved)
+                return targetReaderInvoker;
+            // Resolving concurrently is harmless, as the outcome is always the same
+            final Method setterMethod = getSetterMethod();
+            final String propertyString = setterMethod.getName().substring(
+                    baseConfig.getSetterMethodCollector().getMethodPrefix().length());
+            final Method targetReaderMethod = baseConfig.getReaderMethodFinder().find(propertyString, toBean);
+            final MethodInvoker invoker = targetReaderMethod == null 
+                                        ? null 
+                                        : newMethodInvoker(baseConfig.getMethodInvokerFactory(), targetReaderMethod);
+            targetReaderInvoker = invoker;
+            targetReaderResolved = true;
+            return invoker;
+        }
+
+        Class<?> getParamType() {
+            return paramType;
+        }
+
+        boolean isPrimitiveTransfer() {
+            return primitiveTransfer;
+        }
+
+        boolean isDirectTransfer() {
+            return directTransfer;
+        }
+
+        boolean isDetailedPropertyFilterPending() {
+            return detailedPropertyFilterPending;
+        }
+    }
+}
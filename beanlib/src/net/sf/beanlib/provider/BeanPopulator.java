@@ -15,16 +15,10 @@
  */
 package net.sf.beanlib.provider;
 
-import java.beans.Introspector;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 
 import net.jcip.annotations.NotThreadSafe;
 import net.jcip.annotations.ThreadSafe;
-import net.sf.beanlib.BeanlibException;
 import net.sf.beanlib.PropertyInfo;
 import net.sf.beanlib.spi.BeanMethodCollector;
 import net.sf.beanlib.spi.BeanMethodFinder;
@@ -33,9 +27,14 @@ import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
 import net.sf.beanlib.spi.BeanPopulatorSpi;
 import net.sf.beanlib.spi.BeanSourceHandler;
 import net.sf.beanlib.spi.BeanTransformerSpi;
+import net.sf.beanlib.spi.CustomBeanTransformerSpi;
 import net.sf.beanlib.spi.DetailedPropertyFilter;
+import net.sf.beanlib.spi.MethodInvoker;
 import net.sf.beanlib.spi.PropertyFilter;
+import net.sf.beanlib.provider.BeanPopulationPlan.PropertyPlan;
+import net.sf.beanlib.provider.replicator.ImmutableReplicator;
 import net.sf.beanlib.spi.Transformable;
+import net.sf.beanlib.spi.TrivialCustomBeanTransformerFactories;
 
 import org.apache.log4j.Logger;
 
@@ -121,14 +120,31 @@ public class BeanPopulator implements BeanPopulatorSpi
         }
     }
 
-    private final Logger log = Logger.getLogger(this.getClass());
+    private static final Logger log = Logger.getLogger(BeanPopulator.class);
 
     private final Object fromBean;
     private final Object toBean;
 
-    private BeanPopulatorBaseConfig baseConfig = new BeanPopulatorBaseConfig();
+    /** Lazily defaulted, as it is typically replaced right after construction. */
+    private BeanPopulatorBaseConfig baseConfig;
     
-    private Transformable transformer = new BeanTransformer(factory);
+    /** Lazily defaulted, as it is typically replaced right after construction. */
+    private Transformable transformer;
+    private boolean transformerInitialized;
+    
+    /** Arguments reused across the setter invocations of this populator. */
+    private final Object[] setterArgs = new Object[1];
+    
+    /** True if the transformer may observe the property info during the current population. */
+    private boolean propertyInfoObservable;
+    /** True if the transformer passes immutable values as is during the current population. */
+    private boolean passThrough;
+    /** True if direct transfers can bypass the transformer entirely during the current population. */
+    private boolean directTransferable;
+    /** True if the existing values of the to bean are merged during the current population. */
+    private boolean merging;
+    /** Precomputed decisions of a class deterministic property filter during the current population, if any. */
+    private boolean[] propertyFilterSkipMask;
     
     /**
      * @param fromBean from bean
@@ -139,134 +155,224 @@ public class BeanPopulator implements BeanPopulatorSpi
         this.toBean = toBean;
     }
 
+    /** 
+     * Returns the bean transformer currently configured, if any, 
+     * without forcing the creation of the default transformer. 
+     */
     private BeanTransformerSpi getBeanTransformerSpi() {
         return (BeanTransformerSpi)(transformer instanceof BeanTransformerSpi ? transformer : null); 
     }
 
     /**
-     * Processes a specific setter method for the toBean.
+     * Processes a specific property for the toBean according to the given property plan.
      * 
-     * @param setterMethod a specific method of the toBean
+     * @param propertyPlan plan of a specific property of the toBean
      */
-    private void processSetterMethod(Method setterMethod)
+    private void processProperty(BeanPopulatorBaseConfig baseConfig, Transformable transformer, 
+            PropertyPlan propertyPlan)
     {
-        String methodName = setterMethod.getName();
-        final String propertyString = methodName.substring(baseConfig.getSetterMethodCollector().getMethodPrefix().length());
-        
         if (baseConfig.isDebug()) {
             if (log.isInfoEnabled())
-                log.info(new StringBuilder("processSetterMethod: processing propertyString=")
-                        .append(propertyString).append("")
+                log.info(new StringBuilder("processSetterMethod: processing propertyName=")
+                        .append(propertyPlan.getPropertyName()).append("")
                         .append(", fromClass=").append(fromBean.getClass())
                         .append(", toClass=").append(toBean.getClass())
                         .toString());
         }
-        Method readerMethod = baseConfig.getReaderMethodFinder().find(propertyString, fromBean);
-        
-        if (readerMethod == null)
-            return;
-        // Reader method of fromBean found
-        Class<?> paramType = setterMethod.getParameterTypes()[0];
-        String propertyName = Introspector.decapitalize(propertyString);
         try {
-            doit(setterMethod, readerMethod, paramType, propertyName);
+            doit(baseConfig, transformer, propertyPlan);
         } catch (Exception ex) {
             baseConfig.getBeanPopulationExceptionHandler()
                 .initFromBean(fromBean).initToBean(toBean)
-                .initPropertyName(propertyName)
-                .initReaderMethod(readerMethod).initSetterMethod(setterMethod)
+                .initPropertyName(propertyPlan.getPropertyName())
+                .initReaderMethod(propertyPlan.getReaderMethod())
+                .initSetterMethod(propertyPlan.getSetterMethod())
                 .handleException(ex, log);
         } 
     }
 
-    private <T> void doit(
-            Method setterMethod, Method readerMethod, Class<T> paramType, final String propertyName)
+    private void doit(BeanPopulatorBaseConfig baseConfig, Transformable transformer, PropertyPlan propertyPlan)
     {
-        if (baseConfig.getDetailedPropertyFilter() != null) {
+        final String propertyName = propertyPlan.getPropertyName();
+        final Method readerMethod = propertyPlan.getReaderMethod();
+        final Method setterMethod = propertyPlan.getSetterMethod();
+        
+        if (propertyPlan.isDetailedPropertyFilterPending()) {
             if (!baseConfig.getDetailedPropertyFilter()
                            .propagate(propertyName, fromBean, readerMethod, toBean, setterMethod))
                 return;
         }
-        if (baseConfig.getPropertyFilter() != null) {
+        if (propertyFilterSkipMask != null) {
+            if (propertyFilterSkipMask[propertyPlan.getIndex()])
+                return;
+        }
+        else if (baseConfig.getPropertyFilter() != null) {
             if (!baseConfig.getPropertyFilter().propagate(propertyName, readerMethod))
                 return;
         }
-        Object propertyValue = this.invokeMethodAsPrivileged(fromBean, readerMethod, null);
+        if (directTransferable && propertyPlan.isDirectTransfer()) {
+            if (transferDirectly(propertyPlan, fromBean, toBean))
+                return;
+        }
+        Object propertyValue = readProperty(propertyPlan, fromBean);
         
         if (baseConfig.getBeanSourceHandler() != null)
             baseConfig.getBeanSourceHandler().handleBeanSource(fromBean, readerMethod, propertyValue);
         
         if (transformer != null) {
-            PropertyInfo propertyInfo = new PropertyInfo(propertyName, fromBean, toBean);
-            propertyValue = transformer.transform(propertyValue, paramType, propertyInfo);
+            PropertyInfo propertyInfo = propertyInfoObservable 
+                                      ? new PropertyInfo(propertyName, fromBean, toBean) 
+                                      : null;
+            
+            if (propertyPlan.isPrimitiveTransfer() && passThrough) 
+            {   // A primitive is replicated as is by a bean transformer,
+                // so the transformer pipeline is skipped unless the custom transformer claims the property
+                if (propertyInfoObservable) {
+                    final CustomBeanTransformerSpi customTransformer = 
+                        ((BeanTransformer)transformer).getCustomBeanTransformer();
+                    
+                    if (customTransformer.isTransformable(propertyValue, propertyPlan.getParamType(), propertyInfo))
+                        propertyValue = customTransformer.transform(propertyValue, propertyPlan.getParamType(), propertyInfo);
+                }
+            }
+            else {
+                final MethodInvoker targetReaderInvoker = merging 
+                        ? propertyPlan.getTargetReaderInvoker(toBean, baseConfig) 
+                        : null;
+                
+                if (targetReaderInvoker != null) {
+                    // Merge into the existing value of the target bean
+                    final Object existingValue = targetReaderInvoker.invoke(toBean, null);
+                    propertyValue = ((BeanTransformer)transformer).merge(
+                            propertyValue, existingValue, propertyPlan.getParamType(), propertyInfo);
+                }
+                else
+                    propertyValue = transformer.transform(propertyValue, propertyPlan.getParamType(), propertyInfo);
+            }
         }
         
         if (baseConfig.isDebug()) {
             if (log.isInfoEnabled())
                 log.info("processSetterMethod: setting propertyName=" + propertyName);
         }
-        // Invoke setter method  
-        Object[] args = {propertyValue};
-        this.invokeMethodAsPrivileged(toBean, setterMethod, args);
+        writeProperty(propertyPlan, toBean, propertyValue);
         return;
     }
     
-    /** 
-     * Invoke the given method as a privileged action, if necessary. 
+    /**
+     * Invoked once at the beginning of each population with the plan to be carried out.
+     * Does nothing by default.
      */
-    private Object invokeMethodAsPrivileged(final Object target, final Method method, final Object[] args)
+    void preparePopulation(BeanPopulationPlan plan) {
+    }
+    
+    /**
+     * Returns the value of the given property read from the given from bean.
+     */
+    Object readProperty(PropertyPlan propertyPlan, Object fromBean) {
+        return propertyPlan.getReaderInvoker().invoke(fromBean, null);
+    }
+    
+    /**
+     * Sets the given property of the given to bean to the given value.
+     */
+    void writeProperty(PropertyPlan propertyPlan, Object toBean, Object propertyValue) 
     {
-        if (Modifier.isPublic(method.getModifiers())) {
-            try {
-                return method.invoke(target, args);
-            } catch(IllegalAccessException ex) {
-                // drop thru to try again
-            } catch (InvocationTargetException e) {
-                throw new BeanlibException(e.getTargetException());
-            } catch(RuntimeException ex) {
-                // the try-catch is unnecessary i know, 
-                // but just so we can set a break point here
-                throw ex;
-            }
+        // Invoke setter method  
+        setterArgs[0] = propertyValue;
+        try {
+            propertyPlan.getSetterInvoker().invoke(toBean, setterArgs);
+        } finally {
+            setterArgs[0] = null;
         }
-        return AccessController.doPrivileged(
-            new PrivilegedAction<Object>() {
-                public Object run() {
-                    method.setAccessible(true);
-                    try {
-                        return method.invoke(target, args);
-                    } catch (IllegalArgumentException e) {
-                        throw new BeanlibException(e);
-                    } catch (IllegalAccessException e) {
-                        throw new BeanlibException(e);
-                    } catch (InvocationTargetException e) {
-                        throw new BeanlibException(e.getTargetException());
-                    }
-                }
-        });
     }
-
+    
+    /**
+     * Transfers the value of the given property from the given from bean to the given to bean
+     * without going through the transformer, which is known to pass such value as is.
+     * Returns true if transferred; or false if the property has to be propagated as usual.
+     * Always returns false by default.
+     * 
+     * @param propertyPlan plan of a property which is a {@link PropertyPlan#isDirectTransfer() direct transfer}
+     */
+    boolean transferDirectly(PropertyPlan propertyPlan, Object fromBean, Object toBean) {
+        return false;
+    }
+    
+    /**
+     * Returns the factory of this populator,
+     * which is used to create the default transformer.
+     */
+    BeanPopulatorSpi.Factory getBeanPopulatorSpiFactory() {
+        return factory;
+    }
+    
+    /**
+     * Returns false if the given transformer is known to ignore the property info,
+     * which therefore need not be created for every property; true otherwise.
+     * <p>
+     * A property info is immutable and may be retained by a custom transformer,
+     * so it cannot be shared across properties.  However, a {@link BeanTransformer} only passes
+     * it along to the custom transformer, which is a no-op by default.
+     */
+    private static boolean isPropertyInfoObservable(Transformable transformer) {
+        return !(transformer instanceof BeanTransformer)
+            || ((BeanTransformer)transformer).getCustomBeanTransformer() 
+                != TrivialCustomBeanTransformerFactories.getNoopCustomTransformer();
+    }
+    
+    /**
+     * Returns true if the given transformer is known to return any immutable value as is
+     * when the target type is either the same type or its wrapper type,
+     * unless claimed by the custom transformer; false otherwise.
+     */
+    private static boolean isPassThrough(Transformable transformer) {
+        return transformer instanceof BeanTransformer
+            && ((BeanTransformer)transformer).getImmutableReplicatable().getClass() == ImmutableReplicator.class;
+    }
+    
     // --------------------------- BeanPopulatorSpi --------------------------- 
     
     public Transformable getTransformer() {
+        if (!transformerInitialized) {
+            // Defaults to a bean transformer sharing the same base configuration
+            transformer = new BeanTransformer(getBeanPopulatorSpiFactory()).initBeanPopulatorBaseConfig(getBeanPopulatorBaseConfig());
+            transformerInitialized = true;
+        }
         return transformer;
     }
 
     public BeanPopulator initTransformer(Transformable transformer) {
         this.transformer = transformer;
+        this.transformerInitialized = true;
         
         if (this.getBeanTransformerSpi() != null)
-            this.getBeanTransformerSpi().initBeanPopulatorBaseConfig(baseConfig);
+            this.getBeanTransformerSpi().initBeanPopulatorBaseConfig(getBeanPopulatorBaseConfig());
         return this;
     }
 
     public <T> T populate() 
     {
-        if (getBeanTransformerSpi() != null)
-            getBeanTransformerSpi().getClonedMap().put(fromBean, toBean);
+        final BeanPopulatorBaseConfig baseConfig = getBeanPopulatorBaseConfig();
+        final Transformable transformer = getTransformer();
+        
+        if (transformer instanceof BeanTransformerSpi)
+            ((BeanTransformerSpi)transformer).getClonedMap().put(fromBean, toBean);
         // invoking all declaring setter methods of toBean from all matching getter methods of fromBean
-        for (Method m : baseConfig.getSetterMethodCollector().collect(toBean))
-            processSetterMethod(m);
+        final BeanPopulationPlan plan = baseConfig.getBeanPopulationPlan(fromBean, toBean);
+        propertyInfoObservable = isPropertyInfoObservable(transformer);
+        passThrough = isPassThrough(transformer);
+        merging = transformer instanceof BeanTransformer && ((BeanTransformer)transformer).isMergeMode();
+        propertyFilterSkipMask = baseConfig.getPropertyFilter() == null 
+                               ? null 
+                               : plan.getPropertyFilterSkipMask(baseConfig.getPropertyFilter());
+        directTransferable = (transformer == null || passThrough && !propertyInfoObservable)
+                          && baseConfig.getBeanSourceHandler() == null
+                          && !baseConfig.isDebug();
+        preparePopulation(plan);
+        
+        for (PropertyPlan propertyPlan : plan.getPropertyPlans())
+            processProperty(baseConfig, transformer, propertyPlan);
         @SuppressWarnings("unchecked") T ret = (T)toBean;
         return ret;
     }
@@ -274,7 +380,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     // -------------------------- BeanPopulatorBaseSpi -------------------------- 
 
     public BeanPopulator initPropertyFilter(PropertyFilter propertyFilter) {
-        baseConfig.setPropertyFilter(propertyFilter);
+        getBeanPopulatorBaseConfig().setPropertyFilter(propertyFilter);
 
         if (this.getBeanTransformerSpi() != null)
             this.getBeanTransformerSpi().initPropertyFilter(propertyFilter);
@@ -282,7 +388,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     }
     
     public BeanPopulator initBeanSourceHandler(BeanSourceHandler beanSourceHandler) {
-        baseConfig.setBeanSourceHandler(beanSourceHandler);
+        getBeanPopulatorBaseConfig().setBeanSourceHandler(beanSourceHandler);
         
         if (this.getBeanTransformerSpi() != null)
             this.getBeanTransformerSpi().initBeanSourceHandler(beanSourceHandler);
@@ -290,7 +396,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     }
     
     public BeanPopulator initDebug(boolean debug) {
-        baseConfig.setDebug(debug);
+        getBeanPopulatorBaseConfig().setDebug(debug);
 
         if (this.getBeanTransformerSpi() != null)
             this.getBeanTransformerSpi().initDebug(debug);
@@ -299,7 +405,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     
     public BeanPopulator initDetailedPropertyFilter(DetailedPropertyFilter detailedPropertyFilter) 
     {
-        baseConfig.setDetailedPropertyFilter(detailedPropertyFilter);
+        getBeanPopulatorBaseConfig().setDetailedPropertyFilter(detailedPropertyFilter);
 
         if (this.getBeanTransformerSpi() != null)
             this.getBeanTransformerSpi().initDetailedPropertyFilter(detailedPropertyFilter);
@@ -308,7 +414,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     
     public BeanPopulator initReaderMethodFinder(BeanMethodFinder readerMethodFinder) {
         if (readerMethodFinder != null) {
-            baseConfig.setReaderMethodFinder(readerMethodFinder);
+            getBeanPopulatorBaseConfig().setReaderMethodFinder(readerMethodFinder);
 
             if (this.getBeanTransformerSpi() != null)
                 this.getBeanTransformerSpi().initReaderMethodFinder(readerMethodFinder);
@@ -318,7 +424,7 @@ public class BeanPopulator implements BeanPopulatorSpi
 
     public BeanPopulator initSetterMethodCollector(BeanMethodCollector setterMethodCollector) {
         if (setterMethodCollector != null) {
-            baseConfig.setSetterMethodCollector(setterMethodCollector);
+            getBeanPopulatorBaseConfig().setSetterMethodCollector(setterMethodCollector);
 
             if (this.getBeanTransformerSpi() != null)
                 this.getBeanTransformerSpi().initSetterMethodCollector(setterMethodCollector);
@@ -327,7 +433,7 @@ public class BeanPopulator implements BeanPopulatorSpi
     }
     
     public BeanPopulator initBeanPopulationExceptionHandler(BeanPopulationExceptionHandler beanPopulationExceptionHandler) {
-        baseConfig.setBeanPopulationExceptionHandler(beanPopulationExceptionHandler);
+        getBeanPopulatorBaseConfig().setBeanPopulationExceptionHandler(beanPopulationExceptionHandler);
         
         if (this.getBeanTransformerSpi() != null)
             this.getBeanTransformerSpi().initBeanPopulationExceptionHandler(beanPopulationExceptionHandler);
@@ -343,11 +449,11 @@ public class BeanPopulator implements BeanPopulatorSpi
     }
 
     public PropertyFilter getPropertyFilter() { 
-        return baseConfig.getPropertyFilter(); 
+        return getBeanPopulatorBaseConfig().getPropertyFilter(); 
     }
 
     public BeanPopulationExceptionHandler getBeanPopulationExceptionHandler() {
-        return baseConfig.getBeanPopulationExceptionHandler();
+        return getBeanPopulatorBaseConfig().getBeanPopulationExceptionHandler();
     }
 
     /**
@@ -356,26 +462,28 @@ public class BeanPopulator implements BeanPopulatorSpi
      * needs to be invoked to keep the configuration in sync.
      */
     public BeanPopulatorBaseConfig getBeanPopulatorBaseConfig() {
+        if (baseConfig == null)
+            baseConfig = new BeanPopulatorBaseConfig();
         return baseConfig;
     }
 
     public BeanSourceHandler getBeanSourceHandler() {
-        return baseConfig.getBeanSourceHandler();
+        return getBeanPopulatorBaseConfig().getBeanSourceHandler();
     }
 
     public boolean isDebug() {
-        return baseConfig.isDebug();
+        return getBeanPopulatorBaseConfig().isDebug();
     }
 
     public DetailedPropertyFilter getDetailedPropertyFilter() {
-        return baseConfig.getDetailedPropertyFilter();
+        return getBeanPopulatorBaseConfig().getDetailedPropertyFilter();
     }
 
     public BeanMethodFinder getReaderMethodFinder() {
-        return baseConfig.getReaderMethodFinder();
+        return getBeanPopulatorBaseConfig().getReaderMethodFinder();
     }
 
     public BeanMethodCollector getSetterMethodCollector() {
-        return baseConfig.getSetterMethodCollector();
+        return getBeanPopulatorBaseConfig().getSetterMethodCollector();
     }
 }
\ No newline at end of file
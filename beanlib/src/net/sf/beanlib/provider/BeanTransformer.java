@@ -15,8 +15,9 @@
  */
 package net.sf.beanlib.provider;
 
-import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import net.jcip.annotations.NotThreadSafe;
 import net.sf.beanlib.BeanlibException;
@@ -29,6 +30,7 @@ import net.sf.beanlib.provider.replicator.DateReplicator;
 import net.sf.beanlib.provider.replicator.ImmutableReplicator;
 import net.sf.beanlib.provider.replicator.MapReplicator;
 import net.sf.beanlib.provider.replicator.ReplicatorTemplate;
+import net.sf.beanlib.provider.replicator.TreeModeClonedMap;
 import net.sf.beanlib.provider.replicator.UnsupportedBlobReplicator;
 import net.sf.beanlib.spi.BeanMethodCollector;
 import net.sf.beanlib.spi.BeanMethodFinder;
@@ -51,6 +53,8 @@ import net.sf.beanlib.spi.replicator.CollectionReplicatorSpi;
 import net.sf.beanlib.spi.replicator.DateReplicatorSpi;
 import net.sf.beanlib.spi.replicator.ImmutableReplicatorSpi;
 import net.sf.beanlib.spi.replicator.MapReplicatorSpi;
+import net.sf.beanlib.util.ConcurrentIdentityMap;
+import net.sf.beanlib.util.ReusableIdentityMap;
 
 /**
  * Default implementation of {@link BeanTransformerSpi}.
@@ -167,8 +171,41 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
         return beanPopulatorFactory;
     }
     
+    /** Expected number of objects to be replicated per invocation. */
+    private int clonedMapExpectedSize = 16;
+    
+    /** True if the object graphs to be replicated are known to be trees; false otherwise. */
+    private boolean treeMode;
+    
+    /** Maximum replication depth tracked in tree mode when debugging is enabled. */ 
+    private int treeModeMaxDepth = TreeModeClonedMap.DEFAULT_MAX_DEPTH;
+    
+    /** True if the existing nested targets are to be updated in place; false otherwise. */
+    private boolean mergeMode;
+    
+    /** Default minimum number of members of a collection or array to be replicated in parallel. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+    
+    /** Used to replicate large collections and arrays in parallel; or null if parallel replication is disabled. */
+    private Executor parallelExecutor;
+    
+    /** Minimum number of members of a collection or array to be replicated in parallel. */
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    
+    /** 
+     * Cloned maps of the threads currently replicating in parallel on behalf of this transformer, 
+     * if parallel replication is enabled; or null otherwise.
+     */
+    private ThreadLocal<Map<Object,Object>> parallelWorkerClonedMaps;
+    
+    /** 
+     * Number of nested transformations in progress on the replicating thread, 
+     * tracked only if this transformer is not frozen, and not by the parallel workers.
+     */
+    private int transformationDepth;
+    
     /** Used to contains those objects that have been replicated. */
-    private Map<Object,Object> clonedMap = new IdentityHashMap<Object,Object>();
+    private Map<Object,Object> clonedMap = newClonedMap();
 
     /**
      * Used to contain all the configuration options as a single configuration object. 
@@ -218,59 +255,370 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
      */
     private BeanReplicatorSpi beanReplicatable = new BeanReplicator(this);
     
+    /** 
+     * Per-invocation cloned maps, if this transformer has been frozen via {@link #freeze()}; 
+     * or null otherwise. 
+     */
+    private ThreadLocal<Map<Object,Object>> invocationClonedMaps;
+    /** Cloned maps that can be reused by the next invocation on the same thread, if frozen. */ 
+    private ThreadLocal<Map<Object,Object>> spareClonedMaps;
+    
+    /** 
+     * Clears the cloned map, reusing the underlying storage. 
+     */
     public final void reset() {
-        clonedMap = new IdentityHashMap<Object,Object>();
+        if (invocationClonedMaps == null)
+            clonedMap.clear();
+        else {
+            Map<Object,Object> map = invocationClonedMaps.get();
+            
+            if (map != null)
+                map.clear();
+        }
+        resetReplicationState();
+    }
+    
+    /**
+     * Invoked upon entering the outermost transformation of a replication on the replicating thread,
+     * to set up any state a subclass keeps for the duration of the replication.  
+     * Not invoked for a frozen transformer, which may be shared by multiple threads.
+     * Does nothing by default.
+     */
+    protected void beginReplication() {}
+    
+    /**
+     * Invoked upon {@link #reset()}, and upon returning from the outermost transformation 
+     * of a replication, to clear any state a subclass keeps 
+     * for the duration of a replication.  Does nothing by default.
+     */
+    protected void resetReplicationState() {}
+    
+    /** 
+     * Enters a transformation, beginning the replication if it is the outermost one.
+     * 
+     * @return true if the transformation is tracked, and must therefore be exited 
+     * via {@link #exitTransformation()}; false otherwise
+     */
+    private boolean enterTransformation() {
+        if (invocationClonedMaps != null || isParallelWorker())
+            return false;
+        if (transformationDepth == 0)
+            beginReplication();
+        transformationDepth++;
+        return true;
+    }
+    
+    /** Exits a tracked transformation, resetting the replication state if it is the outermost one. */
+    private void exitTransformation() {
+        if (--transformationDepth == 0)
+            resetReplicationState();
+    }
+    
+    /**
+     * Initializes with the expected number of objects to be replicated per invocation,
+     * so the cloned map is sized upfront and need not be repeatedly expanded during replication.
+     */
+    public BeanTransformer initClonedMapExpectedSize(int expectedSize) {
+        checkNotFrozen();
+        this.clonedMapExpectedSize = expectedSize;
+        this.clonedMap = newClonedMap();
+        return this;
+    }
+    
+    /**
+     * Initializes whether the object graphs to be replicated are known to be trees,
+     * ie without any shared or circular reference.  Defaults to false.
+     * <p>
+     * In tree mode, the identity of the replicated objects is not recorded, which saves
+     * both the probes of and the memory retained by the cloned map.  However, an object 
+     * referenced multiple times would be replicated multiple times, and a cycle would lead 
+     * to an infinite recursion.  To detect such accidental cycles, enable debugging
+     * so that the replication depth is checked against {@link #initTreeModeMaxDepth(int)}.
+     * 
+     * @see TreeModeClonedMap
+     */
+    public BeanTransformer initTreeMode(boolean treeMode) {
+        checkNotFrozen();
+        this.treeMode = treeMode;
+        this.clonedMap = newClonedMap();
+        return this;
+    }
+    
+    /** Returns true if the object graphs to be replicated are known to be trees; false otherwise. */
+    public boolean isTreeMode() {
+        return treeMode;
+    }
+    
+    /** 
+     * Initializes the maximum replication depth checked in tree mode when debugging is enabled.
+     * Defaults to {@value TreeModeClonedMap#DEFAULT_MAX_DEPTH}.
+     */
+    public BeanTransformer initTreeModeMaxDepth(int maxDepth) {
+        checkNotFrozen();
+        
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Argument maxDepth must be positive: " + maxDepth);
+        this.treeModeMaxDepth = maxDepth;
+        this.clonedMap = newClonedMap();
+        return this;
+    }
+    
+    /**
+     * Initializes whether the nested objects already referenced by a target bean being populated 
+     * are to be updated in place, rather than replaced by newly created ones.  Defaults to false.
+     * <p>
+     * In merge mode, when a property of a target bean is populated, the existing value is first 
+     * read from the target bean:  an existing JavaBean of the same class as would be instantiated is re-populated; 
+     * an existing list is reconciled by position; any other existing collection, such as a set, 
+     * is reconciled by matching its members with the source members via {@link Object#equals(Object)};
+     * and an existing map is updated by key.  New objects are created only for the additions.
+     * This is useful for re-synchronizing a long-lived object graph via 
+     * {@link net.sf.beanlib.provider.replicator.BeanReplicator#populate(Object, Object)}
+     * without re-creating the whole graph.
+     * <p>
+     * Notes merging is performed by this transformer directly, 
+     * bypassing the configured collection and map replicators.
+     */
+    public BeanTransformer initMergeMode(boolean mergeMode) {
+        checkNotFrozen();
+        this.mergeMode = mergeMode;
+        return this;
+    }
+    
+    /** Returns true if the existing nested targets are to be updated in place; false otherwise. */
+    public boolean isMergeMode() {
+        return mergeMode;
+    }
+    
+    /**
+     * Initializes the parallel replication of large collections and object arrays.
+     * Defaults to disabled.
+     * <p>
+     * When enabled, the members of a collection or an object array with at least the given threshold 
+     * number of members are split into chunks, which are replicated by the given executor
+     * and reassembled in the original order.  The calling thread also replicates 
+     * any chunk not yet started by the executor, so a saturated or even a shut down executor
+     * cannot cause a deadlock.  Collections and arrays nested within a chunk are replicated sequentially.
+     * Unless in tree mode, the replicated objects are tracked in a {@link ConcurrentIdentityMap} 
+     * so that shared references are still mapped to a single target.
+     * <p>
+     * Notes parallel replication is only suitable for fully initialized object graphs,
+     * and the custom transformer, if any, must be thread-safe.
+     * 
+     * @param executor used to replicate the chunks; or null to disable parallel replication
+     * @param threshold minimum number of members of a collection or array to be replicated in parallel
+     */
+    public BeanTransformer initParallelReplication(Executor executor, int threshold) {
+        checkNotFrozen();
+        
+        if (threshold < 1)
+            throw new IllegalArgumentException("Argument threshold must be positive: " + threshold);
+        this.parallelExecutor = executor;
+        this.parallelThreshold = threshold;
+        this.parallelWorkerClonedMaps = executor == null ? null : new ThreadLocal<Map<Object,Object>>();
+        this.clonedMap = newClonedMap();
+        return this;
+    }
+    
+    /** Returns the executor used for parallel replication; or null if parallel replication is disabled. */
+    public Executor getParallelExecutor() {
+        return parallelExecutor;
+    }
+    
+    /** Returns the minimum number of members of a collection or array to be replicated in parallel. */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+    
+    /** 
+     * Returns true if the current thread is replicating a chunk of a collection or an array 
+     * in parallel on behalf of this transformer; false otherwise.
+     */
+    public final boolean isParallelWorker() {
+        return parallelWorkerClonedMaps != null && parallelWorkerClonedMaps.get() != null;
+    }
+    
+    /**
+     * Calls the given task on the current thread as a parallel worker of this transformer,
+     * using the given cloned map.
+     * 
+     * @see #initParallelReplication(Executor, int)
+     */
+    public final <V> V callAsParallelWorker(Map<Object,Object> workerClonedMap, Callable<V> task) 
+        throws Exception
+    {
+        if (parallelWorkerClonedMaps == null)
+            throw new IllegalStateException("Parallel replication is not enabled");
+        final Map<Object,Object> enclosing = parallelWorkerClonedMaps.get();
+        parallelWorkerClonedMaps.set(workerClonedMap);
+        try {
+            return task.call();
+        } finally {
+            if (enclosing == null)
+                parallelWorkerClonedMaps.remove();
+            else
+                parallelWorkerClonedMaps.set(enclosing);
+        }
+    }
+    
+    /** Returns a new cloned map for the current mode. */
+    private Map<Object,Object> newClonedMap() {
+        if (treeMode)
+            return new TreeModeClonedMap(treeModeMaxDepth);
+        return parallelExecutor == null 
+             ? new ReusableIdentityMap<Object,Object>(clonedMapExpectedSize)
+             : new ConcurrentIdentityMap<Object,Object>(clonedMapExpectedSize);
+    }
+    
+    /**
+     * Freezes the configuration of this transformer, so it can be shared by multiple threads.
+     * Subsequently, the configuration can no longer be changed, 
+     * the base configuration is detached from the one previously used
+     * (though the bean population plans computed so far are retained), 
+     * and this transformer can only be invoked within the context of an invocation
+     * as demarcated by {@link #beginInvocation()} and {@link #endInvocation(Map)}.
+     * 
+     * @see CompiledReplicator
+     */
+    final synchronized void freeze() {
+        if (invocationClonedMaps != null)
+            return;
+        baseConfig = baseConfig.cloneWithPlans();
+        clonedMap = null;
+        invocationClonedMaps = new ThreadLocal<Map<Object,Object>>();
+        spareClonedMaps = new ThreadLocal<Map<Object,Object>>();
+    }
+    
+    /** Returns true if this transformer has been frozen; false otherwise. */
+    public final boolean isFrozen() {
+        return invocationClonedMaps != null;
+    }
+    
+    /**
+     * Begins an invocation of a frozen transformer on the current thread 
+     * with a new cloned map.
+     * 
+     * @return the cloned map of the enclosing invocation, if any, which must be passed to 
+     * {@link #endInvocation(Map)} when the invocation ends
+     */
+    final Map<Object,Object> beginInvocation() {
+        final Map<Object,Object> enclosing = invocationClonedMaps.get();
+        Map<Object,Object> map = spareClonedMaps.get();
+        
+        if (map == null)
+            map = newClonedMap();
+        else
+            spareClonedMaps.set(null);
+        invocationClonedMaps.set(map);
+        return enclosing;
+    }
+    
+    /**
+     * Ends an invocation of a frozen transformer on the current thread,
+     * restoring the cloned map of the enclosing invocation, if any. 
+     */
+    final void endInvocation(Map<Object,Object> enclosing) {
+        final Map<Object,Object> map = invocationClonedMaps.get();
+        map.clear();
+        spareClonedMaps.set(map);
+        
+        if (enclosing == null)
+            invocationClonedMaps.remove();
+        else
+            invocationClonedMaps.set(enclosing);
+    }
+    
+    private void checkNotFrozen() {
+        if (invocationClonedMaps != null)
+            throw new IllegalStateException("The configuration of a frozen bean transformer cannot be changed");
     }
     
     @Override
     public final <T> T transform(Object from, Class<T> toClass, PropertyInfo propertyInfo) 
     {
+        final boolean tracked = enterTransformation();
         try {
             if (customTransformer.isTransformable(from, toClass, propertyInfo))
                 return customTransformer.transform(from, toClass, propertyInfo);
             return replicate(from, toClass);
         } catch (SecurityException e) {
             throw new BeanlibException(e);
+        } finally {
+            if (tracked)
+                exitTransformation();
+        }
+    }
+    
+    /**
+     * Transforms the given object to an instance of the given class, 
+     * updating the given existing target in place whenever possible.
+     * 
+     * @param from the object to be transformed, which may be null
+     * @param existingTo the existing target, which may be null
+     * @param toClass target class
+     * @param propertyInfo the property info, which may be null
+     * @see #initMergeMode(boolean)
+     */
+    public final <T> T merge(Object from, Object existingTo, Class<T> toClass, PropertyInfo propertyInfo) 
+    {
+        final boolean tracked = enterTransformation();
+        try {
+            if (customTransformer.isTransformable(from, toClass, propertyInfo))
+                return customTransformer.transform(from, toClass, propertyInfo);
+            return merge(from, existingTo, toClass);
+        } catch (SecurityException e) {
+            throw new BeanlibException(e);
+        } finally {
+            if (tracked)
+                exitTransformation();
         }
     }
     
     public final BeanTransformer initCustomTransformerFactory(CustomBeanTransformerSpi.Factory customTransformer) {
+        checkNotFrozen();
         this.customTransformer = customTransformer.newCustomBeanTransformer(this);
         return this;
     }
     
     public final BeanTransformer initPropertyFilter(PropertyFilter propertyFilter) {
+        checkNotFrozen();
         baseConfig.setPropertyFilter(propertyFilter);
         return this;
     }
 
     public final BeanTransformer initBeanSourceHandler(BeanSourceHandler beanSourceHandler) {
+        checkNotFrozen();
         baseConfig.setBeanSourceHandler(beanSourceHandler);
         return this;
     }
 
     public final BeanTransformer initDebug(boolean debug) {
+        checkNotFrozen();
         baseConfig.setDebug(debug);
         return this;
     }
 
     public final BeanTransformer initDetailedPropertyFilter(DetailedPropertyFilter detailedPropertyFilter) 
     {
+        checkNotFrozen();
         baseConfig.setDetailedPropertyFilter(detailedPropertyFilter);
         return this;
     }
 
     public final BeanTransformer initReaderMethodFinder(BeanMethodFinder readerMethodFinder) {
+        checkNotFrozen();
         baseConfig.setReaderMethodFinder(readerMethodFinder);
         return this;
     }
 
     public final BeanTransformer initSetterMethodCollector(BeanMethodCollector setterMethodCollector) {
+        checkNotFrozen();
         baseConfig.setSetterMethodCollector(setterMethodCollector);
         return this;
     }
     
     public BeanTransformer initCollectionReplicatableFactory(CollectionReplicatorSpi.Factory factory) {
+        checkNotFrozen();
         this.collectionReplicatable = factory.newCollectionReplicatable(this);
         return this;
     }
@@ -280,6 +628,7 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
     
     public BeanTransformer initMapReplicatableFactory(MapReplicatorSpi.Factory factory) {
+        checkNotFrozen();
         this.mapReplicatable = factory.newMapReplicatable(this);
         return this;
     }
@@ -290,11 +639,25 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     
     @SuppressWarnings("unchecked")
     public <K,V> Map<K,V> getClonedMap() {
-        return (Map<K,V>)clonedMap;
+        if (parallelWorkerClonedMaps != null) {
+            final Map<Object,Object> map = parallelWorkerClonedMaps.get();
+            
+            if (map != null)
+                return (Map<K,V>)map;
+        }
+        if (invocationClonedMaps == null)
+            return (Map<K,V>)clonedMap;
+        Map<Object,Object> map = invocationClonedMaps.get();
+        
+        if (map == null)
+            throw new IllegalStateException("A frozen bean transformer can only be invoked via " 
+                                           + CompiledReplicator.class.getSimpleName());
+        return (Map<K,V>)map;
     }
     
     public BeanTransformer initImmutableReplicatableFactory(ImmutableReplicatorSpi.Factory immutableReplicatableFactory) 
     {
+        checkNotFrozen();
         this.immutableReplicatable = immutableReplicatableFactory.newImmutableReplicatable(this);
         return this;
     }
@@ -304,6 +667,7 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
 
     public BeanTransformer initArrayReplicatableFactory(ArrayReplicatorSpi.Factory arrayReplicatableFactory) {
+        checkNotFrozen();
         this.arrayReplicatable = arrayReplicatableFactory.newArrayReplicatable(this);
         return this;
     }
@@ -313,6 +677,7 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
 
     public BeanTransformer initBlobReplicatableFactory(BlobReplicatorSpi.Factory blobReplicatableFactory) {
+        checkNotFrozen();
         this.blobReplicatable = blobReplicatableFactory.newBlobReplicatable(this);
         return this;
     }
@@ -322,6 +687,7 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
 
     public BeanTransformer initBeanReplicatableFactory(BeanReplicatorSpi.Factory objectReplicatableFactory) {
+        checkNotFrozen();
         this.beanReplicatable = objectReplicatableFactory.newBeanReplicatable(this);
         return this;
     }
@@ -331,11 +697,13 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
 
     public BeanTransformerSpi initDateReplicatableFactory(DateReplicatorSpi.Factory dateReplicatableFactory) {
+        checkNotFrozen();
         this.dateReplicatable = dateReplicatableFactory.newDateReplicatable(this);
         return this;
     }
 
     public BeanTransformerSpi initCalendarReplicatableFactory(CalendarReplicatorSpi.Factory calendarReplicatableFactory) {
+        checkNotFrozen();
         this.calendarReplicatable = calendarReplicatableFactory.newCalendarReplicatable(this);
         return this;
     }
@@ -349,12 +717,16 @@ public class BeanTransformer extends ReplicatorTemplate implements BeanTransform
     }
 
     public BeanTransformer initBeanPopulationExceptionHandler(BeanPopulationExceptionHandler beanPopulationExceptionHandler) {
+        checkNotFrozen();
         baseConfig.setBeanPopulationExceptionHandler(beanPopulationExceptionHandler);
         return this;
     }
 
     public BeanTransformerSpi initBeanPopulatorBaseConfig(BeanPopulatorBaseConfig baseConfig) 
     {
+        if (this.baseConfig == baseConfig)
+            return this;    // Nothing changed, which is also the case for every bean populator of a frozen transformer
+        checkNotFrozen();
         this.baseConfig = baseConfig;
         return this;
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.spi.BeanTransformerSpi;
+
+/**
+ * An immutable and thread-safe replicator compiled from a fully configured {@link BeanTransformer}.
+ * <p>
+ * Unlike a bean transformer, a compiled replicator can be shared by all threads of an application,
+ * so the replicators, the custom transformer and the cached population plans are set up only once.  
+ * Each invocation of {@link #copy(Object, Class)} gets its own lightweight context 
+ * to keep track of the objects that have been replicated.
+ * For example,
+ * <blockquote><pre>
+ * // Once per application
+ * CompiledReplicator replicator = CompiledReplicator.newCompiledReplicator(
+ *      new BeanTransformer(customTransformerFactory).initPropertyFilter(propertyFilter));
+ * ...
+ * // Any thread
+ * Dto dto = replicator.copy(entity, Dto.class);
+ * </pre></blockquote>
+ * Notes the given bean transformer is frozen in the process, and any subsequent attempt to change 
+ * its configuration will result in an {@link IllegalStateException}.
+ * Any custom transformer, filter or handler configured must itself be thread-safe.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public final class CompiledReplicator 
+{
+    private final BeanTransformer beanTransformer;
+    
+    /**
+     * Returns a compiled replicator from the given fully configured bean transformer,
+     * freezing the bean transformer in the process.
+     */
+    public static CompiledReplicator newCompiledReplicator(BeanTransformer beanTransformer) {
+        return new CompiledReplicator(beanTransformer);
+    }
+    
+    private CompiledReplicator(BeanTransformer beanTransformer) 
+    {
+        if (beanTransformer == null)
+            throw new IllegalArgumentException("Argument beanTransformer must not be null");
+        beanTransformer.freeze();
+        this.beanTransformer = beanTransformer;
+    }
+    
+    /** 
+     * Returns a copy of the given object, or null if the given object is null.
+     * 
+     * @param <T> type of the given object
+     * @param from given object
+     */
+    public <T> T copy(T from) {
+        if (from == null)
+            return null;
+        @SuppressWarnings("unchecked") Class<T> fromClass = (Class<T>)from.getClass();
+        return copy(from, fromClass);
+    }
+    
+    /** 
+     * Returns an instance of the given class with values copied from the given object,
+     * or null if the given object is null.
+     * 
+     * @param <T> target type
+     * @param from given object
+     * @param toClass target class of the returned object
+     */
+    public <T> T copy(Object from, Class<T> toClass) 
+    {
+        if (from == null)
+            return null;
+        Map<Object,Object> enclosing = beanTransformer.beginInvocation();
+        try {
+            return beanTransformer.transform(from, toClass, null);
+        } finally {
+            beanTransformer.endInvocation(enclosing);
+        }
+    }
+    
+    /** Returns the frozen bean transformer used by this replicator. */
+    public BeanTransformerSpi getBeanTransformer() {
+        return beanTransformer;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Superclass of the bean copiers generated at runtime by {@link GeneratedBeanPopulator}
+ * for a specific {@link BeanPopulationPlan}.
+ * <p>
+ * A generated bean copier invokes the reader and setter methods of the properties directly,
+ * without any reflection.  The properties are identified by their index in the bean population plan.
+ * Only the properties with public reader and setter methods of public types can be generated;
+ * see {@link #isGenerated(int)}.
+ *
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public abstract class GeneratedBeanCopier 
+{
+    /** A bean copier with none of the properties generated. */
+    static final GeneratedBeanCopier NONE = new GeneratedBeanCopier(new boolean[0]) {
+        @Override
+        public void copy(int index, Object from, Object to) {
+            throw new IllegalArgumentException("Property " + index + " not generated");
+        }
+        @Override
+        public Object read(int index, Object from) {
+            throw new IllegalArgumentException("Property " + index + " not generated");
+        }
+        @Override
+        public void write(int index, Object to, Object value) {
+            throw new IllegalArgumentException("Property " + index + " not generated");
+        }
+    };
+    
+    private volatile boolean[] generated;
+    
+    protected GeneratedBeanCopier() {}
+    
+    private GeneratedBeanCopier(boolean[] generated) {
+        this.generated = generated;
+    }
+    
+    /** Invoked once by the generator right after instantiation. */
+    void initGenerated(boolean[] generated) {
+        this.generated = generated;
+    }
+    
+    /** Returns true if the property at the given index of the plan has been generated; false otherwise. */
+    public boolean isGenerated(int index) {
+        final boolean[] generated = this.generated;
+        return index < generated.length && generated[index];
+    }
+    
+    /**
+     * Copies the property at the given index as is from the given from bean to the given to bean,
+     * boxing the value if the setter takes the wrapper type of the primitive value read.
+     * Applicable only to a generated property which is a {@link BeanPopulationPlan#isDirectTransfer(int) direct transfer}.
+     */
+    public abstract void copy(int index, Object from, Object to);
+    
+    /** 
+     * Returns the value of the property at the given index read from the given from bean, 
+     * boxed if primitive.
+     * Applicable only to a generated property.
+     */
+    public abstract Object read(int index, Object from);
+    
+    /** 
+     * Sets the property at the given index of the given to bean to the given value, 
+     * unboxed if the setter takes a primitive.
+     * Applicable only to a generated property.
+     */
+    public abstract void write(int index, Object to, Object value);
+}
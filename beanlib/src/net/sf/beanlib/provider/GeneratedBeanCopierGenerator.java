@@ -0,0 +1,357 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.sf.beanlib.provider.BeanPopulationPlan.PropertyPlan;
+import net.sf.beanlib.provider.invoker.FastMethodInvoker;
+import net.sf.beanlib.provider.invoker.ReflectionMethodInvoker;
+import net.sf.beanlib.spi.MethodInvoker;
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.ProcessSwitchCallback;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Generates a {@link GeneratedBeanCopier} for a specific {@link BeanPopulationPlan} via cglib.
+ * <p>
+ * Each generated method switches on the property index to a direct invocation of 
+ * the reader and/or setter methods of the property.
+ * The generated classes are cached by cglib per class loader, 
+ * and shared by all the plans with the same generated properties.
+ *
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+class GeneratedBeanCopierGenerator extends AbstractClassGenerator 
+{
+    private static final Logger log = Logger.getLogger(GeneratedBeanCopierGenerator.class);
+    private static final Source SOURCE = new Source(GeneratedBeanCopier.class.getName());
+    
+    private static final Type GENERATED_BEAN_COPIER = Type.getType(GeneratedBeanCopier.class);
+    private static final Type ILLEGAL_ARGUMENT_EXCEPTION = Type.getType(IllegalArgumentException.class);
+    private static final Signature COPY = TypeUtils.parseSignature("void copy(int, Object, Object)");
+    private static final Signature READ = TypeUtils.parseSignature("Object read(int, Object)");
+    private static final Signature WRITE = TypeUtils.parseSignature("void write(int, Object, Object)");
+    
+    /**
+     * Returns the bean copier generated for the given plan, generating it if necessary.
+     * Never returns null:  if no bean copier can be generated, 
+     * a bean copier with none of the properties generated is returned.
+     */
+    static GeneratedBeanCopier getGeneratedBeanCopier(BeanPopulationPlan plan) 
+    {
+        GeneratedBeanCopier copier = plan.getGeneratedBeanCopier();
+        
+        if (copier == null) {
+            copier = generate(plan);
+            plan.setGeneratedBeanCopier(copier);
+        }
+        return copier;
+    }
+    
+    private static GeneratedBeanCopier generate(BeanPopulationPlan plan) 
+    {
+        final ClassLoader classLoader = getClassLoader(plan);
+        
+        if (classLoader == null)
+            return GeneratedBeanCopier.NONE;
+        final PropertyPlan[] propertyPlans = plan.getPropertyPlans();
+        final boolean[] generated = new boolean[propertyPlans.length];
+        final List<PropertyPlan> generatedPlans = new ArrayList<PropertyPlan>();
+        
+        for (PropertyPlan propertyPlan : propertyPlans) {
+            if (isGeneratable(propertyPlan)) {
+                generated[propertyPlan.getIndex()] = true;
+                generatedPlans.add(propertyPlan);
+            }
+        }
+        if (generatedPlans.isEmpty())
+            return GeneratedBeanCopier.NONE;
+        try {
+            GeneratedBeanCopierGenerator generator = new GeneratedBeanCopierGenerator(plan, generatedPlans);
+            generator.setClassLoader(classLoader);
+            GeneratedBeanCopier copier = generator.create();
+            copier.initGenerated(generated);
+            return copier;
+        } catch(RuntimeException ex) {
+            log.warn("Failed to generate bean copier from " + plan.getFromClass() + " to " + plan.getToClass(), ex);
+        } catch(LinkageError ex) {
+            log.warn("Failed to generate bean copier from " + plan.getFromClass() + " to " + plan.getToClass(), ex);
+        }
+        return GeneratedBeanCopier.NONE;
+    }
+    
+    /**
+     * Returns a class loader which can see both the from and to classes 
+     * as well as the bean copier class; or null if there is none.
+     */
+    private static ClassLoader getClassLoader(BeanPopulationPlan plan) 
+    {
+        final ClassLoader[] candidates = {
+                plan.getToClass().getClassLoader(),
+                plan.getFromClass().getClassLoader(),
+                GeneratedBeanCopier.class.getClassLoader(),
+        };
+        for (ClassLoader candidate : candidates) {
+            if (isVisible(plan.getToClass(), candidate)
+            &&  isVisible(plan.getFromClass(), candidate)
+            &&  isVisible(GeneratedBeanCopier.class, candidate))
+                return candidate;
+        }
+        return null;
+    }
+    
+    private static boolean isVisible(Class<?> c, ClassLoader classLoader) 
+    {
+        if (classLoader == null)
+            return false;
+        try {
+            return Class.forName(c.getName(), false, classLoader) == c;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns true if the reader and setter methods of the given property
+     * can be directly invoked from a generated class; false otherwise.
+     */
+    private static boolean isGeneratable(PropertyPlan propertyPlan) {
+        return invokesMethod(propertyPlan.getReaderInvoker()) 
+            && invokesMethod(propertyPlan.getSetterInvoker())
+            && isGeneratable(propertyPlan.getReaderMethod())
+            && isGeneratable(propertyPlan.getSetterMethod());
+    }
+    
+    /**
+     * Returns true if the given method invoker is known to simply invoke its method,
+     * which can therefore be invoked directly instead; false otherwise.
+     */
+    private static boolean invokesMethod(MethodInvoker methodInvoker) {
+        return methodInvoker instanceof FastMethodInvoker
+            || methodInvoker instanceof ReflectionMethodInvoker;
+    }
+    
+    private static boolean isGeneratable(Method method) 
+    {
+        final int modifiers = method.getModifiers();
+        
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers))
+            return false;
+        if (!isPublic(method.getDeclaringClass()) || !isPublic(method.getReturnType()))
+            return false;
+        for (Class<?> c : method.getParameterTypes())
+            if (!isPublic(c))
+                return false;
+        return true;
+    }
+    
+    private static boolean isPublic(Class<?> c) 
+    {
+        while (c.isArray())
+            c = c.getComponentType();
+        return c.isPrimitive() || Modifier.isPublic(c.getModifiers());
+    }
+    
+    private final BeanPopulationPlan plan;
+    private final List<PropertyPlan> generatedPlans;
+    
+    private GeneratedBeanCopierGenerator(BeanPopulationPlan plan, List<PropertyPlan> generatedPlans) {
+        super(SOURCE);
+        this.plan = plan;
+        this.generatedPlans = generatedPlans;
+    }
+    
+    private GeneratedBeanCopier create() 
+    {
+        setNamePrefix(plan.getToClass().getName());
+        // The generated class depends only on the classes and the generated properties
+        final StringBuilder key = new StringBuilder(plan.getFromClass().getName())
+                                            .append("->").append(plan.getToClass().getName());
+        for (PropertyPlan propertyPlan : generatedPlans) {
+            key.append(':').append(propertyPlan.getIndex())
+               .append(',').append(propertyPlan.getReaderMethod())
+               .append(',').append(propertyPlan.getSetterMethod())
+               .append(',').append(propertyPlan.isDirectTransfer());
+        }
+        return (GeneratedBeanCopier)super.create(key.toString());
+    }
+    
+    @Override
+    protected ClassLoader getDefaultClassLoader() {
+        return plan.getToClass().getClassLoader();
+    }
+
+    @Override
+    protected Object firstInstance(Class type) {
+        return ReflectUtils.newInstance(type);
+    }
+
+    @Override
+    protected Object nextInstance(Object instance) {
+        return ReflectUtils.newInstance(instance.getClass());
+    }
+
+    public void generateClass(ClassVisitor v) 
+    {
+        ClassEmitter ce = new ClassEmitter(v);
+        ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(), 
+                GENERATED_BEAN_COPIER, null, Constants.SOURCE_FILE);
+        EmitUtils.null_constructor(ce);
+        generateCopy(ce);
+        generateRead(ce);
+        generateWrite(ce);
+        ce.end_class();
+    }
+    
+    /** Generates the method {@link GeneratedBeanCopier#copy(int, Object, Object)}. */
+    private void generateCopy(ClassEmitter ce) 
+    {
+        final List<PropertyPlan> directPlans = new ArrayList<PropertyPlan>();
+        
+        for (PropertyPlan propertyPlan : generatedPlans)
+            if (propertyPlan.isDirectTransfer())
+                directPlans.add(propertyPlan);
+        final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, COPY, null, null);
+        generateSwitch(e, directPlans, new PropertyCallback() {
+            public void processProperty(PropertyPlan propertyPlan) {
+                final Method readerMethod = propertyPlan.getReaderMethod();
+                final Method setterMethod = propertyPlan.getSetterMethod();
+                e.load_arg(2);
+                e.checkcast(Type.getType(setterMethod.getDeclaringClass()));
+                e.load_arg(1);
+                e.checkcast(Type.getType(readerMethod.getDeclaringClass()));
+                e.invoke(ReflectUtils.getMethodInfo(readerMethod));
+                
+                if (readerMethod.getReturnType() != propertyPlan.getParamType())
+                    e.box(Type.getType(readerMethod.getReturnType()));
+                e.invoke(ReflectUtils.getMethodInfo(setterMethod));
+                pop(e, setterMethod.getReturnType());
+                e.return_value();
+            }
+        });
+        e.end_method();
+    }
+    
+    /** Generates the method {@link GeneratedBeanCopier#read(int, Object)}. */
+    private void generateRead(ClassEmitter ce) 
+    {
+        final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, READ, null, null);
+        generateSwitch(e, generatedPlans, new PropertyCallback() {
+            public void processProperty(PropertyPlan propertyPlan) {
+                final Method readerMethod = propertyPlan.getReaderMethod();
+                e.load_arg(1);
+                e.checkcast(Type.getType(readerMethod.getDeclaringClass()));
+                e.invoke(ReflectUtils.getMethodInfo(readerMethod));
+                e.box(Type.getType(readerMethod.getReturnType()));
+                e.return_value();
+            }
+        });
+        e.end_method();
+    }
+    
+    /** Generates the method {@link GeneratedBeanCopier#write(int, Object, Object)}. */
+    private void generateWrite(ClassEmitter ce) 
+    {
+        final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, WRITE, null, null);
+        generateSwitch(e, generatedPlans, new PropertyCallback() {
+            public void processProperty(PropertyPlan propertyPlan) {
+                final Method setterMethod = propertyPlan.getSetterMethod();
+                final Type paramType = Type.getType(propertyPlan.getParamType());
+                e.load_arg(1);
+                e.checkcast(Type.getType(setterMethod.getDeclaringClass()));
+                e.load_arg(2);
+                
+                if (TypeUtils.isPrimitive(paramType))
+                {   // Only the exact wrapper type is passed to a generated primitive setter;
+                    // any other value goes through the setter invoker (see GeneratedBeanPopulator#writeProperty)
+                    e.checkcast(TypeUtils.getBoxedType(paramType));
+                    e.unbox(paramType);
+                }
+                else
+                    e.checkcast(paramType);
+                e.invoke(ReflectUtils.getMethodInfo(setterMethod));
+                pop(e, setterMethod.getReturnType());
+                e.return_value();
+            }
+        });
+        e.end_method();
+    }
+    
+    /** Pops the value returned by a setter method, if any. */
+    private static void pop(CodeEmitter e, Class<?> returnType) 
+    {
+        if (returnType == void.class)
+            return;
+        if (returnType == long.class || returnType == double.class)
+            e.pop2();
+        else
+            e.pop();
+    }
+    
+    /**
+     * Generates a switch on the property index (the first argument) 
+     * to the code generated for each of the given property plans, 
+     * with an {@link IllegalArgumentException} thrown by default.
+     */
+    private static void generateSwitch(final CodeEmitter e, final List<PropertyPlan> propertyPlans, 
+            final PropertyCallback callback) 
+    {
+        if (propertyPlans.isEmpty()) {
+            e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "Property not generated");
+            return;
+        }
+        final int[] keys = new int[propertyPlans.size()];
+        
+        for (int i=0; i < keys.length; i++)
+            keys[i] = propertyPlans.get(i).getIndex();
+        e.load_arg(0);
+        e.process_switch(keys, new ProcessSwitchCallback() {
+            public void processCase(int key, Label end) {
+                for (PropertyPlan propertyPlan : propertyPlans) {
+                    if (propertyPlan.getIndex() == key) {
+                        callback.processProperty(propertyPlan);
+                        return;
+                    }
+                }
+            }
+            public void processDefault() {
+                e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "Property not generated");
+            }
+        });
+    }
+    
+    /** Call-back to generate the code of a specific property. */
+    private static interface PropertyCallback {
+        void processProperty(PropertyPlan propertyPlan);
+    }
+}
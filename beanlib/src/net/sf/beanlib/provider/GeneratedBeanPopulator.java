@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.provider.BeanPopulationPlan.PropertyPlan;
+import net.sf.beanlib.spi.BeanPopulatorSpi;
+import net.sf.beanlib.utils.ClassUtils;
+
+/**
+ * A {@link BeanPopulatorSpi} which propagates the properties via a {@link GeneratedBeanCopier}
+ * generated at runtime for each {@link BeanPopulationPlan}, 
+ * ie for each combination of source class, target class and bean populator base configuration.
+ * <p>
+ * The generated bean copier invokes the reader and setter methods directly.
+ * Primitive and immutable values which are known to be returned as is by the transformer are copied inline;
+ * all other values, such as nested beans and collections, as well as any property claimed 
+ * by a custom transformer, still go through the transformer.
+ * Properties that cannot be accessed from a generated class (such as protected setter methods),
+ * or with method invokers that do more than invoking the methods (such as field access),
+ * are propagated via the method invokers of the plan as usual.
+ * <p>
+ * A generated bean populator can be selected for a bean transformer the same way as a {@link BeanPopulator}.
+ * For example,
+ * <blockquote><pre>
+ * Bean to = new BeanReplicator(new BeanTransformer(GeneratedBeanPopulator.factory)).replicateBean(from);
+ * </pre></blockquote>
+ * 
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+public class GeneratedBeanPopulator extends BeanPopulator 
+{
+    public static final Factory factory = new Factory();
+    
+    /**
+     * Generated Bean Populator Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Factory implements BeanPopulatorSpi.Factory {
+        private Factory() {}
+        
+        public GeneratedBeanPopulator newBeanPopulator(Object from, Object to) {
+            return new GeneratedBeanPopulator(from, to);
+        }
+    }
+
+    private GeneratedBeanCopier copier = GeneratedBeanCopier.NONE;
+    
+    /**
+     * @param fromBean from bean
+     * @param toBean to bean
+     */
+    public GeneratedBeanPopulator(Object fromBean, Object toBean) {
+        super(fromBean, toBean);
+    }
+    
+    @Override
+    void preparePopulation(BeanPopulationPlan plan) {
+        copier = getGeneratedBeanCopier(plan);
+    }
+    
+    /**
+     * Returns the bean copier to be used for the given plan, generating it if necessary.
+     */
+    GeneratedBeanCopier getGeneratedBeanCopier(BeanPopulationPlan plan) {
+        return GeneratedBeanCopierGenerator.getGeneratedBeanCopier(plan);
+    }
+    
+    @Override
+    Object readProperty(PropertyPlan propertyPlan, Object fromBean) 
+    {
+        if (!copier.isGenerated(propertyPlan.getIndex()))
+            return super.readProperty(propertyPlan, fromBean);
+        try {
+            return copier.read(propertyPlan.getIndex(), fromBean);
+        } catch(Exception ex) {
+            throw new BeanlibException(ex);
+        }
+    }
+    
+    @Override
+    void writeProperty(PropertyPlan propertyPlan, Object toBean, Object propertyValue) 
+    {
+        if (!copier.isGenerated(propertyPlan.getIndex()) || !isExactArgument(propertyPlan, propertyValue)) {
+            super.writeProperty(propertyPlan, toBean, propertyValue);
+            return;
+        }
+        try {
+            copier.write(propertyPlan.getIndex(), toBean, propertyValue);
+        } catch(Exception ex) {
+            throw new BeanlibException(ex);
+        }
+    }
+    
+    /**
+     * Returns true if the given value can be passed to the generated setter of the given property;
+     * false if the setter takes a primitive, and the value is either null or not of the exact wrapper type,
+     * such as a Byte to be widened to an int, in which case the setter invoker is used 
+     * for the same conversion as by reflection.
+     */
+    private static boolean isExactArgument(PropertyPlan propertyPlan, Object propertyValue) 
+    {
+        final Class<?> paramType = propertyPlan.getParamType();
+        return !paramType.isPrimitive() 
+            || propertyValue != null && propertyValue.getClass() == ClassUtils.wrapperOf(paramType);
+    }
+    
+    @Override
+    boolean transferDirectly(PropertyPlan propertyPlan, Object fromBean, Object toBean) 
+    {
+        if (!copier.isGenerated(propertyPlan.getIndex()))
+            return false;
+        try {
+            copier.copy(propertyPlan.getIndex(), fromBean, toBean);
+            return true;
+        } catch(Exception ex) {
+            throw new BeanlibException(ex);
+        }
+    }
+    
+    @Override
+    BeanPopulatorSpi.Factory getBeanPopulatorSpiFactory() {
+        return factory;
+    }
+}
@@ -17,15 +17,31 @@ package net.sf.beanlib.provider;
 
 import java.lang.reflect.Method;
 
+import net.sf.beanlib.spi.ClassDeterministicFilter;
 import net.sf.beanlib.spi.DetailedPropertyFilter;
 
 /**
  * Default implementation of {@link DetailedPropertyFilter}.
+ * <p>
+ * The decisions depend only on the reader and setter methods, 
+ * unless {@link #propagate(String, Object, Method, Object, Method)} is overridden by a subclass.
  * 
  * @author Joe D. Velopar
  */
-public class JavaBeanDetailedPropertyFilter implements DetailedPropertyFilter 
+public class JavaBeanDetailedPropertyFilter implements DetailedPropertyFilter, ClassDeterministicFilter 
 {
+    /** 
+     * Returns true only for this class, as a subclass may make use of the bean instances. 
+     * A class deterministic subclass can override this method accordingly.
+     */
+    public boolean isClassDeterministic() {
+        return getClass() == JavaBeanDetailedPropertyFilter.class;
+    }
+    
+    public int getRevision() {
+        return 0;
+    }
+    
 	public boolean propagate(
             String propertyName, 
             Object fromBean, 
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.spi.BeanPopulatorSpi;
+
+/**
+ * A {@link BeanPopulatorSpi} which starts off propagating the properties of each {@link BeanPopulationPlan}
+ * reflectively, and promotes the plan to a {@link GeneratedBeanCopier} once the plan has been used 
+ * for a configurable number of populations.
+ * <p>
+ * This avoids generating classes for the many pairs of classes that are rarely populated, 
+ * while the frequently populated ones get the same fast path as a {@link GeneratedBeanPopulator}.
+ * The bean copiers are generated asynchronously by an executor, so a population never waits for a promotion.
+ * Factories created without an executor share a background thread, 
+ * which can be stopped via {@link #shutdownDefaultExecutor()}, such as when a web application is undeployed.
+ * For example,
+ * <blockquote><pre>
+ * TieredBeanPopulator.Factory factory = TieredBeanPopulator.newFactory(500, executor);
+ * BeanReplicator replicator = new BeanReplicator(new BeanTransformer(factory));
+ * ...
+ * TieredBeanPopulator.Statistics statistics = factory.getStatistics();
+ * </pre></blockquote>
+ * 
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+public class TieredBeanPopulator extends GeneratedBeanPopulator 
+{
+    /** Default number of populations with a plan before the plan is promoted. */
+    public static final int DEFAULT_PROMOTION_THRESHOLD = 1000;
+    
+    /** 
+     * Factory promoting plans after {@link #DEFAULT_PROMOTION_THRESHOLD} populations
+     * via a shared background thread.
+     */
+    public static final Factory factory = new Factory(DEFAULT_PROMOTION_THRESHOLD, null);
+    
+    /**
+     * Returns a new factory of tiered bean populators,
+     * each with its own statistics.
+     * 
+     * @param promotionThreshold number of populations with a plan before the plan is promoted
+     * @param executor executor used to generate the bean copiers, 
+     * or null if a shared background thread is to be used
+     */
+    public static Factory newFactory(int promotionThreshold, Executor executor) {
+        return new Factory(promotionThreshold, executor);
+    }
+    
+    /**
+     * Tiered Bean Populator Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Factory implements BeanPopulatorSpi.Factory 
+    {
+        private final int promotionThreshold;
+        private final Executor executor;
+        private final Statistics statistics = new Statistics();
+        
+        private Factory(int promotionThreshold, Executor executor) 
+        {
+            if (promotionThreshold < 1)
+                throw new IllegalArgumentException("Argument promotionThreshold must be positive");
+            this.promotionThreshold = promotionThreshold;
+            this.executor = executor;
+        }
+        
+        public TieredBeanPopulator newBeanPopulator(Object from, Object to) {
+            return new TieredBeanPopulator(from, to, this);
+        }
+        
+        /** Returns the number of populations with a plan before the plan is promoted. */
+        public int getPromotionThreshold() {
+            return promotionThreshold;
+        }
+        
+        /** Returns the statistics of the promotions triggered by the populators of this factory. */
+        public Statistics getStatistics() {
+            return statistics;
+        }
+        
+        /** Promotes the given plan asynchronously. */
+        private void promote(final BeanPopulationPlan plan) 
+        {
+            statistics.promotionCount.incrementAndGet();
+            statistics.pendingCount.incrementAndGet();
+            Runnable promotion = new Runnable() {
+                public void run() {
+                    final long start = System.nanoTime();
+                    try {
+                        if (GeneratedBeanCopierGenerator.getGeneratedBeanCopier(plan) != GeneratedBeanCopier.NONE)
+                            statistics.generatedCount.incrementAndGet();
+                    } finally {
+                        statistics.compileTimeNanos.addAndGet(System.nanoTime() - start);
+                        statistics.pendingCount.decrementAndGet();
+                    }
+                }
+            };
+            try {
+                (executor == null ? getDefaultExecutor() : executor).execute(promotion);
+            } catch(RejectedExecutionException ex) {
+                // No more room for asynchronous promotion
+                promotion.run();
+            }
+        }
+    }
+    
+    /**
+     * Statistics of the promotions of the plans to generated bean copiers.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Statistics 
+    {
+        private final AtomicLong promotionCount = new AtomicLong();
+        private final AtomicLong pendingCount = new AtomicLong();
+        private final AtomicLong generatedCount = new AtomicLong();
+        private final AtomicLong compileTimeNanos = new AtomicLong();
+        
+        private Statistics() {}
+        
+        /** Returns the number of plans promoted so far, including the pending ones. */
+        public long getPromotionCount() {
+            return promotionCount.get();
+        }
+        
+        /** Returns the number of promotions that are yet to be completed. */
+        public long getPendingCount() {
+            return pendingCount.get();
+        }
+        
+        /** 
+         * Returns the number of completed promotions which resulted in a bean copier 
+         * with at least one generated property.
+         */
+        public long getGeneratedCount() {
+            return generatedCount.get();
+        }
+        
+        /** Returns the total time spent in generating bean copiers, in nanoseconds. */
+        public long getCompileTimeNanos() {
+            return compileTimeNanos.get();
+        }
+        
+        @Override
+        public String toString() {
+            return "promotionCount=" + getPromotionCount()
+                + ", pendingCount=" + getPendingCount()
+                + ", generatedCount=" + getGeneratedCount()
+                + ", compileTimeNanos=" + getCompileTimeNanos();
+        }
+    }
+    
+    /** Lazily created background thread shared by the factories without an executor; or null if none. */
+    private static ExecutorService defaultExecutor;
+    
+    private static synchronized Executor getDefaultExecutor() 
+    {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "beanlib-tiered-populator");
+                    thread.setDaemon(true);
+                    // Rather than inheriting the context class loader of whichever thread 
+                    // triggered the first promotion, such as that of a web application
+                    thread.setContextClassLoader(TieredBeanPopulator.class.getClassLoader());
+                    return thread;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+    
+    /**
+     * Shuts down the background thread shared by the factories without an executor, if it has been started.
+     * The promotions already submitted are still completed.
+     * A subsequent promotion by such a factory starts a new background thread.
+     */
+    public static synchronized void shutdownDefaultExecutor() 
+    {
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+        }
+    }
+    
+    private final Factory populatorFactory;
+    
+    /**
+     * Constructs a tiered bean populator of the default {@link #factory}.
+     * 
+     * @param fromBean from bean
+     * @param toBean to bean
+     */
+    public TieredBeanPopulator(Object fromBean, Object toBean) {
+        this(fromBean, toBean, factory);
+    }
+    
+    private TieredBeanPopulator(Object fromBean, Object toBean, Factory populatorFactory) {
+        super(fromBean, toBean);
+        this.populatorFactory = populatorFactory;
+    }
+    
+    /**
+     * Returns the bean copier of the given plan if it has already been promoted;
+     * otherwise counts the population, and triggers the promotion upon reaching the threshold.
+     */
+    @Override
+    GeneratedBeanCopier getGeneratedBeanCopier(BeanPopulationPlan plan) 
+    {
+        final GeneratedBeanCopier copier = plan.getGeneratedBeanCopier();
+        
+        if (copier != null)
+            return copier;
+        if (plan.incrementPopulationCount() == populatorFactory.getPromotionThreshold())
+            populatorFactory.promote(plan);
+        return GeneratedBeanCopier.NONE;
+    }
+    
+    @Override
+    BeanPopulatorSpi.Factory getBeanPopulatorSpiFactory() {
+        return populatorFactory;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.collector;
+
+import java.lang.reflect.Method;
+
+import net.sf.beanlib.provider.invoker.FieldAccessorMethods;
+import net.sf.beanlib.spi.BeanMethodCollector;
+
+/**
+ * Supports collecting the instance fields of a JavaBean through the whole class hierarchy,
+ * regardless of whether the fields have any accessor methods, 
+ * as the synthetic setter methods of {@link FieldAccessorMethods}.
+ * <p>
+ * Used in conjunction with {@link net.sf.beanlib.provider.finder.FieldReaderMethodFinder},
+ * the fields are copied directly, bypassing any getter and setter methods.
+ *   
+ * @author Joe D. Velopar
+ */
+public class FieldSetterMethodCollector implements BeanMethodCollector {
+    public Method[] collect(Object bean) {
+        return FieldAccessorMethods.getSetterMethods(bean.getClass());
+    }
+
+    public String getMethodPrefix() {
+        return "set";
+    }
+}
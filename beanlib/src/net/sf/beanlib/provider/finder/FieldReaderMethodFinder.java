@@ -0,0 +1,39 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.finder;
+
+import java.lang.reflect.Method;
+
+import net.sf.beanlib.provider.invoker.FieldAccessorMethods;
+import net.sf.beanlib.spi.BeanMethodFinder;
+
+/**
+ * Supports finding the instance field of a JavaBean by name through the whole class hierarchy, 
+ * regardless of whether the field has any accessor methods, 
+ * as the synthetic reader method of {@link FieldAccessorMethods}.
+ *   
+ * @see net.sf.beanlib.provider.collector.FieldSetterMethodCollector
+ * 
+ * @author Joe D. Velopar
+ */
+public class FieldReaderMethodFinder implements BeanMethodFinder {
+    public Method find(String propertyName, Object bean) {
+        String s = Character.isLowerCase(propertyName.charAt(0))
+                 ? Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1)
+                 : propertyName;
+        return FieldAccessorMethods.getReaderMethod(bean.getClass(), s);
+    }
+}
@@ -17,15 +17,29 @@ package net.sf.beanlib.provider.finder;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
 
+import net.jcip.annotations.ThreadSafe;
 import net.sf.beanlib.spi.BeanMethodFinder;
+import net.sf.beanlib.util.WeakClassCache;
 
 /**
  * Supports finding JavaBean reader method which is either public or protected.
+ * <p>
+ * The qualified reader methods of each bean class are indexed by property name once,
+ * so subsequent lookups of the same class don't need to scan the class hierarchy.
+ * The index is shared by all instances of the same finder class, 
+ * and doesn't prevent the bean classes from being garbage collected.
  *   
  * @author Joe D. Velopar
  */
+@ThreadSafe
 public class ProtectedReaderMethodFinder implements BeanMethodFinder {
+    /** Indexes of reader methods keyed by the finder class and then the bean class. */
+    private static final WeakClassCache<WeakClassCache<Map<String,Method>>> indexes = 
+        new WeakClassCache<WeakClassCache<Map<String,Method>>>();
+    
     public Method find(final String propertyName, Object bean) {
         String s = propertyName;
         
@@ -35,36 +49,61 @@ public class ProtectedReaderMethodFinder implements BeanMethodFinder {
             if (propertyName.length() > 1)
                 s += propertyName.substring(1);
         }
-        Class<?> beanClass = bean.getClass();
-        final int maxLengthOfGetterMethodName = s.length() + 3;
+        return getIndex(bean.getClass()).get(s);
+    }
+    
+    /** 
+     * Returns the index of the qualified reader methods of the given bean class,
+     * keyed by the capitalized property name.
+     */
+    private Map<String,Method> getIndex(Class<?> beanClass) 
+    {
+        WeakClassCache<Map<String,Method>> finderIndexes = indexes.get(this.getClass());
+        
+        if (finderIndexes == null)
+            finderIndexes = indexes.putIfAbsent(this.getClass(), new WeakClassCache<Map<String,Method>>());
+        Map<String,Method> index = finderIndexes.get(beanClass);
+        
+        if (index == null)
+            index = finderIndexes.putIfAbsent(beanClass, newIndex(beanClass));
+        return index;
+    }
+    
+    private Map<String,Method> newIndex(Class<?> beanClass) 
+    {
+        Map<String,Method> index = new HashMap<String,Method>();
         
         while (beanClass != Object.class) {
-            // Find the declared member method of the class or interface,
+            // Index the declared member methods of the class or interface,
             // recursively on super classes and interfaces as necessary.
+            // The first method found for a property takes precedence.
             for (Method m: beanClass.getDeclaredMethods()) {
                 final int mod = m.getModifiers();
                 
                 if (qualified(m, mod)) {
                     final String methodName = m.getName();
+                    String key = null;
+                    
+                    if (methodName.length() > 3 && methodName.startsWith("get"))
+                        key = methodName.substring(3);
+                    else if (methodName.length() > 2 && methodName.startsWith("is"))
+                        key = methodName.substring(2);
                     
-                    if (methodName.length() == maxLengthOfGetterMethodName) {
-                        if (methodName.endsWith(s) 
-                        &&  methodName.startsWith("get"))
-                            return m;
-                    }
-                    else if (methodName.length() == maxLengthOfGetterMethodName-1) {
-                        if (methodName.endsWith(s) 
-                        &&  methodName.startsWith("is"))
-                            return m;
-                    }
+                    if (key != null && !index.containsKey(key))
+                        index.put(key, m);
                 }
             }
             // climb to the super class and repeat
             beanClass = beanClass.getSuperclass();
         }
-        return null;
+        return index;
     }
     
+    /**
+     * Returns true if the given method qualifies as a reader method; false otherwise.
+     * Notes the result must only depend on the given method, 
+     * as the qualified methods are indexed per finder class.
+     */
     protected boolean qualified(Method m, int mod) {
         return (Modifier.isPublic(mod) || Modifier.isProtected(mod)) 
             && !Modifier.isStatic(mod)
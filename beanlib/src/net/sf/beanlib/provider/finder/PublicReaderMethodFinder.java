@@ -16,15 +16,42 @@
 package net.sf.beanlib.provider.finder;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.jcip.annotations.ThreadSafe;
 import net.sf.beanlib.spi.BeanMethodFinder;
+import net.sf.beanlib.util.WeakClassCache;
 
 /**
  * Supports finding JavaBean public reader method.
+ * <p>
+ * The outcome of looking up a property of a bean class, including the absence of a reader method,
+ * is cached per class, so only the first lookup involves reflection.
+ * The cache is shared by all instances, 
+ * and doesn't prevent the bean classes from being garbage collected.
  *   
  * @author Joe D. Velopar
  */
+@ThreadSafe
 public class PublicReaderMethodFinder implements BeanMethodFinder {
+    /** Used to cache the absence of a reader method. */
+    private static final Object NO_READER_METHOD = new Object();
+    /** Reader methods (or the absence thereof) keyed by the bean class and then the capitalized property name. */
+    private static final WeakClassCache<ConcurrentMap<String,Object>> cache = 
+        new WeakClassCache<ConcurrentMap<String,Object>>();
+    /** Number of lookups served from the cache. */
+    private static final AtomicLong avoidedLookupCount = new AtomicLong();
+    
+    /** 
+     * Returns the total number of reader method lookups that have been served from the cache,
+     * and therefore avoided the reflective lookup.
+     */
+    public static long getAvoidedLookupCount() {
+        return avoidedLookupCount.get();
+    }
+    
     public Method find(final String propertyName, Object bean) {
         String s= propertyName;
         
@@ -35,6 +62,22 @@ public class PublicReaderMethodFinder implements BeanMethodFinder {
                 s += propertyName.substring(1);
         }
         Class<?> beanClass = bean.getClass();
+        ConcurrentMap<String,Object> readers = cache.get(beanClass);
+        
+        if (readers == null)
+            readers = cache.putIfAbsent(beanClass, new ConcurrentHashMap<String,Object>());
+        Object reader = readers.get(s);
+        
+        if (reader == null) {
+            Method m = lookup(beanClass, s);
+            readers.put(s, m == null ? NO_READER_METHOD : m);
+            return m;
+        }
+        avoidedLookupCount.incrementAndGet();
+        return reader == NO_READER_METHOD ? null : (Method)reader;
+    }
+    
+    private Method lookup(Class<?> beanClass, String s) {
         try {
             // Find the public member method of the class or interface,
             // recursively on super classes and interfaces as necessary.
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.spi.MethodInvoker;
+import net.sf.beanlib.utils.ClassUtils;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A method invoker that invokes the method directly via a cglib generated {@link FastClass}, 
+ * thereby avoiding the overhead of reflection.
+ * <p>
+ * The factory falls back to a {@link ReflectionMethodInvoker} 
+ * whenever a fast class cannot be used, such as for a non-public method,
+ * a method declared in a non-public class or in a system class, 
+ * or if the byte code generation failed.
+ * <p>
+ * At invocation time, arguments which would require a widening or a null conversion 
+ * (such as passing a <code>Byte</code> to an <code>int</code> parameter) 
+ * are passed via reflection, so the semantics are the same as {@link Method#invoke(Object, Object[])}.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public class FastMethodInvoker implements MethodInvoker 
+{
+    public static final Factory factory = new Factory();
+    
+    /**
+     * Fast Method Invoker Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Factory implements MethodInvoker.Factory 
+    {
+        private final Logger log = Logger.getLogger(this.getClass());
+        
+        private Factory() {}
+        
+        public MethodInvoker newMethodInvoker(Method method) 
+        {
+            final Class<?> declaringClass = method.getDeclaringClass();
+            
+            if (Modifier.isPublic(method.getModifiers())
+            &&  Modifier.isPublic(declaringClass.getModifiers())
+            &&  declaringClass.getClassLoader() != null
+            &&  !ClassUtils.isJavaPackage(declaringClass))
+            {
+                try {
+                    FastMethod fastMethod = FastClass.create(declaringClass).getMethod(method);
+                    return new FastMethodInvoker(fastMethod, method);
+                } catch(RuntimeException ex) {
+                    if (log.isDebugEnabled())
+                        log.debug("Falling back to reflection for " + method, ex);
+                } catch(LinkageError ex) {
+                    if (log.isDebugEnabled())
+                        log.debug("Falling back to reflection for " + method, ex);
+                }
+            }
+            return ReflectionMethodInvoker.factory.newMethodInvoker(method);
+        }
+    }
+    
+    private final FastMethod fastMethod;
+    private final Method method;
+    /** Parameter types with primitive types replaced by their wrapper classes. */
+    private final Class<?>[] argTypes;
+    private final boolean[] primitives;
+    
+    private FastMethodInvoker(FastMethod fastMethod, Method method) 
+    {
+        this.fastMethod = fastMethod;
+        this.method = method;
+        Class<?>[] paramTypes = method.getParameterTypes();
+        this.argTypes = new Class<?>[paramTypes.length];
+        this.primitives = new boolean[paramTypes.length];
+        
+        for (int i=0; i < paramTypes.length; i++) {
+            argTypes[i] = ClassUtils.wrapperOf(paramTypes[i]);
+            primitives[i] = paramTypes[i].isPrimitive();
+        }
+    }
+    
+    public Method getMethod() {
+        return method;
+    }
+    
+    public Object invoke(Object target, Object[] args) 
+    {
+        if (!isDirectlyAssignable(args)) {
+            // Let reflection do the necessary conversion or report the mismatch
+            try {
+                return method.invoke(target, args);
+            } catch (IllegalAccessException e) {
+                throw new BeanlibException(e);
+            } catch (InvocationTargetException e) {
+                throw new BeanlibException(e.getTargetException());
+            }
+        }
+        try {
+            return fastMethod.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw new BeanlibException(e.getTargetException());
+        }
+    }
+
+    /**
+     * Returns true if the given arguments can be passed to the fast method without any conversion;
+     * false otherwise.
+     */
+    private boolean isDirectlyAssignable(Object[] args) 
+    {
+        final int len = args == null ? 0 : args.length;
+        
+        if (len != argTypes.length)
+            return false;
+        for (int i=0; i < len; i++) {
+            Object arg = args[i];
+            
+            if (arg == null) {
+                if (primitives[i])
+                    return false;
+            }
+            else if (primitives[i] ? arg.getClass() != argTypes[i] : !argTypes[i].isInstance(arg))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.spi.BeanPopulatorBaseConfig;
+import net.sf.beanlib.spi.MethodInvoker;
+
+/**
+ * A method invoker that bypasses a JavaBean reader or setter method 
+ * by directly getting or setting the field of the same property name and type.
+ * <p>
+ * The field is looked up by name through the whole class hierarchy, starting from the class declaring the method,
+ * and made accessible once as a privileged action when the invoker is created.
+ * If no such field exists, the method is invoked via a {@link FastMethodInvoker} instead.
+ * <p>
+ * Since the reader and setter methods are still collected and found as usual, 
+ * all the property filters continue to apply.  
+ * For example, to copy the private fields of JavaBeans with private accessors:
+ * <blockquote><pre>
+ * new BeanReplicator(new BeanTransformer()
+ *          .initSetterMethodCollector(new PrivateSetterMethodCollector())
+ *          .initReaderMethodFinder(new PrivateReaderMethodFinder()))
+ * </pre></blockquote>
+ * with {@link #factory} set via {@link BeanPopulatorBaseConfig#setMethodInvokerFactory(MethodInvoker.Factory)}.
+ * <p>
+ * To copy the fields of JavaBeans regardless of whether they have any accessor methods,
+ * collect and find the synthetic accessor methods of {@link FieldAccessorMethods} instead:
+ * <blockquote><pre>
+ * new BeanReplicator(new BeanTransformer()
+ *          .initSetterMethodCollector(new FieldSetterMethodCollector())
+ *          .initReaderMethodFinder(new FieldReaderMethodFinder()))
+ * </pre></blockquote>
+ * The synthetic accessor methods are always accessed via this invoker, whichever the method invoker factory.
+ * <p>
+ * Notes any logic in the bypassed methods is skipped, 
+ * and so is the lazy initialization of a proxy (such as a Hibernate proxy) by its methods.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public class FieldAccessMethodInvoker implements MethodInvoker 
+{
+    public static final Factory factory = new Factory();
+    
+    /**
+     * Field Access Method Invoker Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Factory implements MethodInvoker.Factory {
+        private Factory() {}
+        
+        public MethodInvoker newMethodInvoker(Method method) 
+        {
+            // The field of a synthetic accessor method has already been made accessible
+            Field field = FieldAccessorMethods.getField(method);
+            
+            if (field != null)
+                return new FieldAccessMethodInvoker(method, field);
+            field = findField(method);
+            return field == null
+                 ? FastMethodInvoker.factory.newMethodInvoker(method)
+                 : new FieldAccessMethodInvoker(method, field);
+        }
+    }
+    
+    /**
+     * Returns the accessible field backing the given reader or setter method; 
+     * or null if there is none.
+     */
+    private static Field findField(Method method) 
+    {
+        final String methodName = method.getName();
+        final Class<?>[] paramTypes = method.getParameterTypes();
+        final Class<?> fieldType;
+        final String propertyString;
+        
+        if (paramTypes.length == 0 && methodName.length() > 3 && methodName.startsWith("get")) {
+            fieldType = method.getReturnType();
+            propertyString = methodName.substring(3);
+        }
+        else if (paramTypes.length == 0 && methodName.length() > 2 && methodName.startsWith("is")
+             &&  method.getReturnType() == boolean.class) 
+        {
+            fieldType = boolean.class;
+            propertyString = methodName.substring(2);
+        }
+        else if (paramTypes.length == 1 && methodName.length() > 3 && methodName.startsWith("set")) {
+            fieldType = paramTypes[0];
+            propertyString = methodName.substring(3);
+        }
+        else
+            return null;
+        final String fieldName = Introspector.decapitalize(propertyString);
+        final boolean setter = paramTypes.length == 1;
+        
+        for (Class<?> c = method.getDeclaringClass(); c != null && c != Object.class; c = c.getSuperclass()) 
+        {
+            final Field field;
+            try {
+                field = c.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+            final int mod = field.getModifiers();
+            
+            if (field.getType() != fieldType 
+            ||  Modifier.isStatic(mod) 
+            ||  setter && Modifier.isFinal(mod))
+                return null;
+            return makeAccessible(field) ? field : null;
+        }
+        return null;
+    }
+    
+    private static boolean makeAccessible(final Field field) 
+    {
+        if (Modifier.isPublic(field.getModifiers())
+        &&  Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+            return true;
+        return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                try {
+                    field.setAccessible(true);
+                    return Boolean.TRUE;
+                } catch(RuntimeException ex) {
+                    // Fall back to invoking the method
+                    return Boolean.FALSE;
+                }
+            }
+        });
+    }
+    
+    private final Method method;
+    private final Field field;
+    
+    protected FieldAccessMethodInvoker(Method method, Field field) {
+        this.method = method;
+        this.field = field;
+    }
+    
+    public Method getMethod() {
+        return method;
+    }
+    
+    /** Returns the field accessed in place of the method. */
+    public Field getField() {
+        return field;
+    }
+    
+    public Object invoke(Object target, Object[] args) 
+    {
+        try {
+            if (args == null || args.length == 0)
+                return field.get(target);
+            field.set(target, args[0]);
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new BeanlibException(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.util.WeakClassCache;
+import net.sf.beanlib.utils.ClassUtils;
+
+/**
+ * Synthetic reader and setter methods standing for the instance fields of JavaBean classes,
+ * so that fields can be collected, found, filtered and copied via the same method based SPI's 
+ * as the JavaBean properties.
+ * <p>
+ * The synthetic methods are declared by the very class declaring the fields, 
+ * so a property filter sees the same declaring class, property name and type as 
+ * it would for JavaBean accessor methods of the fields.
+ * There is a "get" and a "set" method per instance field, named after the field and typed as the field,
+ * but no code is generated for them: they are never invoked, as the method invokers created by 
+ * {@link FieldAccessMethodInvoker#factory} get and set the fields directly instead.
+ * The fields are made accessible once per class, when its synthetic methods are first requested.
+ * <p>
+ * Fields that are static, synthetic, or named with a '$' (such as those added to proxy classes) are skipped, 
+ * and so are the setter methods of final fields.
+ * Classes under a "java." package are not covered.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public final class FieldAccessorMethods 
+{
+    /** copied from the package private Modifier.SYNTHETIC constant. */
+    private static final int SYNTHETIC = 0x00001000;
+    /** A slot which doesn't exist in any class, so a synthetic method invoked by mistake fails. */
+    private static final int NO_SLOT = Integer.MAX_VALUE;
+    private static final Class<?>[] NO_CLASSES = {};
+    private static final Method[] NO_METHODS = {};
+    
+    /** Accessors of the fields declared per class. */
+    private static final WeakClassCache<Accessors> accessorsCache = new WeakClassCache<Accessors>();
+    /** The package private constructor of {@link Method}, made accessible upon first use. */
+    private static volatile Constructor<Method> methodConstructor;
+    
+    private FieldAccessorMethods() {}
+    
+    /**
+     * Returns the synthetic setter methods of the instance fields of the given class and its superclasses,
+     * excluding final fields and fields hidden by a field of the same name in a subclass.
+     */
+    public static Method[] getSetterMethods(Class<?> beanClass) 
+    {
+        List<Method> list = new ArrayList<Method>();
+        Set<String> names = new HashSet<String>();
+        
+        for (Class<?> c = beanClass; c != null && c != Object.class; c = c.getSuperclass()) 
+        {
+            for (Method m : getAccessors(c).setters) 
+            {
+                if (m != null && names.add(m.getName()))
+                    list.add(m);
+            }
+        }
+        return list.toArray(NO_METHODS);
+    }
+    
+    /**
+     * Returns the synthetic reader method of the instance field of the given property string
+     * (ie the field name with its first character in upper case)
+     * in the given class or its superclasses; or null if there is none.
+     */
+    public static Method getReaderMethod(Class<?> beanClass, String propertyString) 
+    {
+        final String methodName = "get" + propertyString;
+        
+        for (Class<?> c = beanClass; c != null && c != Object.class; c = c.getSuperclass()) 
+        {
+            for (Method m : getAccessors(c).readers) 
+            {
+                if (m.getName().equals(methodName))
+                    return m;
+            }
+        }
+        return null;
+    }
+    
+    /** 
+     * Returns the accessible field accessed by the given synthetic reader or setter method;
+     * or null if the given method is not a synthetic accessor method.
+     */
+    public static Field getField(Method method) 
+    {
+        if ((method.getModifiers() & SYNTHETIC) == 0 || method.isBridge())
+            return null;
+        final Accessors accessors = getAccessors(method.getDeclaringClass());
+        
+        for (int i=0; i < accessors.fields.length; i++) {
+            if (method.equals(accessors.readers[i]) || method.equals(accessors.setters[i]))
+                return accessors.fields[i];
+        }
+        return null;
+    }
+    
+    /** Returns true if the given method is a synthetic reader or setter method; false otherwise. */
+    public static boolean isAccessorMethod(Method method) {
+        return getField(method) != null;
+    }
+    
+    /** Returns the accessors of the fields declared by the given class. */
+    private static Accessors getAccessors(Class<?> c) 
+    {
+        Accessors accessors = accessorsCache.get(c);
+        
+        if (accessors == null)
+            accessors = accessorsCache.putIfAbsent(c, newAccessors(c));
+        return accessors;
+    }
+    
+    private static Accessors newAccessors(Class<?> c) 
+    {
+        if (c.isInterface() || c.getClassLoader() == null || ClassUtils.isJavaPackage(c))
+            return Accessors.NONE;
+        List<Field> fields = new ArrayList<Field>();
+        List<Method> readers = new ArrayList<Method>();
+        List<Method> setters = new ArrayList<Method>();
+        Set<String> propertyStrings = new HashSet<String>();
+        
+        for (Field field : c.getDeclaredFields()) 
+        {
+            final String propertyString = capitalize(field.getName());
+            
+            if (!isCovered(field) || !propertyStrings.add(propertyString))
+                continue;
+            if (!makeAccessible(field))
+                throw new BeanlibException("Field " + field + " is not accessible");
+            fields.add(field);
+            readers.add(newMethod(c, "get" + propertyString, NO_CLASSES, field.getType()));
+            setters.add(Modifier.isFinal(field.getModifiers()) 
+                      ? null 
+                      : newMethod(c, "set" + propertyString, new Class<?>[] {field.getType()}, void.class));
+        }
+        return fields.isEmpty() 
+             ? Accessors.NONE 
+             : new Accessors(fields.toArray(new Field[fields.size()]), 
+                             readers.toArray(NO_METHODS), setters.toArray(NO_METHODS));
+    }
+    
+    /** Returns a new synthetic public method declared by the given class, without any code. */
+    private static Method newMethod(Class<?> c, String name, Class<?>[] parameterTypes, Class<?> returnType) 
+    {
+        try {
+            return getMethodConstructor().newInstance(c, name, parameterTypes, returnType, NO_CLASSES, 
+                    Modifier.PUBLIC | SYNTHETIC, NO_SLOT, null, null, null, null);
+        } catch (InstantiationException e) {
+            throw new BeanlibException(e);
+        } catch (IllegalAccessException e) {
+            throw new BeanlibException(e);
+        } catch (InvocationTargetException e) {
+            throw new BeanlibException(e.getTargetException());
+        }
+    }
+    
+    private static Constructor<Method> getMethodConstructor() 
+    {
+        Constructor<Method> constructor = methodConstructor;
+        
+        if (constructor == null) {
+            methodConstructor = constructor = AccessController.doPrivileged(new PrivilegedAction<Constructor<Method>>() {
+                public Constructor<Method> run() {
+                    try {
+                        Constructor<Method> c = Method.class.getDeclaredConstructor(
+                                Class.class, String.class, Class[].class, Class.class, Class[].class, 
+                                int.class, int.class, String.class, byte[].class, byte[].class, byte[].class);
+                        c.setAccessible(true);
+                        return c;
+                    } catch (NoSuchMethodException e) {
+                        throw new BeanlibException(e);
+                    } catch (RuntimeException e) {
+                        throw new BeanlibException("Synthetic field accessor methods are not supported by this JVM", e);
+                    }
+                }
+            });
+        }
+        return constructor;
+    }
+    
+    private static boolean makeAccessible(final Field field) 
+    {
+        if (Modifier.isPublic(field.getModifiers())
+        &&  Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+            return true;
+        return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                try {
+                    field.setAccessible(true);
+                    return Boolean.TRUE;
+                } catch(RuntimeException ex) {
+                    return Boolean.FALSE;
+                }
+            }
+        });
+    }
+    
+    private static boolean isCovered(Field field) {
+        return !Modifier.isStatic(field.getModifiers()) 
+            && !field.isSynthetic() 
+            && field.getName().indexOf('$') == -1;
+    }
+    
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+    
+    /**
+     * The accessible fields declared by a class, with their synthetic reader methods, 
+     * and their synthetic setter methods (or null for the final fields), at the same indexes.
+     *
+     * @author Joe D. Velopar
+     */
+    @Immutable
+    private static final class Accessors 
+    {
+        static final Accessors NONE = new Accessors(new Field[0], NO_METHODS, NO_METHODS);
+        
+        final Field[] fields;
+        final Method[] readers;
+        final Method[] setters;
+        
+        Accessors(Field[] fields, Method[] readers, Method[] setters) {
+            this.fields = fields;
+            this.readers = readers;
+            this.setters = setters;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.invoker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.spi.MethodInvoker;
+
+/**
+ * A method invoker that invokes the method via reflection.
+ * <p>
+ * A method that is either non-public, or declared in a non-public class,
+ * is made accessible once as a privileged action when the invoker is created,
+ * rather than on every invocation.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public class ReflectionMethodInvoker implements MethodInvoker 
+{
+    public static final Factory factory = new Factory();
+    
+    /**
+     * Reflection Method Invoker Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    @ThreadSafe
+    public static class Factory implements MethodInvoker.Factory {
+        private Factory() {}
+        
+        public ReflectionMethodInvoker newMethodInvoker(Method method) {
+            return new ReflectionMethodInvoker(method);
+        }
+    }
+    
+    private final Method method;
+    
+    protected ReflectionMethodInvoker(final Method method) 
+    {
+        this.method = method;
+        
+        if (!Modifier.isPublic(method.getModifiers())
+        ||  !Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+        {
+            AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                public Object run() {
+                    try {
+                        method.setAccessible(true);
+                    } catch(RuntimeException ex) {
+                        // Leave it to the invocation to report the access failure, if any
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+    
+    public Method getMethod() {
+        return method;
+    }
+    
+    public Object invoke(Object target, Object[] args) 
+    {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new BeanlibException(e);
+        } catch (InvocationTargetException e) {
+            throw new BeanlibException(e.getTargetException());
+        }
+    }
+}
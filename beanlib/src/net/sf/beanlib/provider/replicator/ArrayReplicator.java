@@ -73,36 +73,21 @@ public class ArrayReplicator extends ReplicatorTemplate implements ArrayReplicat
         // non-primitive array
         final int len = Array.getLength(arrayToCopy);
         final Object to = Array.newInstance(fromComponentType, len);
-        putTargetCloned(arrayToCopy, to);
+        final Object cloned = putTargetClonedIfAbsent(arrayToCopy, to);
+        
+        if (cloned != to) // concurrently replicated by another thread
+            return toClass.cast(cloned);
         final Object[] fromArray = (Object[])arrayToCopy;
         final Object[] toArray = (Object[])to;
         final CustomBeanTransformerSpi customTransformer = getCustomerBeanTransformer();
-        // recursively populate member objects.
-        for (int i=fromArray.length-1; i >= 0; i--) {
-            final Object fromElement = fromArray[i];
-            
-            if (fromElement == null)
-                continue;
-
-            if (super.containsTargetCloned(fromElement)) {
-                toArray[i] = super.getTargetCloned(fromElement);
-                continue;
-            }
-
-            if (customTransformer != null) {
-                final Class<?> fromElementClass = fromElement.getClass();
-                
-                if (customTransformer.isTransformable(fromElement, fromElementClass, null)) {
-                    final Object toElement = customTransformer.transform(fromElement, fromElementClass, null);
-                    super.putTargetCloned(fromElement, toElement);
-                    toArray[i] = toElement;
-                    continue;
-                }
-            }
-            final Object toElement = replicate(fromElement);
-            // cloned target is already placed in the target cloned map in replicate
-            toArray[i] = toElement;
+        
+        if (isParallelReplicable(len)) {
+            replicateMembersInParallel(fromArray, toArray, customTransformer);
+            return toClass.cast(toArray);
         }
+        // recursively populate member objects.
+        for (int i=fromArray.length-1; i >= 0; i--)
+            toArray[i] = replicateMember(fromArray[i], customTransformer);
         return toClass.cast(toArray);
     }
 }
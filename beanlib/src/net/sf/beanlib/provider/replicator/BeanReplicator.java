@@ -15,6 +15,10 @@
  */
 package net.sf.beanlib.provider.replicator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import net.sf.beanlib.BeanlibException;
 import net.sf.beanlib.provider.BeanTransformer;
 import net.sf.beanlib.spi.BeanTransformerSpi;
@@ -144,6 +148,47 @@ public class BeanReplicator extends ReplicatorTemplate implements BeanReplicator
         return this.replicateBean(from, toClass, from);
     }
     
+    /**
+     * Replicates the given JavaBean objects, in the same order.
+     * 
+     * @param <V> from type
+     * @param from the original beans to be replicated, which may contain null
+     * @see #copyAll(Collection, Class)
+     */
+    public <V> List<V> copyAll(Collection<? extends V> from) {
+        return this.<V>copyAll(from, null);
+    }
+    
+    /**
+     * Replicates the given JavaBean objects to instances of a target class, in the same order.
+     * <p>
+     * All the objects are replicated as a single batch with the same identity context, 
+     * so an object referenced from multiple given objects (or given multiple times)
+     * is replicated only once.
+     * 
+     * @param <T> target type
+     * @param from the original beans to be replicated, which may contain null
+     * @param toClass target class to be instantiated; or null for the class of each given bean
+     * @return the replicated beans; or null if the given collection is null
+     */
+    public <T> List<T> copyAll(Collection<?> from, Class<T> toClass) 
+    {
+        if (from == null)
+            return null;
+        final List<T> list = new ArrayList<T>(from.size());
+        
+        for (Object obj : from) {
+            if (obj == null) {
+                list.add(null);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            final Class<T> c = toClass == null ? (Class<T>)obj.getClass() : toClass;
+            list.add(replicate(obj, c));
+        }
+        return list;
+    }
+    
     /**
      * Replicates the properties of a JavaBean object to an instance of a target class,
      * which is selected from the given "from" and "to" classes, giving
@@ -195,7 +240,10 @@ public class BeanReplicator extends ReplicatorTemplate implements BeanReplicator
                 + " toClass=" + toClass + ", from=" + from
                 +", originalFrom=" + originalFrom, e);
         }
-        putTargetCloned(originalFrom, to);
+        final T cloned = putTargetClonedIfAbsent(originalFrom, to);
+        
+        if (cloned != to) // concurrently replicated by another thread
+            return cloned;
         // recursively populate member objects.
         populateBean(from, to);
         return to;
@@ -204,6 +252,11 @@ public class BeanReplicator extends ReplicatorTemplate implements BeanReplicator
     /**
      * Populates the properties of a "from" JavaBean object 
      * to a target "to" JavaBean object.
+     * <p>
+     * If the bean transformer is in merge mode, the nested objects already referenced by
+     * the target bean are updated in place whenever possible.
+     * 
+     * @see BeanTransformer#initMergeMode(boolean)
      * 
      * @param from the bean from which the properties are to be retrieved
      * @param to the target bean to be populated
@@ -82,37 +82,25 @@ public class CollectionReplicator extends ReplicatorTemplate implements Collecti
             @SuppressWarnings("unchecked")
             final Collection<Object> col = (Collection<Object>)this.createToCollection(fromCollection);
             
-            toCollection = col;
-            putTargetCloned(fromCollection, toCollection);
+            toCollection = putTargetClonedIfAbsent(fromCollection, col);
+            
+            if (toCollection != col) // concurrently replicated by another thread
+                return toClass.cast(toCollection);
             final CustomBeanTransformerSpi customTransformer = getCustomerBeanTransformer();
-            // recursively populate member objects.
-            for (final V fromMember : fromCollection) 
+            
+            if (isParallelReplicable(fromCollection.size())) 
             {
-                if (fromMember == null) {
-                    toCollection.add(null);
-                    continue;
-                }
+                final Object[] fromMembers = fromCollection.toArray();
+                final Object[] toMembers = new Object[fromMembers.length];
+                replicateMembersInParallel(fromMembers, toMembers, customTransformer);
                 
-                if (super.containsTargetCloned(fromMember)) {
-                    final Object targetCloned = super.getTargetCloned(fromMember);
-                    toCollection.add(targetCloned);
-                    continue;
-                }
-                
-                if (customTransformer != null) {
-                    final Class<?> fromMemberClass = fromMember.getClass();
-                    
-                    if (customTransformer.isTransformable(fromMember, fromMemberClass, null)) {
-                        final Object toMember = customTransformer.transform(fromMember, fromMemberClass, null);
-                        super.putTargetCloned(fromMember, toMember);
-                        toCollection.add(toMember);
-                        continue;
-                    }
-                }
-                final V toMember = replicate(fromMember);
-                // cloned target is already placed in the target cloned map in replicate
-                toCollection.add(toMember);
+                for (Object toMember : toMembers)
+                    toCollection.add(toMember);
+                return toClass.cast(toCollection);
             }
+            // recursively populate member objects.
+            for (final V fromMember : fromCollection)
+                toCollection.add(replicateMember(fromMember, customTransformer));
         } catch (SecurityException e) {
             throw new BeanlibException(e);
         } catch (InstantiationException e) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Comparator;
+
+import net.jcip.annotations.ThreadSafe;
+import net.sf.beanlib.BeanlibException;
+import net.sf.beanlib.util.WeakClassCache;
+import net.sf.beanlib.utils.ClassUtils;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastConstructor;
+
+/**
+ * Used to instantiate a specific class via a specific constructor.
+ * <p>
+ * Instantiators are cached per class, so the constructor is resolved and made accessible only once.
+ * The cache doesn't prevent the classes and their class loaders from being garbage collected.
+ * Public constructors of public classes are invoked directly via a cglib generated {@link FastClass},
+ * falling back to reflection whenever the fast class cannot be used.
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+final class Instantiator 
+{
+    /** Used to cache the absence of a constructor. */
+    private static final Instantiator NO_CONSTRUCTOR = new Instantiator(null, null);
+    
+    private static final WeakClassCache<Instantiator> noArgInstantiators = new WeakClassCache<Instantiator>();
+    private static final WeakClassCache<Instantiator> comparatorInstantiators = new WeakClassCache<Instantiator>();
+    
+    /** Returns the instantiator of the given class via the no-arg constructor. */
+    static Instantiator forNoArgConstructor(Class<?> c) throws NoSuchMethodException {
+        return get(noArgInstantiators, c);
+    }
+    
+    /** Returns the instantiator of the given class via the constructor that takes a {@link Comparator}. */
+    static Instantiator forComparatorConstructor(Class<?> c) throws NoSuchMethodException {
+        return get(comparatorInstantiators, c, Comparator.class);
+    }
+    
+    private static Instantiator get(WeakClassCache<Instantiator> cache, Class<?> c, Class<?>... parameterTypes) 
+        throws NoSuchMethodException
+    {
+        Instantiator instantiator = cache.get(c);
+        
+        if (instantiator == null) {
+            try {
+                instantiator = newInstantiator(c.getDeclaredConstructor(parameterTypes));
+            } catch(NoSuchMethodException ex) {
+                instantiator = NO_CONSTRUCTOR;
+            }
+            instantiator = cache.putIfAbsent(c, instantiator);
+        }
+        if (instantiator == NO_CONSTRUCTOR)
+        {
+            StringBuilder sb = new StringBuilder(c.getName()).append(".<init>(");
+            
+            for (int i=0; i < parameterTypes.length; i++)
+                sb.append(i == 0 ? "" : ",").append(parameterTypes[i].getName());
+            throw new NoSuchMethodException(sb.append(")").toString());
+        }
+        return instantiator;
+    }
+    
+    private static Instantiator newInstantiator(final Constructor<?> constructor) 
+    {
+        final Class<?> c = constructor.getDeclaringClass();
+        
+        if (Modifier.isPublic(constructor.getModifiers())
+        &&  Modifier.isPublic(c.getModifiers()))
+        {
+            if (!Modifier.isAbstract(c.getModifiers()) 
+            &&  c.getClassLoader() != null
+            &&  !ClassUtils.isJavaPackage(c))
+            {
+                try {
+                    return new Instantiator(constructor, FastClass.create(c).getConstructor(constructor));
+                } catch(RuntimeException ex) {
+                    // fall back to reflection
+                } catch(LinkageError ex) {
+                    // fall back to reflection
+                }
+            }
+            return new Instantiator(constructor, null);
+        }
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            public Object run() {
+                try {
+                    constructor.setAccessible(true);
+                } catch(RuntimeException ex) {
+                    // Leave it to the instantiation to report the access failure, if any
+                }
+                return null;
+            }
+        });
+        return new Instantiator(constructor, null);
+    }
+    
+    private final Constructor<?> constructor;
+    /** Null if the fast constructor is not available. */
+    private final FastConstructor fastConstructor;
+    
+    private Instantiator(Constructor<?> constructor, FastConstructor fastConstructor) {
+        this.constructor = constructor;
+        this.fastConstructor = fastConstructor;
+    }
+    
+    /**
+     * Returns a new instance constructed with the given arguments.
+     * 
+     * @throws BeanlibException wrapping the exception thrown from the constructor, if any
+     */
+    Object newInstance(Object[] args) throws InstantiationException, IllegalAccessException
+    {
+        try {
+            return fastConstructor == null
+                 ? constructor.newInstance(args)
+                 : fastConstructor.newInstance(args)
+                 ;
+        } catch (InvocationTargetException e) {
+            throw new BeanlibException(e.getTargetException());
+        }
+    }
+}
@@ -80,7 +80,10 @@ public class MapReplicator extends ReplicatorTemplate implements MapReplicatorSp
         } catch (NoSuchMethodException e) {
             throw new BeanlibException(e);
         }
-        putTargetCloned(from, toMap);
+        final Object cloned = putTargetClonedIfAbsent(from, toMap);
+        
+        if (cloned != toMap) // concurrently replicated by another thread
+            return toClass.cast(cloned);
         final Map<K,V> fromMap = from;
         final CustomBeanTransformerSpi customTransformer = getCustomerBeanTransformer();
         // recursively populate member objects.
@@ -95,9 +98,9 @@ public class MapReplicator extends ReplicatorTemplate implements MapReplicatorSp
                     break setKey;
                 }
                 
-                if (super.containsTargetCloned(fromKey)) {
-                    final Object targetCloned = super.getTargetCloned(fromKey);
-                    
+                final Object targetCloned = super.lookupTargetCloned(fromKey);
+                
+                if (targetCloned != NOT_CLONED) {
                     if (targetCloned != null) {
                         key = targetCloned;
                         break setKey;
@@ -135,8 +138,10 @@ public class MapReplicator extends ReplicatorTemplate implements MapReplicatorSp
                     break setValue;
                 }
                 
-                if (super.containsTargetCloned(fromValue)) {
-                    value = super.getTargetCloned(fromValue);
+                final Object targetCloned = super.lookupTargetCloned(fromValue);
+                
+                if (targetCloned != NOT_CLONED) {
+                    value = targetCloned;
                     break setValue;
                 }
                 
@@ -15,24 +15,32 @@
  */
 package net.sf.beanlib.provider.replicator;
 
-import static net.sf.beanlib.utils.ClassUtils.immutable;
-
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.sql.Blob;
 import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import net.sf.beanlib.BeanlibException;
 import net.sf.beanlib.PropertyInfo;
+import net.sf.beanlib.provider.BeanTransformer;
 import net.sf.beanlib.spi.BeanTransformerSpi;
 import net.sf.beanlib.spi.CustomBeanTransformerSpi;
+import net.sf.beanlib.util.ConcurrentIdentityMap;
+import net.sf.beanlib.util.ReusableIdentityMap;
+import net.sf.beanlib.utils.ClassUtils;
 
 import org.apache.log4j.Logger;
 
@@ -43,6 +51,11 @@ import org.apache.log4j.Logger;
  */
 public abstract class ReplicatorTemplate
 {
+    /** Returned by {@link #lookupTargetCloned(Object)} if the given object has not been cloned. */
+    protected static final Object NOT_CLONED = new Object();
+    /** Minimum number of members replicated by a chunk during a parallel replication. */
+    private static final int MIN_PARALLEL_CHUNK_SIZE = 64;
+    
     protected final Logger log = Logger.getLogger(getClass());
     private final BeanTransformerSpi beanTransformer;
     
@@ -56,6 +69,8 @@ public abstract class ReplicatorTemplate
     
     protected final CustomBeanTransformerSpi getCustomerBeanTransformer() { return beanTransformer.getCustomBeanTransformer(); }
     
+    protected final BeanTransformerSpi getBeanTransformer() { return beanTransformer; }
+    
     /**
      * Replicate the given from object, recursively if necessary.
      * 
@@ -86,6 +101,9 @@ public abstract class ReplicatorTemplate
      * Currently a property is replicated if it is an instance
      * of Collection, Map, Timestamp, Date, Blob, Hibernate entity, 
      * JavaBean, or an array.
+     * <p>
+     * In tree mode, ie when the cloned map is a {@link TreeModeClonedMap},
+     * the replication depth is tracked if debugging is enabled.
      */
     protected <T> T replicate(final Object from, Class<T> toClass) 
         throws SecurityException 
@@ -96,6 +114,23 @@ public abstract class ReplicatorTemplate
                  ? ImmutableReplicator.getDefaultPrimitiveValue(toClass)
                  : null;
         }
+        final Map<Object,Object> clonedMap = beanTransformer.getClonedMap();
+        
+        if (clonedMap instanceof TreeModeClonedMap && beanTransformer.isDebug()) 
+        {
+            final TreeModeClonedMap treeModeClonedMap = (TreeModeClonedMap)clonedMap;
+            treeModeClonedMap.enter(from);
+            try {
+                return replicate(from, toClass, clonedMap);
+            } finally {
+                treeModeClonedMap.exit();
+            }
+        }
+        return replicate(from, toClass, clonedMap);
+    }
+    
+    private <T> T replicate(final Object from, Class<T> toClass, Map<Object,Object> clonedMap) 
+    {
         final Object unenhanced = unenhanceObject(from);
         
         if (unenhanced != from
@@ -107,46 +142,224 @@ public abstract class ReplicatorTemplate
             toClass = unenhancedClass;
         }
         
-        if (containsTargetCloned(from)) 
+        final Object targetCloned = lookupTargetCloned(clonedMap, from);
+        
+        if (targetCloned != NOT_CLONED) 
         {   // already transformed
-            @SuppressWarnings("unchecked") T to = (T)getTargetCloned(from);
+            @SuppressWarnings("unchecked") T to = (T)targetCloned;
             return to;
         }
         // https://sourceforge.net/tracker/?func=detail&atid=745596&aid=3496862&group_id=140152
         // Immutable e.g. String, Enum, primitvies, BigDecimal, etc.
-        if (immutable(toClass) || immutable(unenhanced.getClass()))
-            return beanTransformer.getImmutableReplicatable()
-                                  .replicateImmutable(unenhanced, toClass);
-        // Collection
-        if (unenhanced instanceof Collection<?>)
-            return beanTransformer.getCollectionReplicatable()
-                                  .replicateCollection((Collection<?>)unenhanced, toClass);
-        // Array
-        if (unenhanced.getClass().isArray())
-            return beanTransformer.getArrayReplicatable()
-                                  .replicateArray(unenhanced, toClass);
-        // Map
-        if (unenhanced instanceof Map<?,?>) {
-            @SuppressWarnings("unchecked")
-            T ret = (T)beanTransformer.getMapReplicatable()
-                                      .replicateMap((Map)unenhanced, toClass);
-            return ret;
+        final ValueKind kind = ValueKind.of(toClass) == ValueKind.IMMUTABLE
+                             ? ValueKind.IMMUTABLE
+                             : ValueKind.of(unenhanced.getClass());
+        switch(kind) {
+            case IMMUTABLE:
+                return beanTransformer.getImmutableReplicatable()
+                                      .replicateImmutable(unenhanced, toClass);
+            case COLLECTION:
+                return beanTransformer.getCollectionReplicatable()
+                                      .replicateCollection((Collection<?>)unenhanced, toClass);
+            case ARRAY:
+                return beanTransformer.getArrayReplicatable()
+                                      .replicateArray(unenhanced, toClass);
+            case MAP: {
+                @SuppressWarnings("unchecked")
+                T ret = (T)beanTransformer.getMapReplicatable()
+                                          .replicateMap((Map)unenhanced, toClass);
+                return ret;
+            }
+            // Date or Timestamp
+            case DATE:
+                return beanTransformer.getDateReplicatable()
+                                      .replicateDate((Date)unenhanced, toClass);
+            case CALENDAR:
+                return beanTransformer.getCalendarReplicatable()
+                                      .replicateCalendar((Calendar)unenhanced, toClass);
+            case BLOB:
+                return beanTransformer.getBlobReplicatable()
+                                      .replicateBlob((Blob)unenhanced, toClass);
+            default:
+                // Other objects
+                // Note the original from object is expected to be passed along
+                return replicateByBeanReplicatable(from, toClass);
+        }
+    }
+    
+    /**
+     * Replicates the given from object to an instance of the toClass,
+     * updating the given existing target in place whenever possible instead of creating a new one.
+     * <p>
+     * An existing JavaBean of the same class as would be instantiated is re-populated;
+     * an existing list is reconciled by position; any other existing collection is reconciled 
+     * by matching its members with the from members via {@link Object#equals(Object)};
+     * and an existing map is updated by key.  New objects are created only for the additions.
+     * Otherwise, the from object is replicated as usual.
+     * 
+     * @param from the object to be replicated, which may be null
+     * @param existingTo the existing target, which may be null
+     * @param toClass target class
+     * @see BeanTransformer#initMergeMode(boolean)
+     */
+    protected <T> T merge(Object from, Object existingTo, Class<T> toClass) 
+    {
+        if (from == null || existingTo == null || ValueKind.of(toClass) == ValueKind.IMMUTABLE)
+            return replicate(from, toClass);
+        final Object targetCloned = lookupTargetCloned(from);
+        
+        if (targetCloned != NOT_CLONED) 
+        {   // already transformed
+            @SuppressWarnings("unchecked") T to = (T)targetCloned;
+            return to;
+        }
+        final Object unenhanced = unenhanceObject(from);
+        
+        if (toClass.isInstance(existingTo)) 
+        {
+            switch(ValueKind.of(unenhanced.getClass())) {
+                case COLLECTION:
+                    if (existingTo instanceof Collection<?>) {
+                        mergeCollection((Collection<?>)unenhanced, existingTo);
+                        return toClass.cast(existingTo);
+                    }
+                    break;
+                case MAP:
+                    if (existingTo instanceof Map<?,?>) {
+                        mergeMap((Map<?,?>)unenhanced, existingTo);
+                        return toClass.cast(existingTo);
+                    }
+                    break;
+                case BEAN:
+                    if (existingTo.getClass() == chooseClass(unenhanced.getClass(), toClass)) {
+                        putTargetCloned(from, existingTo);
+                        populateBean(unenhanced, existingTo);
+                        return toClass.cast(existingTo);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return replicate(from, toClass);
+    }
+    
+    /**
+     * Merges the given member of a collection or a map into the given existing target member,
+     * reusing the target already cloned, if any, or applying the custom transformer, if applicable.
+     */
+    private Object mergeMember(Object fromMember, Object existingToMember, CustomBeanTransformerSpi customTransformer) 
+    {
+        if (fromMember == null || existingToMember == null)
+            return replicateMember(fromMember, customTransformer);
+        final Object targetCloned = lookupTargetCloned(fromMember);
+        
+        if (targetCloned != NOT_CLONED)
+            return targetCloned;
+        final Class<?> fromMemberClass = fromMember.getClass();
+        
+        if (customTransformer != null && customTransformer.isTransformable(fromMember, fromMemberClass, null)) {
+            return putTargetClonedIfAbsent(fromMember, customTransformer.transform(fromMember, fromMemberClass, null));
+        }
+        return merge(fromMember, existingToMember, fromMemberClass);
+    }
+    
+    /** Reconciles the given existing collection with the given from collection. */
+    private void mergeCollection(Collection<?> from, Object existingTo) 
+    {
+        @SuppressWarnings("unchecked") 
+        final Collection<Object> toCollection = (Collection<Object>)existingTo;
+        putTargetCloned(from, toCollection);
+        final CustomBeanTransformerSpi customTransformer = getCustomerBeanTransformer();
+        
+        if (toCollection instanceof List<?> && from instanceof List<?>) 
+        {   // Reconciled by position
+            final List<Object> toList = (List<Object>)toCollection;
+            int i = 0;
+            
+            for (Object fromMember : from) 
+            {
+                if (i < toList.size()) {
+                    final Object existingToMember = toList.get(i);
+                    final Object toMember = mergeMember(fromMember, existingToMember, customTransformer);
+                    
+                    if (toMember != existingToMember)
+                        toList.set(i, toMember);
+                }
+                else
+                    toList.add(replicateMember(fromMember, customTransformer));
+                i++;
+            }
+            if (i < toList.size())
+                toList.subList(i, toList.size()).clear();
+            return;
+        }
+        // Reconciled by matching the existing members with the from members
+        final Map<Object,Object> existingToMembers = new HashMap<Object,Object>();
+        
+        for (Object existingToMember : toCollection)
+            if (existingToMember != null)
+                existingToMembers.put(existingToMember, existingToMember);
+        final List<Object> toMembers = new ArrayList<Object>(from.size());
+        
+        for (Object fromMember : from) {
+            final Object existingToMember = fromMember == null ? null : existingToMembers.get(fromMember);
+            toMembers.add(mergeMember(fromMember, existingToMember, customTransformer));
+        }
+        // Members are re-added after being merged, as merging may change their hash codes
+        toCollection.clear();
+        toCollection.addAll(toMembers);
+    }
+    
+    /** Updates the given existing map by key with the given from map. */
+    private void mergeMap(Map<?,?> from, Object existingTo) 
+    {
+        @SuppressWarnings("unchecked") 
+        final Map<Object,Object> toMap = (Map<Object,Object>)existingTo;
+        putTargetCloned(from, toMap);
+        final CustomBeanTransformerSpi customTransformer = getCustomerBeanTransformer();
+        final Set<Object> toKeys = new HashSet<Object>();
+        
+        for (Map.Entry<?,?> fromEntry : from.entrySet()) 
+        {
+            final Object toKey = replicateMember(fromEntry.getKey(), customTransformer);
+            final Object existingToValue = toMap.get(toKey);
+            final Object toValue = mergeMember(fromEntry.getValue(), existingToValue, customTransformer);
+            toKeys.add(toKey);
+            
+            if (toValue != existingToValue || !toMap.containsKey(toKey))
+                toMap.put(toKey, toValue);
+        }
+        toMap.keySet().retainAll(toKeys);
+    }
+    
+    /**
+     * The kind of a value, which determines the replicator to be used.
+     * The kind is determined solely by the memoized traits of the class of the value.
+     */
+    private static enum ValueKind {
+        IMMUTABLE, COLLECTION, ARRAY, MAP, DATE, CALENDAR, BLOB, BEAN;
+        
+        /** Returns the kind of the values of the given class. */
+        static ValueKind of(Class<?> c) {
+            final int traits = ClassUtils.traits(c);
+            
+            if ((traits & ClassUtils.IMMUTABLE_TRAIT) != 0)
+                return IMMUTABLE;
+            if ((traits & ClassUtils.COLLECTION_TRAIT) != 0)
+                return COLLECTION;
+            if ((traits & ClassUtils.ARRAY_TRAIT) != 0)
+                return ARRAY;
+            if ((traits & ClassUtils.MAP_TRAIT) != 0)
+                return MAP;
+            if ((traits & ClassUtils.DATE_TRAIT) != 0)
+                return DATE;
+            if ((traits & ClassUtils.CALENDAR_TRAIT) != 0)
+                return CALENDAR;
+            if ((traits & ClassUtils.BLOB_TRAIT) != 0)
+                return BLOB;
+            return BEAN;
         }
-        // Date or Timestamp
-        if (unenhanced instanceof Date)
-            return beanTransformer.getDateReplicatable()
-                                  .replicateDate((Date)unenhanced, toClass);
-        // Calendar
-        if (unenhanced instanceof Calendar)
-            return beanTransformer.getCalendarReplicatable()
-                                  .replicateCalendar((Calendar)unenhanced, toClass);
-        // Blob
-        if (unenhanced instanceof Blob)
-            return beanTransformer.getBlobReplicatable()
-                                  .replicateBlob((Blob)unenhanced, toClass);
-        // Other objects
-        // Note the original from object is expected to be passed along
-        return replicateByBeanReplicatable(from, toClass);
     }
     
     protected <T> T replicateByBeanReplicatable(Object from, Class<T> toClass)
@@ -226,6 +439,7 @@ public abstract class ReplicatorTemplate
     /** 
      * Creates a new instance of the given class via the no-arg constructor,
      * invoking the constructor as a privileged action if it is protected or private.
+     * Notes the constructor is resolved and made accessible only once per class.
      * 
      * @param c given class
      * @return a new instance of the given class via the no-arg constructor
@@ -233,58 +447,41 @@ public abstract class ReplicatorTemplate
     protected final <T> T newInstanceAsPrivileged(Class<T> c) 
         throws SecurityException, NoSuchMethodException, InstantiationException, IllegalAccessException
     {
-        final Constructor<?> constructor = c.getDeclaredConstructor();
-        
-        if (Modifier.isPublic(constructor.getModifiers()))
-            return c.newInstance();
-        return c.cast(AccessController.doPrivileged(
-            new PrivilegedAction<Object>() {
-                public Object run() {
-                    constructor.setAccessible(true);
-                    try {
-                        return constructor.newInstance();
-                    } catch (IllegalAccessException e) {
-                        throw new BeanlibException(e);
-                    } catch (InvocationTargetException e) {
-                        throw new BeanlibException(e.getTargetException());
-                    } catch (InstantiationException e) {
-                        throw new BeanlibException(e);
-                    }
-                }
-        }));
+        return c.cast(Instantiator.forNoArgConstructor(c).newInstance(null));
     }
 
-    private <T> T newInstanceWithComparatorAsPrivileged(Class<T> c, final Comparator<?> comparator) 
+    private <T> T newInstanceWithComparatorAsPrivileged(Class<T> c, Comparator<?> comparator) 
         throws SecurityException, NoSuchMethodException
     {
-        final Constructor<?> constructor = c.getDeclaredConstructor(Comparator.class);
-        
-        if (Modifier.isPublic(constructor.getModifiers())) {
-            try {
-                return c.cast(constructor.newInstance(comparator));
-            } catch (InstantiationException e) {
-                throw new BeanlibException(e);
-            } catch (IllegalAccessException e) {
-                throw new BeanlibException(e);
-            } catch (InvocationTargetException e) {
-                throw new BeanlibException(e.getTargetException());
-            }
+        Object[] args = {comparator};
+        try {
+            return c.cast(Instantiator.forComparatorConstructor(c).newInstance(args));
+        } catch (InstantiationException e) {
+            throw new BeanlibException(e);
+        } catch (IllegalAccessException e) {
+            throw new BeanlibException(e);
         }
-        return c.cast(AccessController.doPrivileged(
-            new PrivilegedAction<Object>() {
-                public Object run() {
-                    constructor.setAccessible(true);
-                    try {
-                        return  constructor.newInstance(comparator);
-                    } catch (IllegalAccessException e) {
-                        throw new BeanlibException(e);
-                    } catch (InvocationTargetException e) {
-                        throw new BeanlibException(e.getTargetException());
-                    } catch (InstantiationException e) {
-                        throw new BeanlibException(e);
-                    }
-                }
-        }));
+    }
+
+    /** 
+     * Returns the target cloned from the given object with a single probe of the cloned map;
+     * or {@link #NOT_CLONED} if the given object has not been cloned.
+     */
+    protected final Object lookupTargetCloned(Object from)
+    {
+        return lookupTargetCloned(beanTransformer.<Object,Object>getClonedMap(), from);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Object lookupTargetCloned(Map<Object,Object> clonedMap, Object from)
+    {
+        if (clonedMap instanceof ReusableIdentityMap<?,?>)
+            return ((ReusableIdentityMap<Object,Object>)clonedMap).get(from, NOT_CLONED);
+        if (clonedMap instanceof TreeModeClonedMap)
+            return NOT_CLONED;
+        if (clonedMap instanceof ConcurrentIdentityMap<?,?>)
+            return ((ConcurrentIdentityMap<Object,Object>)clonedMap).get(from, NOT_CLONED);
+        return clonedMap.containsKey(from) ? clonedMap.get(from) : NOT_CLONED;
     }
 
     protected final boolean containsTargetCloned(Object from)
@@ -302,6 +499,139 @@ public abstract class ReplicatorTemplate
         return beanTransformer.getClonedMap().put(from, to);
     }
     
+    /**
+     * Records the given target as cloned from the given object, unless during a parallel replication 
+     * another thread has concurrently done so with a different target, which is then returned instead.
+     * 
+     * @return the given target, or the target concurrently cloned by another thread
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T> T putTargetClonedIfAbsent(Object from, T to)
+    {
+        final Map<Object,Object> clonedMap = beanTransformer.getClonedMap();
+        
+        if (clonedMap instanceof ConcurrentMap<?,?>) {
+            final Object existing = ((ConcurrentMap<Object,Object>)clonedMap).putIfAbsent(from, to);
+            return existing == null ? to : (T)existing;
+        }
+        clonedMap.put(from, to);
+        return to;
+    }
+    
+    /**
+     * Replicates the given member of a collection or an array, reusing the target already cloned, if any,
+     * or applying the given custom transformer, if applicable.
+     * 
+     * @param fromMember the member to be replicated, which may be null
+     * @param customTransformer the custom transformer, which may be null
+     */
+    protected final Object replicateMember(Object fromMember, CustomBeanTransformerSpi customTransformer)
+    {
+        if (fromMember == null)
+            return null;
+        final Object targetCloned = lookupTargetCloned(fromMember);
+        
+        if (targetCloned != NOT_CLONED)
+            return targetCloned;
+        
+        if (customTransformer != null) {
+            final Class<?> fromMemberClass = fromMember.getClass();
+            
+            if (customTransformer.isTransformable(fromMember, fromMemberClass, null)) {
+                return putTargetClonedIfAbsent(fromMember, customTransformer.transform(fromMember, fromMemberClass, null));
+            }
+        }
+        // cloned target is already placed in the target cloned map in replicate
+        return replicate(fromMember);
+    }
+    
+    /**
+     * Returns true if a collection or an array with the given number of members 
+     * is to be replicated in parallel; false otherwise.
+     * 
+     * @see BeanTransformer#initParallelReplication(java.util.concurrent.Executor, int)
+     */
+    protected final boolean isParallelReplicable(int size)
+    {
+        if (!(beanTransformer instanceof BeanTransformer))
+            return false;
+        final BeanTransformer transformer = (BeanTransformer)beanTransformer;
+        
+        if (transformer.getParallelExecutor() == null
+        ||  size < transformer.getParallelThreshold()
+        ||  transformer.isParallelWorker())
+            return false;
+        final Map<Object,Object> clonedMap = transformer.getClonedMap();
+        return clonedMap instanceof ConcurrentMap<?,?> || clonedMap instanceof TreeModeClonedMap;
+    }
+    
+    /**
+     * Replicates the given members of a collection or an array in parallel chunks 
+     * into the given target array, keeping the original order.
+     * 
+     * @see #isParallelReplicable(int)
+     */
+    protected final void replicateMembersInParallel(final Object[] fromMembers, final Object[] toMembers, 
+            final CustomBeanTransformerSpi customTransformer)
+    {
+        final BeanTransformer transformer = (BeanTransformer)beanTransformer;
+        final Map<Object,Object> clonedMap = transformer.getClonedMap();
+        final int chunkSize = Math.max(MIN_PARALLEL_CHUNK_SIZE, 
+                fromMembers.length / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+        final List<FutureTask<Object>> chunks = new ArrayList<FutureTask<Object>>();
+        
+        for (int start=0; start < fromMembers.length; start += chunkSize) 
+        {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, fromMembers.length);
+            // In tree mode, each chunk tracks its own replication depth
+            final Map<Object,Object> workerClonedMap = clonedMap instanceof TreeModeClonedMap
+                    ? new TreeModeClonedMap(((TreeModeClonedMap)clonedMap).getMaxDepth())
+                    : clonedMap;
+            final Callable<Object> chunk = new Callable<Object>() {
+                public Object call() {
+                    for (int i=from; i < to; i++)
+                        toMembers[i] = replicateMember(fromMembers[i], customTransformer);
+                    return null;
+                }
+            };
+            chunks.add(new FutureTask<Object>(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return transformer.callAsParallelWorker(workerClonedMap, chunk);
+                }
+            }));
+        }
+        try {
+            for (FutureTask<Object> chunk : chunks)
+                transformer.getParallelExecutor().execute(chunk);
+        } catch (RejectedExecutionException ignore) {
+            // the chunks not accepted will be run by the current thread
+        }
+        // Run the chunks not yet started by the executor
+        for (FutureTask<Object> chunk : chunks)
+            chunk.run();
+        // Wait for all the chunks to complete before reporting any failure
+        Throwable failure = null;
+        
+        for (FutureTask<Object> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BeanlibException(e);
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause();
+            }
+        }
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+        if (failure instanceof Error)
+            throw (Error)failure;
+        if (failure != null)
+            throw new BeanlibException(failure);
+    }
+    
     /**
      * Returns an equivalent object un-enhanced from the given object.  
      * By default, the input object is returned.
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.provider.replicator;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.sf.beanlib.BeanlibException;
+
+/**
+ * A cloned map used for replicating tree-shaped object graphs,
+ * which records no identity at all.
+ * <p>
+ * A put is ignored, and a lookup never finds anything, so the replicators 
+ * neither probe nor retain any entry in the hot loop.  As a consequence, 
+ * an object referenced multiple times in the source graph is replicated 
+ * multiple times, and a cycle in the source graph would lead to an infinite recursion.
+ * As a safety net, when debugging is enabled the replication depth is tracked 
+ * via {@link ReplicatorTemplate}, and a {@link BeanlibException} is thrown 
+ * upon exceeding the maximum depth, which is most likely due to an accidental cycle.
+ * 
+ * @see net.sf.beanlib.provider.BeanTransformer#initTreeMode(boolean)
+ * 
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+public final class TreeModeClonedMap extends AbstractMap<Object,Object> 
+{
+    /** Default maximum replication depth tracked when debugging is enabled. */
+    public static final int DEFAULT_MAX_DEPTH = 512;
+    
+    private final int maxDepth;
+    private int depth;
+    
+    /** Constructs a tree mode cloned map with the given maximum replication depth. */
+    public TreeModeClonedMap(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Argument maxDepth must be positive: " + maxDepth);
+        this.maxDepth = maxDepth;
+    }
+    
+    /** Returns the maximum replication depth. */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    /** Returns the current replication depth. */
+    int getDepth() {
+        return depth;
+    }
+    
+    /** 
+     * Enters the replication of the given object one level deeper.
+     * 
+     * @throws BeanlibException if the maximum replication depth is exceeded
+     */
+    void enter(Object from) {
+        if (depth == maxDepth) {
+            throw new BeanlibException("Replication depth exceeded " + maxDepth 
+                    + " in tree mode, most likely due to a cycle, at an instance of " + from.getClass().getName());
+        }
+        depth++;
+    }
+    
+    /** Leaves the replication of the current level. */
+    void exit() {
+        depth--;
+    }
+    
+    /** Ignores the given entry, as no identity is recorded in tree mode. */
+    @Override
+    public Object put(Object key, Object value) {
+        return null;
+    }
+    
+    @Override
+    public Object get(Object key) {
+        return null;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return false;
+    }
+    
+    @Override
+    public int size() {
+        return 0;
+    }
+    
+    /** Resets the replication depth. */
+    @Override
+    public void clear() {
+        depth = 0;
+    }
+    
+    @Override
+    public Set<Map.Entry<Object,Object>> entrySet() {
+        return Collections.emptySet();
+    }
+}
@@ -15,8 +15,11 @@
  */
 package net.sf.beanlib.spi;
 
+import net.sf.beanlib.provider.BeanPopulationPlan;
 import net.sf.beanlib.provider.collector.PublicSetterMethodCollector;
 import net.sf.beanlib.provider.finder.PublicReaderMethodFinder;
+import net.sf.beanlib.provider.invoker.FastMethodInvoker;
+import net.sf.beanlib.util.WeakClassCache;
 
 /**
  * Base configuration for a Bean Populator.
@@ -33,6 +36,13 @@ public class BeanPopulatorBaseConfig implements Cloneable
     private DetailedPropertyFilter detailedPropertyFilter = DetailedPropertyFilter.JAVABEAN_PROPAGATE;
     private BeanPopulationExceptionHandler beanPopulationExceptionHandler = BeanPopulationExceptionHandler.ABORT;
     private boolean debug;
+    private MethodInvoker.Factory methodInvokerFactory = FastMethodInvoker.factory;
+    /** 
+     * Bean population plans computed with this configuration, keyed by the from class and then the to class,
+     * but only weakly, so the plans don't prevent the classes and their class loaders from being garbage collected.
+     * Lazily created, and discarded whenever an option a plan depends upon is changed. 
+     */
+    private volatile WeakClassCache<WeakClassCache<BeanPopulationPlan>> planCache;
     
     public PropertyFilter getPropertyFilter() {
         return propertyFilter;
@@ -64,26 +74,83 @@ public class BeanPopulatorBaseConfig implements Cloneable
     }
     public void setDetailedPropertyFilter(DetailedPropertyFilter detailedPropertyFilter) {
         this.detailedPropertyFilter = detailedPropertyFilter;
+        this.planCache = null;
     }
     public BeanMethodFinder getReaderMethodFinder() {
         return readerMethodFinder;
     }
     public void setReaderMethodFinder(BeanMethodFinder readerMethodFinder) {
         this.readerMethodFinder = readerMethodFinder;
+        this.planCache = null;
     }
     public BeanMethodCollector getSetterMethodCollector() {
         return setterMethodCollector;
     }
     public void setSetterMethodCollector(BeanMethodCollector setterMethodCollector) {
         this.setterMethodCollector = setterMethodCollector;
+        this.planCache = null;
+    }
+    /** 
+     * Returns the factory used to create the invokers of the reader and setter methods. 
+     */
+    public MethodInvoker.Factory getMethodInvokerFactory() {
+        return methodInvokerFactory;
+    }
+    public void setMethodInvokerFactory(MethodInvoker.Factory methodInvokerFactory) {
+        this.methodInvokerFactory = methodInvokerFactory;
+        this.planCache = null;
+    }
+    
+    /**
+     * Returns the plan for populating the properties from the given from bean to the given to bean,
+     * computing and caching the plan for the respective pair of classes if necessary.
+     */
+    public BeanPopulationPlan getBeanPopulationPlan(Object fromBean, Object toBean) 
+    {
+        WeakClassCache<WeakClassCache<BeanPopulationPlan>> cache = planCache;
+        
+        if (cache == null)
+            planCache = cache = new WeakClassCache<WeakClassCache<BeanPopulationPlan>>();
+        final Class<?> fromClass = fromBean.getClass();
+        WeakClassCache<BeanPopulationPlan> toPlans = cache.get(fromClass);
+        
+        if (toPlans == null)
+            toPlans = cache.putIfAbsent(fromClass, new WeakClassCache<BeanPopulationPlan>());
+        final Class<?> toClass = toBean.getClass();
+        BeanPopulationPlan plan = toPlans.get(toClass);
+        
+        if (plan == null)
+            plan = toPlans.putIfAbsent(toClass, BeanPopulationPlan.newBeanPopulationPlan(fromBean, toBean, this));
+        else if (!plan.isApplicable(detailedPropertyFilter)) {
+            // The class deterministic detailed property filter has been reconfigured,
+            // or more classes have been registered as immutable
+            plan = BeanPopulationPlan.newBeanPopulationPlan(fromBean, toBean, this);
+            toPlans.put(toClass, plan);
+        }
+        return plan;
     }
     
     @Override
     public BeanPopulatorBaseConfig clone() {
         try {
-            return (BeanPopulatorBaseConfig)super.clone();
+            BeanPopulatorBaseConfig clone = (BeanPopulatorBaseConfig)super.clone();
+            // the clone can be changed independently
+            clone.planCache = null;
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError(this.getClass() + " must implement " + Cloneable.class);
         }
     }
+    
+    /**
+     * Returns a clone of this configuration which shares the bean population plans computed so far,
+     * such as for freezing a bean transformer without discarding its warmed plans.
+     * The shared plans remain valid for both configurations,
+     * as changing an option a plan depends upon discards the plans of the changed configuration only.
+     */
+    public BeanPopulatorBaseConfig cloneWithPlans() {
+        BeanPopulatorBaseConfig clone = clone();
+        clone.planCache = planCache;
+        return clone;
+    }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.spi;
+
+import net.sf.beanlib.provider.BeanPopulationPlan;
+
+/**
+ * Implemented by a {@link PropertyFilter} or a {@link DetailedPropertyFilter} to declare 
+ * that its decisions depend only on the property name and the reader and setter methods,
+ * but never on the bean instances or any other state, so that the decisions can be made once
+ * per {@link BeanPopulationPlan} rather than for every bean populated.
+ * <p>
+ * A filter whose configuration can be changed must return a different revision after each change,
+ * so that any decision made with the previous configuration is discarded.
+ * 
+ * @author Joe D. Velopar
+ */
+public interface ClassDeterministicFilter {
+    /**
+     * Returns true if the decisions of this filter currently depend only on 
+     * the property name and the reader and setter methods; false otherwise.
+     */
+    public boolean isClassDeterministic();
+    
+    /**
+     * Returns the revision of the configuration of this filter,
+     * which must change whenever the decisions of this filter may change.
+     * An immutable filter can always return zero.
+     */
+    public int getRevision();
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.spi;
+
+import java.lang.reflect.Method;
+
+import net.sf.beanlib.BeanlibException;
+
+/** 
+ * Used to invoke a specific reader or setter method of JavaBeans.
+ * <p>
+ * A method invoker is created once per method via a {@link MethodInvoker.Factory}, 
+ * so any preparation such as making the method accessible 
+ * or generating byte code is done only once, instead of every time the method is invoked.
+ * 
+ * @see BeanPopulatorBaseConfig#setMethodInvokerFactory(MethodInvoker.Factory)
+ * 
+ * @author Joe D. Velopar
+ */
+public interface MethodInvoker {
+    /**
+     * Method Invoker Factory.
+     * 
+     * @author Joe D. Velopar
+     */
+    public static interface Factory {
+        /**
+         * Returns a method invoker for the given method. 
+         */
+        public MethodInvoker newMethodInvoker(Method method);
+    }
+    
+    /** Returns the method being invoked. */
+    public Method getMethod();
+    
+    /**
+     * Invokes the method on the given target with the given arguments.
+     * 
+     * @param target JavaBean instance
+     * @param args arguments; or null if the method takes no argument
+     * @return the value returned from the method invocation
+     * @throws BeanlibException wrapping the exception thrown from the method invocation, if any
+     */
+    public Object invoke(Object target, Object[] args);
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A thread-safe identity map used for tracking the objects visited during a parallel replication.
+ * <p>
+ * The entries are partitioned by identity hash code into a fixed number of 
+ * {@link ReusableIdentityMap} stripes, each guarded by its own lock, 
+ * so threads working on different objects seldom contend.  
+ * Like {@link ReusableIdentityMap}, clearing the map is cheap, and null keys and values are permitted;
+ * notes, however, {@link #putIfAbsent(Object, Object)} cannot tell apart 
+ * an absent key from a key mapped to null.
+ * <p>
+ * The entry set view is a snapshot which doesn't support removal.
+ * 
+ * @param <K> key type
+ * @param <V> value type
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public class ConcurrentIdentityMap<K,V> extends AbstractMap<K,V> implements ConcurrentMap<K,V> 
+{
+    /** Number of stripes, which must be a power of 2. */
+    private static final int STRIPES = 32;
+    
+    private final ReusableIdentityMap<K,V>[] stripes;
+    
+    /** Constructs an empty map with the given expected number of entries. */
+    public ConcurrentIdentityMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Argument expectedSize must not be negative: " + expectedSize);
+        @SuppressWarnings("unchecked")
+        final ReusableIdentityMap<K,V>[] a = new ReusableIdentityMap[STRIPES];
+        final int expectedStripeSize = (expectedSize + STRIPES - 1) / STRIPES;
+        
+        for (int i=0; i < a.length; i++)
+            a[i] = new ReusableIdentityMap<K,V>(expectedStripeSize);
+        this.stripes = a;
+    }
+    
+    private ReusableIdentityMap<K,V> stripeOf(Object key) {
+        final int h = System.identityHashCode(key);
+        // Use the higher bits, as the lower bits are used within the stripe
+        return stripes[(h ^ (h >>> 11) ^ (h >>> 22)) & (STRIPES - 1)];
+    }
+    
+    /**
+     * Returns the value to which the given key is mapped, 
+     * or the given default value if there is no mapping for the key.
+     * 
+     * @see ReusableIdentityMap#get(Object, Object)
+     */
+    public Object get(Object key, Object defaultValue) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.get(key, defaultValue);
+        }
+    }
+    
+    @Override
+    public V get(Object key) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.get(key);
+        }
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.containsKey(key);
+        }
+    }
+    
+    @Override
+    public V put(K key, V value) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.put(key, value);
+        }
+    }
+    
+    public V putIfAbsent(K key, V value) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            if (stripe.containsKey(key))
+                return stripe.get(key);
+            stripe.put(key, value);
+            return null;
+        }
+    }
+    
+    @Override
+    public V remove(Object key) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.remove(key);
+        }
+    }
+    
+    public boolean remove(Object key, Object value) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            if (!stripe.containsKey(key) || !eq(stripe.get(key), value))
+                return false;
+            stripe.remove(key);
+            return true;
+        }
+    }
+    
+    public V replace(K key, V value) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            return stripe.containsKey(key) ? stripe.put(key, value) : null;
+        }
+    }
+    
+    public boolean replace(K key, V oldValue, V newValue) {
+        final ReusableIdentityMap<K,V> stripe = stripeOf(key);
+        
+        synchronized(stripe) {
+            if (!stripe.containsKey(key) || !eq(stripe.get(key), oldValue))
+                return false;
+            stripe.put(key, newValue);
+            return true;
+        }
+    }
+    
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    @Override
+    public int size() {
+        int size = 0;
+        
+        for (ReusableIdentityMap<K,V> stripe : stripes) {
+            synchronized(stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+    
+    @Override
+    public void clear() {
+        for (ReusableIdentityMap<K,V> stripe : stripes) {
+            synchronized(stripe) {
+                stripe.clear();
+            }
+        }
+    }
+    
+    @Override
+    public Set<Map.Entry<K,V>> entrySet() {
+        final List<Map.Entry<K,V>> snapshot = new ArrayList<Map.Entry<K,V>>();
+        
+        for (ReusableIdentityMap<K,V> stripe : stripes) {
+            synchronized(stripe) {
+                snapshot.addAll(stripe.entrySet());
+            }
+        }
+        return new AbstractSet<Map.Entry<K,V>>() {
+            @Override
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return Collections.unmodifiableList(snapshot).iterator();
+            }
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * An identity map specialized for tracking the objects visited during a replication,
+ * with reference-equality semantics similar to {@link IdentityHashMap}.
+ * <p>
+ * The entries are stored in parallel arrays using open addressing with linear probing,
+ * so neither a put nor a get allocates any memory once the map has reached its capacity.
+ * An expected size can be given upfront to avoid repeated rehashing of large maps.
+ * Clearing the map advances an epoch number rather than wiping the slot epochs;
+ * entries of a previous epoch are treated as absent and overwritten when the slots are reused.
+ * The keys and values are nulled out upon clearing nonetheless, so a map kept for reuse 
+ * doesn't retain the objects of a previous replication.
+ * The arrays are released upon clearing if the capacity has grown beyond {@value #MAX_RETAINED_CAPACITY} slots.
+ * <p>
+ * Notes the entry set view doesn't support removal via its iterator.
+ * 
+ * @param <K> key type
+ * @param <V> value type
+ * 
+ * @author Joe D. Velopar
+ */
+@NotThreadSafe
+public class ReusableIdentityMap<K,V> extends AbstractMap<K,V> 
+{
+    /** Default expected number of entries. */
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+    /** Maximum number of slots retained upon clearing. */
+    public static final int MAX_RETAINED_CAPACITY = 1024;
+    /** Used to represent the null key. */
+    private static final Object NULL_KEY = new Object();
+    
+    private final int expectedSize;
+    private Object[] keys;
+    private Object[] values;
+    /** The epoch of each slot; a slot is occupied only if its epoch is the current epoch. */
+    private int[] epochs;
+    private int epoch;
+    private int size;
+    
+    /** Constructs an empty map with a default expected size. */
+    public ReusableIdentityMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+    
+    /** 
+     * Constructs an empty map with the given expected number of entries, 
+     * which is also the size the map shrinks back to after clearing a large map.
+     */
+    public ReusableIdentityMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Argument expectedSize must not be negative: " + expectedSize);
+        this.expectedSize = expectedSize;
+        allocate(capacityFor(expectedSize));
+    }
+    
+    /** Returns the number of slots, a power of 2, sufficient for the given number of entries. */
+    private static int capacityFor(int expectedSize) {
+        // Keep the load factor at or below one half
+        int capacity = 4;
+        
+        while (capacity < expectedSize * 2 && capacity < (1 << 30))
+            capacity <<= 1;
+        return capacity;
+    }
+    
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        epochs = new int[capacity];
+        epoch = 1;
+        size = 0;
+    }
+    
+    private static int hash(Object k, int mask) {
+        int h = System.identityHashCode(k);
+        // Spread the bits, as the identity hash codes are often clustered
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & mask;
+    }
+    
+    /** Returns the slot of the given key, or -1 if the key is absent. */
+    private int indexOf(Object key) {
+        final Object k = key == null ? NULL_KEY : key;
+        final int mask = keys.length - 1;
+        
+        for (int i = hash(k, mask); epochs[i] == epoch; i = (i + 1) & mask) {
+            if (keys[i] == k)
+                return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Ensures the map can hold the given number of entries without rehashing.
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize * 2 > keys.length)
+            resize(capacityFor(expectedSize));
+    }
+    
+    private void resize(int capacity) {
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int[] oldEpochs = epochs;
+        final int oldEpoch = epoch;
+        allocate(capacity);
+        
+        for (int i=0; i < oldKeys.length; i++) {
+            if (oldEpochs[i] == oldEpoch)
+                insert(oldKeys[i], oldValues[i]);
+        }
+    }
+    
+    /** Inserts the given (masked) key which is known to be absent. */
+    private void insert(Object k, Object value) {
+        final int mask = keys.length - 1;
+        int i = hash(k, mask);
+        
+        while (epochs[i] == epoch)
+            i = (i + 1) & mask;
+        keys[i] = k;
+        values[i] = value;
+        epochs[i] = epoch;
+        size++;
+    }
+    
+    /**
+     * Returns the value to which the given key is mapped, 
+     * or the given default value if there is no mapping for the key.
+     * Useful to tell apart an absent key from a key mapped to null with a single probe.
+     */
+    public Object get(Object key, Object defaultValue) {
+        final int i = indexOf(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        final int i = indexOf(key);
+        return i < 0 ? null : (V)values[i];
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        final int i = indexOf(key);
+        
+        if (i >= 0) {
+            V old = (V)values[i];
+            values[i] = value;
+            return old;
+        }
+        if ((size + 1) * 2 > keys.length)
+            resize(keys.length << 1);
+        insert(key == null ? NULL_KEY : key, value);
+        return null;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(key);
+        
+        if (i < 0)
+            return null;
+        final V old = (V)values[i];
+        final int mask = keys.length - 1;
+        // Shift back any subsequent entry of the same cluster that would otherwise become unreachable
+        for (int j = (i + 1) & mask; epochs[j] == epoch; j = (j + 1) & mask) {
+            final int home = hash(keys[j], mask);
+            
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        values[i] = null;
+        epochs[i] = 0;
+        size--;
+        return old;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Removes all the entries by advancing the epoch and releasing the references to the keys and values,
+     * unless the capacity has grown beyond {@value #MAX_RETAINED_CAPACITY} slots,
+     * in which case the arrays are released.
+     */
+    @Override
+    public void clear() 
+    {
+        if (keys.length > MAX_RETAINED_CAPACITY) {
+            allocate(capacityFor(expectedSize));
+            return;
+        }
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+        if (++epoch == 0) {
+            // Wrapped around, so the stale epochs can no longer be told apart
+            Arrays.fill(epochs, 0);
+            epoch = 1;
+        }
+    }
+    
+    @Override
+    public Set<Map.Entry<K,V>> entrySet() {
+        return new AbstractSet<Map.Entry<K,V>>() {
+            @Override
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return new EntryIterator();
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    private class EntryIterator implements Iterator<Map.Entry<K,V>> 
+    {
+        private int next = advance(0);
+        
+        private int advance(int from) {
+            while (from < keys.length && epochs[from] != epoch)
+                from++;
+            return from;
+        }
+        
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final int i = next;
+            next = advance(i + 1);
+            final K key = keys[i] == NULL_KEY ? null : (K)keys[i];
+            return new EntrySnapshot(key, (V)values[i]);
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    /** A read-only snapshot of an entry. */
+    private class EntrySnapshot implements Map.Entry<K,V> 
+    {
+        private final K key;
+        private final V value;
+        
+        EntrySnapshot(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+        public K getKey() {
+            return key;
+        }
+        public V getValue() {
+            return value;
+        }
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?,?>))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return key == e.getKey() && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key) ^ (value == null ? 0 : value.hashCode());
+        }
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.beanlib.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A cache of values per class, held such that it doesn't prevent the classes 
+ * (and therefore their class loaders) from being garbage collected.
+ * <p>
+ * The classes are weakly referenced as keys, whereas the values are softly referenced, 
+ * as the values typically refer back to the classes (such as via {@link java.lang.reflect.Method}).
+ * <p>
+ * Looking up a value neither locks nor allocates: each bucket holds an immutable chain of entries,
+ * which is replaced as a whole whenever it changes, so only the updates are synchronized.
+ * The entries of garbage collected classes are removed upon subsequent updates.
+ * 
+ * @param <V> value type
+ * 
+ * @author Joe D. Velopar
+ */
+@ThreadSafe
+public class WeakClassCache<V> 
+{
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /** Buckets of immutable chains of entries, indexed by the identity hash code of the classes. */
+    private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<Entry<V>>(INITIAL_CAPACITY);
+    /** Number of entries in the table, guarded by this. */
+    private int size;
+    /** Entries of the garbage collected classes. */
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+    
+    /** Returns the value cached for the given class, or null if there is none. */
+    public V get(Class<?> c) 
+    {
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        
+        for (Entry<V> e = tab.get(indexFor(System.identityHashCode(c), tab.length())); e != null; e = e.next) {
+            if (e.get() == c)
+                return e.value.get();
+        }
+        return null;
+    }
+    
+    /** 
+     * Caches the given value for the given class, unless a value has already been cached.
+     * 
+     * @return the value cached for the given class
+     */
+    public synchronized V putIfAbsent(Class<?> c, V value) {
+        return put(c, value, true);
+    }
+    
+    /** 
+     * Caches the given value for the given class, replacing any value already cached.
+     */
+    public synchronized void put(Class<?> c, V value) {
+        put(c, value, false);
+    }
+    
+    /** Must be called while holding the lock on this. */
+    private V put(Class<?> c, V value, boolean onlyIfAbsent) 
+    {
+        expungeStaleEntries();
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        final int i = indexFor(System.identityHashCode(c), tab.length());
+        final Entry<V> head = tab.get(i);
+        
+        for (Entry<V> e = head; e != null; e = e.next) {
+            if (e.get() == c) {
+                V existing = e.value.get();
+                
+                if (onlyIfAbsent && existing != null)
+                    return existing;
+                // Either replaced, or the existing value has been garbage collected
+                tab.set(i, new Entry<V>(c, new SoftReference<V>(value), queue, copy(head, e, e.next)));
+                return value;
+            }
+        }
+        tab.set(i, new Entry<V>(c, new SoftReference<V>(value), queue, head));
+        
+        if (++size > tab.length() * 3 / 4)
+            resize(tab);
+        return value;
+    }
+    
+    private static int indexFor(int hash, int length) {
+        return hash & (length - 1);
+    }
+    
+    /** 
+     * Returns a copy of the given chain of entries up to the given entry excluded, followed by the given tail, 
+     * without the entries of garbage collected classes. 
+     */
+    private Entry<V> copy(Entry<V> e, Entry<V> until, Entry<V> tail) 
+    {
+        for (; e != until; e = e.next) {
+            Class<?> c = e.get();
+            
+            if (c == null)
+                size--;
+            else
+                tail = new Entry<V>(c, e.value, queue, tail);
+        }
+        return tail;
+    }
+    
+    private void resize(AtomicReferenceArray<Entry<V>> tab) 
+    {
+        final AtomicReferenceArray<Entry<V>> newTab = new AtomicReferenceArray<Entry<V>>(tab.length() * 2);
+        
+        for (int i=0; i < tab.length(); i++) {
+            for (Entry<V> e = tab.get(i); e != null; e = e.next) {
+                Class<?> c = e.get();
+                
+                if (c == null) {
+                    size--;
+                    continue;
+                }
+                int j = indexFor(e.hash, newTab.length());
+                newTab.set(j, new Entry<V>(c, e.value, queue, newTab.get(j)));
+            }
+        }
+        table = newTab;
+    }
+    
+    /** Removes the entries of the garbage collected classes. */
+    private void expungeStaleEntries() 
+    {
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        Reference<? extends Class<?>> ref;
+        
+        while ((ref = queue.poll()) != null) {
+            @SuppressWarnings("unchecked") Entry<V> stale = (Entry<V>)ref;
+            final int i = indexFor(stale.hash, tab.length());
+            final Entry<V> head = tab.get(i);
+            
+            for (Entry<V> e = head; e != null; e = e.next) {
+                if (e == stale) {
+                    tab.set(i, copy(head, e, e.next));
+                    size--;
+                    break;
+                }
+            }
+        }
+    }
+    
+    /** 
+     * An immutable entry of a chain, weakly referencing the class.
+     */
+    private static final class Entry<V> extends WeakReference<Class<?>> 
+    {
+        private final int hash;
+        private final SoftReference<V> value;
+        private final Entry<V> next;
+        
+        Entry(Class<?> c, SoftReference<V> value, ReferenceQueue<Class<?>> queue, Entry<V> next) {
+            super(c, queue);
+            this.hash = System.identityHashCode(c);
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -15,10 +15,28 @@
  */
 package net.sf.beanlib.utils;
 
+import java.sql.Blob;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Currency;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.beanlib.util.WeakClassCache;
 
 /**
  * Class Utilities.
+ * <p>
+ * The traits of a class, such as whether it is immutable or under a "java." package,
+ * are computed once per class and memoized, so that they can be retrieved via {@link #traits(Class)} 
+ * as a bit set with a single lookup. 
+ * The traits are keyed by the class itself rather than the class name, 
+ * so classes of the same name loaded by different class loaders are not confused,
+ * but only weakly, so the memo doesn't prevent the classes and their class loaders 
+ * (such as those of generated proxy classes) from being garbage collected.
  * 
  * @author Joe D. Velopar
  */
@@ -26,6 +44,108 @@ public enum ClassUtils {
     ;
     /** copied from the private static Class.ENUM constant. */
     private static final int ENUM      = 0x00004000;
+    
+    /** Trait of a class known to be immutable. */
+    public static final int IMMUTABLE_TRAIT = 1;
+    /** Trait of a class under a package that starts with "java.". */
+    public static final int JAVA_PACKAGE_TRAIT = 1 << 1;
+    /** Trait of a class under a package that starts with "org.hibernate.". */
+    public static final int HIBERNATE_PACKAGE_TRAIT = 1 << 2;
+    /** Trait of an array class. */
+    public static final int ARRAY_TRAIT = 1 << 3;
+    /** Trait of a {@link Collection} class. */
+    public static final int COLLECTION_TRAIT = 1 << 4;
+    /** Trait of a {@link Map} class. */
+    public static final int MAP_TRAIT = 1 << 5;
+    /** Trait of a {@link Date} class. */
+    public static final int DATE_TRAIT = 1 << 6;
+    /** Trait of a {@link Calendar} class. */
+    public static final int CALENDAR_TRAIT = 1 << 7;
+    /** Trait of a {@link Blob} class. */
+    public static final int BLOB_TRAIT = 1 << 8;
+    
+    /** Additional classes registered as immutable. */
+    private static final Set<Class<?>> registeredImmutables = new CopyOnWriteArraySet<Class<?>>();
+    /** 
+     * Memoized traits per class.  
+     * Replaced rather than cleared upon registration, so a computation racing with the registration
+     * can only end up in the discarded map.
+     */
+    private static volatile WeakClassCache<Integer> traitsCache = new WeakClassCache<Integer>();
+    /** Incremented upon every registration of immutable classes. */
+    private static final AtomicInteger immutablesRevision = new AtomicInteger();
+    
+    /**
+     * Registers the given classes as immutable, so their instances are 
+     * shared by reference during replication rather than replicated as JavaBeans.
+     * Useful for value classes such as those of Joda Time or <code>java.time</code>.
+     * <p>
+     * Notes only the exact classes are registered, not their subclasses.
+     */
+    public static void registerImmutable(Class<?>... classes) {
+        for (Class<?> c : classes)
+            registeredImmutables.add(c);
+        traitsCache = new WeakClassCache<Integer>();
+        immutablesRevision.incrementAndGet();
+    }
+    
+    /**
+     * Returns the revision of the registered immutable classes,
+     * which changes whenever classes are registered via {@link #registerImmutable(Class...)},
+     * so that anything derived from {@link #immutable(Class)} can tell when it has become stale.
+     */
+    public static int getImmutablesRevision() {
+        return immutablesRevision.get();
+    }
+    
+    /**
+     * Returns the traits of the given class as a bit set of the *_TRAIT constants;
+     * or zero if the given class is null.
+     */
+    public static int traits(Class<?> c) {
+        if (c == null)
+            return 0;
+        final WeakClassCache<Integer> cache = traitsCache;
+        Integer traits = cache.get(c);
+        
+        if (traits == null)
+            traits = cache.putIfAbsent(c, computeTraits(c));
+        return traits;
+    }
+    
+    private static int computeTraits(Class<?> c) {
+        int traits = 0;
+        final String fqcn = fqcn(c);
+        
+        if (fqcn.startsWith("java."))
+            traits |= JAVA_PACKAGE_TRAIT;
+        if (fqcn.startsWith("org.hibernate."))
+            traits |= HIBERNATE_PACKAGE_TRAIT;
+        if (c == String.class
+        ||  c.isPrimitive()
+        ||  (c.getModifiers() & ENUM) != 0
+        ||  Number.class.isAssignableFrom(c) && (traits & JAVA_PACKAGE_TRAIT) != 0
+        ||  Boolean.class == c
+        ||  Character.class == c
+        ||  Byte.class == c
+        ||  Currency.class == c
+        ||  registeredImmutables.contains(c))
+            traits |= IMMUTABLE_TRAIT;
+        if (c.isArray())
+            traits |= ARRAY_TRAIT;
+        if (Collection.class.isAssignableFrom(c))
+            traits |= COLLECTION_TRAIT;
+        if (Map.class.isAssignableFrom(c))
+            traits |= MAP_TRAIT;
+        if (Date.class.isAssignableFrom(c))
+            traits |= DATE_TRAIT;
+        if (Calendar.class.isAssignableFrom(c))
+            traits |= CALENDAR_TRAIT;
+        if (Blob.class.isAssignableFrom(c))
+            traits |= BLOB_TRAIT;
+        return traits;
+    }
+    
     /** Returns the unqalified class name. */
     public static String unqualify(Class<?> c) {
         if (c == null)
@@ -39,31 +159,47 @@ public enum ClassUtils {
      * Returns true if the given class is known to be immutable; false otherwise. 
      */
     public static boolean immutable(Class<?> c) {
-        if (c == null)
-            return false;
-        return c == String.class
-            || c.isPrimitive()
-            || (c.getModifiers() & ENUM) != 0
-            || Number.class.isAssignableFrom(c) && isJavaPackage(c)
-            || Boolean.class == c
-            || Character.class == c
-            || Byte.class == c
-            || Currency.class == c
-            ;
+        return (traits(c) & IMMUTABLE_TRAIT) != 0;
+    }
+    
+    /**
+     * Returns the wrapper class of the given primitive type; 
+     * or the given class itself if it is not a primitive type.
+     */
+    public static Class<?> wrapperOf(Class<?> c) {
+        if (c == null || !c.isPrimitive())
+            return c;
+        if (c == int.class)
+            return Integer.class;
+        if (c == long.class)
+            return Long.class;
+        if (c == boolean.class)
+            return Boolean.class;
+        if (c == double.class)
+            return Double.class;
+        if (c == float.class)
+            return Float.class;
+        if (c == short.class)
+            return Short.class;
+        if (c == byte.class)
+            return Byte.class;
+        if (c == char.class)
+            return Character.class;
+        return Void.class;
     }
     
     /**
      * Returns true if the given class is under a package that starts with "java.". 
      */
     public static boolean isJavaPackage(Class<?> c) {
-        return c != null && fqcn(c).startsWith("java.");
+        return (traits(c) & JAVA_PACKAGE_TRAIT) != 0;
     }
 
     /**
      * Returns true if the given class is under a package that starts with "org.hibernate.". 
      */
     public static boolean isHibernatePackage(Class<?> c) {
-        return c != null && fqcn(c).startsWith("org.hibernate.");
+        return (traits(c) & HIBERNATE_PACKAGE_TRAIT) != 0;
     }
     
     /** 